@@ -0,0 +1,207 @@
+package benchmark;
+
+import client.model.message.ClientMessage;
+import common.codec.ClientMessageView;
+import common.util.MessageUtil;
+import server.MessageSender;
+import server.commands.CommandHandler;
+import server.model.ChatRoom;
+import server.model.RoomRegistry;
+import server.model.User;
+import server.model.message.ChatMessage;
+import server.model.message.ServerMessage;
+import server.session.Session;
+import server.session.SessionTable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Runs the benchmarks of the hot paths of the server in one go, so a change can be measured before and after:
+ * <ul>
+ *   <li>{@code codec}: encoding server messages and parsing client messages with {@link MessageUtil}, and
+ *   wrapping a datagram in the flyweight {@link ClientMessageView}.</li>
+ *   <li>{@code room}: adding and removing users, nick lookups, the user list and the latest history page of a
+ *   {@link ChatRoom}, both cached and rendered from scratch, across room sizes.</li>
+ *   <li>{@code session}: finding the session of a datagram in the {@link SessionTable}, the per-packet lookup
+ *   that replaced the scans of the rooms for inactive users.</li>
+ *   <li>{@code command}: dispatching commands through {@link CommandHandler#handleCommand}.</li>
+ *   <li>{@code broadcast}: {@link MessageSender#sendBroadcast} to rooms of every size.</li>
+ * </ul>
+ * Replies are sent to a {@link NoopOperation}, so only the server code is measured.
+ * <p>
+ * Usage: {@code java -cp out:out-bench benchmark.BenchmarkSuite [--json file] [--quick] [group...]}
+ * <br>
+ * {@code --json} also writes the results as JSON, {@code --quick} shortens warmup and measurement for a smoke
+ * run, and the groups default to all of them.
+ */
+public class BenchmarkSuite {
+    private static final int[] SIZES = {10, 1_000, 10_000};  // Room sizes of the room and broadcast groups
+    private static final int QUERIES = 1024;  // Distinct keys looked up in turn, a power of two
+    private static final String LINE = "the quick brown fox jumps over the lazy dog";
+    private static long warmupMillis = 1_000;  // Warmup of every benchmark
+    private static long measureMillis = 2_000;  // Measurement of every benchmark
+    private static long sink;  // Keeps the results from being optimized away
+
+    public static void main(String[] args) throws IOException {
+        Path json = null;
+        Set<String> groups = new LinkedHashSet<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--json" -> json = Path.of(args[++i]);
+                case "--quick" -> {
+                    warmupMillis = 200;
+                    measureMillis = 300;
+                }
+                default -> groups.add(args[i]);
+            }
+        }
+        if (groups.isEmpty()) groups.addAll(List.of("codec", "room", "session", "command", "broadcast"));
+
+        List<Harness.Result> results = new ArrayList<>();
+        for (String group : groups) {
+            switch (group) {
+                case "codec" -> codec(results);
+                case "room" -> room(results);
+                case "session" -> session(results);
+                case "command" -> command(results);
+                case "broadcast" -> broadcast(results);
+                default -> throw new IllegalArgumentException("Unknown benchmark group: " + group);
+            }
+        }
+        if (json != null) {
+            Harness.writeJson(results, json);
+            System.out.println("Results written to " + json);
+        }
+    }
+
+    /**
+     * Encoding and parsing of single messages.
+     */
+    private static void codec(List<Harness.Result> results) {
+        ServerMessage serverMessage = new ServerMessage("<alice> " + LINE, ServerMessage.ServerStatus.INFO.getValue());
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        byte[] binary = MessageUtil.createClientMessage(new ClientMessage(LINE, "alice", ClientMessage.MSG));
+        byte[] text = ("CLIENT|alice|" + ClientMessage.MSG + "|" + LINE).getBytes(StandardCharsets.UTF_8);
+        ClientMessageView view = new ClientMessageView();
+        String format = MessageUtil.getWireFormat().name().toLowerCase(Locale.ROOT);
+
+        run(results, "codec.encodeServer", format, () -> {
+            buffer.clear();
+            MessageUtil.encodeServerMessage(serverMessage, buffer);
+            sink += buffer.position();
+        });
+        run(results, "codec.createServer", format,
+                () -> sink += MessageUtil.createServerMessage(serverMessage).length);
+        run(results, "codec.parseClient", "binary",
+                () -> sink += MessageUtil.parseClientMessage(binary, binary.length).getType());
+        run(results, "codec.parseClient", "text",
+                () -> sink += MessageUtil.parseClientMessage(text, text.length).getType());
+        run(results, "codec.wrapView", "binary",
+                () -> sink += view.wrap(binary, 0, binary.length) ? view.getContentLength() : 0);
+    }
+
+    /**
+     * Membership, lookups and rendered views of rooms of every size.
+     */
+    private static void room(List<Harness.Result> results) throws IOException {
+        for (int size : SIZES) {
+            String params = "users=" + size;
+            ChatRoom room = BroadcastBenchmark.createRoom(size);
+            User author = room.getUsers().iterator().next();
+            for (int i = 0; i < 50; i++) {
+                room.saveMessage(new ChatMessage(LINE + " " + i, author));
+            }
+            String[] nicks = new String[QUERIES];
+            for (int i = 0; i < QUERIES; i++) {
+                nicks[i] = "USER" + (int) ((i * 2_654_435_761L) % size);
+            }
+            User visitor = new User("visitor", InetAddress.getLoopbackAddress(), 50_000);
+            int[] next = new int[1];
+
+            run(results, "room.addRemoveUser", params, () -> {
+                room.addUser(visitor);
+                sink += room.removeUser(visitor) ? 1 : 0;
+            });
+            run(results, "room.getUserByNick", params,
+                    () -> sink += room.getUserByNick(nicks[next[0]++ & (QUERIES - 1)]) == null ? 0 : 1);
+            run(results, "room.getMessageHistory", params, () -> sink += room.getMessageHistory().length());
+            run(results, "room.renderHistoryPage", params,
+                    () -> sink += room.getHistoryPage(Long.MAX_VALUE, ChatRoom.DEFAULT_PAGE_SIZE).length());
+            run(results, "room.listUsers", params, () -> sink += room.listUsers().length());
+        }
+    }
+
+    /**
+     * Session lookups by address, in tables of every size.
+     */
+    private static void session(List<Harness.Result> results) throws IOException {
+        for (int size : SIZES) {
+            SessionTable sessions = new SessionTable();
+            User[] users = new User[size];
+            int i = 0;
+            for (User user : BroadcastBenchmark.createRoom(size).getUsers()) {
+                sessions.open(user, 0);
+                users[i++] = user;
+            }
+            int[] next = new int[1];
+            run(results, "session.get", "sessions=" + size, () -> {
+                User user = users[(int) Math.floorMod(next[0]++ * 2_654_435_761L, (long) size)];
+                Session session = sessions.get(user.getIp(), user.getPort());
+                sink += session == null ? 0 : 1;
+            });
+        }
+    }
+
+    /**
+     * Dispatching commands of a logged-in user.
+     */
+    private static void command(List<Harness.Result> results) throws IOException {
+        RoomRegistry registry = new RoomRegistry();
+        CommandHandler handler = new CommandHandler(registry, new MessageSender(new NoopOperation()));
+        User alice = new User("alice", InetAddress.getLoopbackAddress(), 50_000);
+        User bob = new User("bob", InetAddress.getLoopbackAddress(), 50_001);
+        registry.login(alice);
+        registry.login(bob);
+
+        String[][] commands = {
+                {"list", "list"},
+                {"LIST", "upperCase"},
+                {"history 5", "history"},
+                {"private bob  " + LINE, "private"},
+                {"nosuchcommand", "unknown"},
+        };
+        for (String[] command : commands) {
+            ClientMessage message = new ClientMessage(command[0], "alice", ClientMessage.COMMAND);
+            run(results, "command.dispatch", command[1], () -> handler.handleCommand(message, alice));
+        }
+    }
+
+    /**
+     * Broadcasts to rooms of every size.
+     */
+    private static void broadcast(List<Harness.Result> results) throws IOException {
+        for (int size : SIZES) {
+            ChatRoom room = BroadcastBenchmark.createRoom(size);
+            MessageSender sender = new MessageSender(new NoopOperation());
+            run(results, "broadcast.sendBroadcast", "users=" + size, () -> sender.sendBroadcast(LINE, room, null));
+        }
+    }
+
+    /**
+     * Measures a benchmark, prints it and adds it to the results.
+     */
+    private static void run(List<Harness.Result> results, String name, String params, Runnable op) {
+        Harness.Result result = Harness.measure(name, params, warmupMillis, measureMillis, op);
+        System.out.println(result);
+        results.add(result);
+    }
+}
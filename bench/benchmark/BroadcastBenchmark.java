@@ -0,0 +1,78 @@
+package benchmark;
+
+import common.util.MessageUtil;
+import server.MessageSender;
+import server.model.ChatRoom;
+import server.model.User;
+import server.model.message.ServerMessage;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Measures the cost of fanning a chat line out to a room, per broadcast and per recipient.
+ * The encode-once path of {@link MessageSender#sendBroadcast} is compared with encoding the message again for
+ * every recipient, which is what the sender used to do.
+ * <p>
+ * Usage: {@code java -cp out:out-bench benchmark.BroadcastBenchmark [roomSize...]}
+ */
+public class BroadcastBenchmark {
+    private static final String LINE = "<alice> the quick brown fox jumps over the lazy dog";
+
+    public static void main(String[] args) throws UnknownHostException {
+        int[] sizes = args.length > 0 ? parseSizes(args) : new int[]{10, 1_000, 5_000};
+        for (int size : sizes) {
+            ChatRoom room = createRoom(size);
+            NoopOperation socket = new NoopOperation();
+            MessageSender sender = new MessageSender(socket);
+
+            Harness.Result encodeOnce = Harness.measure("broadcast.encodeOnce", "users=" + size, 1_000, 2_000,
+                    () -> sender.sendBroadcast(LINE, room, null));
+            Harness.Result encodeEach = Harness.measure("broadcast.encodePerUser", "users=" + size, 1_000, 2_000,
+                    () -> encodePerRecipient(socket, room));
+
+            report(encodeOnce, size);
+            report(encodeEach, size);
+        }
+    }
+
+    /**
+     * The previous fan-out: one encoding and one byte array per recipient.
+     */
+    private static void encodePerRecipient(NoopOperation socket, ChatRoom room) {
+        ServerMessage message = new ServerMessage(LINE, ServerMessage.ServerStatus.INFO.getValue());
+        for (User user : room.getUsers()) {
+            socket.send(MessageUtil.createServerMessage(message), user.getIp(), user.getPort());
+        }
+    }
+
+    /**
+     * Prints a result together with its cost per recipient.
+     */
+    private static void report(Harness.Result result, int recipients) {
+        System.out.printf("%s | %8.1f ns/recipient %8.1f B/recipient%n",
+                result, result.nsPerOp() / recipients, result.bytesPerOp() / recipients);
+    }
+
+    /**
+     * Creates a room with the given number of users on distinct addresses.
+     */
+    static ChatRoom createRoom(int size) throws UnknownHostException {
+        ChatRoom room = new ChatRoom("bench");
+        for (int i = 0; i < size; i++) {
+            InetAddress address = InetAddress.getByAddress(new byte[]{10, (byte) (i >> 16), (byte) (i >> 8), (byte) i});
+            User user = new User("user" + i, address, 40_000 + (i % 20_000));
+            room.addUser(user);
+            user.getSocketAddress();  // Cached after the first send, as in the server
+        }
+        return room;
+    }
+
+    private static int[] parseSizes(String[] args) {
+        int[] sizes = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,123 @@
+package benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The Harness class is a minimal benchmark runner: it warms an operation up, then runs it in batches for a fixed
+ * time and reports the average time and the bytes allocated per operation by the calling thread.
+ * Results can be written as JSON, so two runs can be compared with any diff or JSON tool.
+ */
+public final class Harness {
+    private static final int BATCH = 100;  // Operations timed together to amortize the clock reads
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();  // Source of allocation counters
+
+    private Harness() {
+    }
+
+    /**
+     * The outcome of one measurement.
+     *
+     * @param name The name of the benchmark.
+     * @param params The parameters of the run, e.g. the room size.
+     * @param nsPerOp The average time per operation, in nanoseconds.
+     * @param bytesPerOp The average heap allocation per operation, in bytes.
+     * @param ops The number of measured operations.
+     */
+    public record Result(String name, String params, double nsPerOp, double bytesPerOp, long ops) {
+        @Override
+        public String toString() {
+            return String.format("%-28s %-18s %14.1f ns/op %12.1f B/op %12d ops", name, params, nsPerOp, bytesPerOp, ops);
+        }
+    }
+
+    /**
+     * Warms up and measures an operation.
+     *
+     * @param name The name of the benchmark.
+     * @param params The parameters of the run.
+     * @param warmupMillis How long to run the operation before measuring.
+     * @param measureMillis How long to measure the operation.
+     * @param op The operation.
+     * @return The measured result.
+     */
+    public static Result measure(String name, String params, long warmupMillis, long measureMillis, Runnable op) {
+        runFor(warmupMillis, op);
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long ops = runFor(measureMillis, op);
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        return new Result(name, params, (double) elapsed / ops, (double) allocated / ops, ops);
+    }
+
+    /**
+     * Writes results as a JSON document: the time of the run, the JVM it ran on and one object per result.
+     *
+     * @param results The results to write.
+     * @param path The file to write, replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeJson(List<Result> results, Path path) throws IOException {
+        StringBuilder json = new StringBuilder(256 + 160 * results.size());
+        json.append("{\n  \"timestamp\": ").append(quote(Instant.now().toString()))
+                .append(",\n  \"jvm\": ").append(quote(System.getProperty("java.vm.name") + " " + System.getProperty("java.version")))
+                .append(",\n  \"processors\": ").append(Runtime.getRuntime().availableProcessors())
+                .append(",\n  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"name\": ").append(quote(result.name()))
+                    .append(", \"params\": ").append(quote(result.params()))
+                    .append(String.format(Locale.ROOT, ", \"nsPerOp\": %.2f, \"bytesPerOp\": %.2f, \"ops\": %d}",
+                            result.nsPerOp(), result.bytesPerOp(), result.ops()));
+        }
+        json.append("\n  ]\n}\n");
+        Files.writeString(path, json, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Quotes a string for JSON.
+     */
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Runs an operation in batches until the given time has passed.
+     *
+     * @return The number of operations run.
+     */
+    private static long runFor(long millis, Runnable op) {
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        long ops = 0;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                op.run();
+            }
+            ops += BATCH;
+        } while (System.nanoTime() < deadline);
+        return ops;
+    }
+}
@@ -0,0 +1,460 @@
+package benchmark;
+
+import client.model.message.ClientMessage;
+import common.FragmentReassembler;
+import common.PacketHandler;
+import common.ReliableReceiver;
+import common.UDPOperation;
+import common.codec.Trace;
+import common.util.Histogram;
+import common.util.MessageUtil;
+import common.util.StageHistograms;
+import server.Server;
+import server.metrics.ServerMetrics;
+import server.model.message.ServerMessage;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A headless load generator that simulates many chat users against a server on this machine, to see how it
+ * behaves under a sustained load. Every simulated user has its own socket and goes through the same protocol code
+ * as {@code client.Client}: messages are created and parsed with {@link MessageUtil}, fragments are put back
+ * together by a {@link FragmentReassembler} and reliable messages are acknowledged by a {@link ReliableReceiver}.
+ * <p>
+ * The users log in at a given rate and spread over the rooms. Then, for the given duration, random users that
+ * are not idle send chat lines at the given total rate, a share of them as private messages to random users.
+ * Every line carries the time it was sent, so each recipient measures its delivery latency. Users answer the
+ * pings of the server unless told not to, which lets the inactivity eviction be tested too.
+ * <p>
+ * At the end it reports the throughput, the deliveries that never arrived (the recipients of a broadcast are the
+ * members of the room when it was sent) and the p50/p99/p999 delivery latency. A line with the progress is
+ * printed every few seconds meanwhile. With {@code --trace}, room lines are sent with a {@link Trace} and the
+ * report also splits their latency into the stages between the sender, the server and the recipient, and, with
+ * {@code --embedded}, the time in the server into queue, handler and fan-out.
+ * <p>
+ * Usage: {@code java -cp out:out-bench benchmark.LoadGenerator [options]}, with the options
+ * {@code --host} (127.0.0.1), {@code --port} (12345), {@code --embedded} (also start a server on that port in
+ * this JVM), {@code --users} (1000), {@code --rooms} (10), {@code --login-rate} (logins/s, 500), {@code --rate}
+ * (lines/s, 2000), {@code --private} (share of private lines, 0.1), {@code --idle} (share of users that never
+ * write, 0.1), {@code --no-pong}, {@code --trace}, {@code --duration} (s, 30) and {@code --report} (s, 5).
+ */
+public class LoadGenerator {
+    private static final int BUFFER_SIZE = 1024;  // Receive buffer of the users, as in the client
+    private static final String MARK = " ~";  // Separates the sender from the send time in a chat line
+    private static final long DRAIN_MILLIS = 2_000;  // Time allowed for the last lines to arrive
+    private static final long LOGIN_TIMEOUT_MILLIS = 10_000;  // Time allowed for every user to log in and join its room
+
+    private final InetSocketAddress server;  // Address of the server
+    private final int users;  // Simulated users
+    private final int rooms;  // Rooms the users are spread over, the lobby included
+    private final double loginRate;  // Logins per second
+    private final double lineRate;  // Chat lines per second, over all the users
+    private final double privateShare;  // Share of the lines sent as private messages
+    private final double idleShare;  // Share of the users that never write
+    private final boolean pong;  // Whether the users answer pings
+    private final boolean trace;  // Whether the room lines are traced
+    private final ServerMetrics serverMetrics;  // Metrics of the embedded server, null for an external one
+    private final long durationMillis;  // Length of the messaging phase
+    private final long reportMillis;  // Period of the progress lines
+
+    private final Selector selector;  // Waits for datagrams to any user
+    private final SimulatedUser[] simulated;  // The users
+    private final AtomicIntegerArray members;  // Users in every room, as seen by the generator
+    private SimulatedUser[] writers;  // Users that write and are in their room, chosen after the logins
+
+    private final AtomicLong linesSent = new AtomicLong();  // Chat lines sent
+    private final AtomicLong expected = new AtomicLong();  // Deliveries expected for the lines sent
+    private final AtomicLong delivered = new AtomicLong();  // Deliveries received
+    private final AtomicLong loggedIn = new AtomicLong();  // Users that got their login reply
+    private final AtomicLong joined = new AtomicLong();  // Users in their room
+    private final AtomicLong errors = new AtomicLong();  // Error replies
+    private final AtomicLong pings = new AtomicLong();  // Pings received
+    private final AtomicLong disconnects = new AtomicLong();  // Disconnections received
+    private final Histogram latency = new Histogram();  // Delivery latency in microseconds
+    private final StageHistograms traceStages =
+            new StageHistograms("network in", "server", "delivery", "end-to-end");  // Stages of the traced lines
+    private volatile boolean running = true;  // Cleared to stop the receiving thread
+
+    /**
+     * A simulated user: a socket and the protocol handling of one client.
+     */
+    private final class SimulatedUser implements PacketHandler, UDPOperation {
+        private final int index;  // Position of the user in the generator
+        private final String nick;  // Nick of the user
+        private final int room;  // Room of the user, 0 being the lobby
+        private final boolean idle;  // Whether the user never writes
+        private final DatagramChannel channel;  // Socket of the user
+        private final PacketHandler inbound;  // Reassembles fragments and acknowledges reliable messages
+        private volatile boolean inRoom = false;  // Whether the user is in its room
+
+        private SimulatedUser(int index) throws IOException {
+            this.index = index;
+            this.nick = "load" + index;
+            this.room = index % rooms;
+            this.idle = ThreadLocalRandom.current().nextDouble() < idleShare;
+            this.channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            channel.register(selector, SelectionKey.OP_READ, this);
+            ReliableReceiver reliable = new ReliableReceiver(this);
+            reliable.attach(this);
+            this.inbound = new FragmentReassembler(reliable);
+        }
+
+        /**
+         * Handles every message of a datagram from the server, after reassembly and acknowledgement.
+         */
+        @Override
+        public void processPacket(DatagramPacket packet) {
+            List<ServerMessage> messages = MessageUtil.parseServerMessages(packet.getData(), packet.getLength());
+            for (ServerMessage message : messages) {
+                switch (message.getStatus()) {
+                    case LOGIN_OK -> {
+                        loggedIn.incrementAndGet();
+                        if (room == 0) {
+                            enterRoom();
+                        } else {
+                            sendMessage("join load-" + room, ClientMessage.COMMAND);
+                        }
+                    }
+                    case INFO -> {
+                        if (message.getTrace() != null) recordTrace(message.getTrace());
+                        handleInfo(message.getContent());
+                    }
+                    case ERROR -> errors.incrementAndGet();
+                    case PING -> {
+                        pings.incrementAndGet();
+                        if (pong) sendMessage("pong", ClientMessage.PONG);
+                    }
+                    case DISCONNECT -> {
+                        disconnects.incrementAndGet();
+                        if (inRoom) {
+                            inRoom = false;
+                            members.decrementAndGet(room);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Records the latency of a chat line, or notices that the user entered its room.
+         */
+        private void handleInfo(String content) {
+            int mark = content.indexOf(MARK);
+            if (mark >= 0 && content.indexOf('\n') < 0) {  // History pages also hold old lines, on several lines
+                try {
+                    long sentAt = Long.parseLong(content, mark + MARK.length(), content.length(), 10);
+                    latency.record((System.nanoTime() - sentAt) / 1_000);
+                    delivered.incrementAndGet();
+                } catch (NumberFormatException e) {
+                    errors.incrementAndGet();
+                }
+            } else if (content.startsWith("You joined room")) {
+                enterRoom();
+            }
+        }
+
+        /**
+         * Records the stages of a traced line, as {@code client.Client} does.
+         */
+        private void recordTrace(Trace trace) {
+            long now = Trace.nowMicros();
+            traceStages.record(0, trace.serverReceiveMicros() - trace.clientSendMicros());
+            traceStages.record(1, trace.serverDispatchMicros() - trace.serverReceiveMicros());
+            traceStages.record(2, now - trace.serverDispatchMicros());
+            traceStages.record(3, now - trace.clientSendMicros());
+        }
+
+        /**
+         * Counts the user as a member of its room.
+         */
+        private void enterRoom() {
+            if (inRoom) return;
+            inRoom = true;
+            members.incrementAndGet(room);
+            joined.incrementAndGet();
+        }
+
+        /**
+         * Sends a message of the user to the server.
+         */
+        private void sendMessage(String content, int type) {
+            Trace lineTrace = trace && type == ClientMessage.MSG ? Trace.start() : null;
+            send(ByteBuffer.wrap(MessageUtil.createClientMessage(new ClientMessage(content, nick, type, lineTrace))), server);
+        }
+
+        @Override
+        public void send(byte[] data, InetAddress address, int port) {
+            send(ByteBuffer.wrap(data), new InetSocketAddress(address, port));
+        }
+
+        @Override
+        public void send(ByteBuffer data, InetSocketAddress target) {
+            try {
+                channel.send(data, target);
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void receive() {
+        }
+
+        @Override
+        public void setReceiveTimeout(int timeout) {
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    private LoadGenerator(Options options, ServerMetrics serverMetrics) throws IOException {
+        this.server = new InetSocketAddress(options.host, options.port);
+        this.users = options.users;
+        this.rooms = Math.max(1, options.rooms);
+        this.loginRate = options.loginRate;
+        this.lineRate = options.lineRate;
+        this.privateShare = options.privateShare;
+        this.idleShare = options.idleShare;
+        this.pong = options.pong;
+        this.trace = options.trace;
+        this.serverMetrics = serverMetrics;
+        this.durationMillis = options.durationSeconds * 1_000L;
+        this.reportMillis = options.reportSeconds * 1_000L;
+        this.selector = Selector.open();
+        this.members = new AtomicIntegerArray(rooms);
+        this.simulated = new SimulatedUser[users];
+        for (int i = 0; i < users; i++) {
+            simulated[i] = new SimulatedUser(i);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ServerMetrics serverMetrics = null;
+        if (options.embedded) {
+            Server embedded = new Server(options.port);
+            serverMetrics = embedded.getMetrics();
+            Thread thread = new Thread(embedded::run, "embedded-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        new LoadGenerator(options, serverMetrics).run();
+    }
+
+    /**
+     * Runs the login phase, the messaging phase and the report.
+     */
+    private void run() throws InterruptedException {
+        Thread receiver = new Thread(this::receiveLoop, "load-receiver");
+        receiver.start();
+
+        long loginStart = System.nanoTime();
+        for (int i = 0; i < users; i++) {
+            waitUntil(loginStart + (long) (i * 1e9 / loginRate));
+            simulated[i].sendMessage("login", ClientMessage.COMMAND);
+        }
+        long deadline = System.currentTimeMillis() + LOGIN_TIMEOUT_MILLIS;
+        while (joined.get() < users && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        double loginSeconds = (System.nanoTime() - loginStart) / 1e9;
+        System.out.printf("%d/%d users logged in and %d in their room after %.1f s%n",
+                loggedIn.get(), users, joined.get(), loginSeconds);
+
+        writers = Arrays.stream(simulated).filter(user -> !user.idle && user.inRoom).toArray(SimulatedUser[]::new);
+        if (writers.length == 0) System.out.println("No user can write, only pings will be answered");
+        latency.reset();
+        traceStages.reset();
+        if (serverMetrics != null) serverMetrics.resetHistograms();  // Measure the messaging phase only
+        delivered.set(0);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long nextReport = start + TimeUnit.MILLISECONDS.toNanos(reportMillis);
+        long lastDelivered = 0;
+        long lastSent = 0;
+        long sent = 0;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            long due = (long) ((now - start) * lineRate / 1e9);
+            while (sent < due) {
+                sendLine();
+                sent++;
+            }
+            if (now >= nextReport) {
+                long deliveredNow = delivered.get();
+                double seconds = reportMillis / 1e3;
+                System.out.printf("[%3d s] %8.0f lines/s %10.0f deliveries/s  p99 %s%n", (now - start) / 1_000_000_000,
+                        (sent - lastSent) / seconds, (deliveredNow - lastDelivered) / seconds, micros(latency.getPercentile(0.99)));
+                lastSent = sent;
+                lastDelivered = deliveredNow;
+                nextReport += TimeUnit.MILLISECONDS.toNanos(reportMillis);
+            }
+            LockSupport.parkNanos(100_000);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Thread.sleep(DRAIN_MILLIS);
+
+        running = false;
+        selector.wakeup();
+        receiver.join();
+        for (SimulatedUser user : simulated) {
+            user.sendMessage("exit", ClientMessage.COMMAND);
+            user.close();
+        }
+        report(seconds);
+    }
+
+    /**
+     * Sends one chat line from a random user that writes, as a broadcast to its room or as a private message to
+     * another random user.
+     */
+    private void sendLine() {
+        if (writers.length == 0) return;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        SimulatedUser sender = writers[random.nextInt(writers.length)];
+        String line = MARK.substring(1) + System.nanoTime();
+        if (random.nextDouble() < privateShare) {
+            SimulatedUser recipient = simulated[random.nextInt(users)];
+            if (recipient == sender) recipient = simulated[(sender.index + 1) % users];
+            expected.incrementAndGet();
+            sender.sendMessage("private " + recipient.nick + " " + line, ClientMessage.COMMAND);
+        } else {
+            expected.addAndGet(members.get(sender.room) - 1);
+            sender.sendMessage(line, ClientMessage.MSG);
+        }
+        linesSent.incrementAndGet();
+    }
+
+    /**
+     * Receives the datagrams of every user until the generator stops. Runs on its own thread.
+     */
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        DatagramPacket packet = new DatagramPacket(buffer.array(), BUFFER_SIZE);
+        while (running) {
+            try {
+                selector.select(100);
+                for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    SimulatedUser user = (SimulatedUser) key.attachment();
+                    SocketAddress source;
+                    while ((source = user.channel.receive(buffer)) != null) {
+                        packet.setData(buffer.array(), 0, buffer.position());
+                        packet.setSocketAddress(source);
+                        user.inbound.processPacket(packet);
+                        buffer.clear();
+                    }
+                }
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Prints the final report.
+     */
+    private void report(double seconds) {
+        long lines = linesSent.get();
+        long deliveries = delivered.get();
+        long wanted = expected.get();
+        System.out.printf("Lines sent: %d (%.0f/s)%n", lines, lines / seconds);
+        System.out.printf("Deliveries: %d of %d expected (%.0f/s), %.3f%% lost%n", deliveries, wanted,
+                deliveries / seconds, wanted == 0 ? 0.0 : 100.0 * Math.max(0, wanted - deliveries) / wanted);
+        System.out.printf("Latency: p50 %s, p99 %s, p999 %s, max %s%n", micros(latency.getPercentile(0.5)),
+                micros(latency.getPercentile(0.99)), micros(latency.getPercentile(0.999)), micros(latency.getMax()));
+        System.out.printf("Errors: %d, pings: %d, disconnections: %d%n", errors.get(), pings.get(), disconnects.get());
+        if (traceStages.getCount() > 0) {
+            System.out.printf("Traced deliveries: %d%n%s%n", traceStages.getCount(), traceStages.render());
+        }
+        if (serverMetrics != null && serverMetrics.getTracedMessages() > 0) {
+            System.out.printf("Server stages of %d traced lines, p50 %s, p99 %s (us)%n", serverMetrics.getTracedMessages(),
+                    serverMetrics.getTraceMicrosP50(), serverMetrics.getTraceMicrosP99());
+        }
+    }
+
+    /**
+     * Formats a number of microseconds.
+     */
+    private static String micros(long micros) {
+        return micros < 10_000 ? micros + " us" : String.format("%.1f ms", micros / 1e3);
+    }
+
+    /**
+     * Parks the calling thread until the given nanoTime.
+     */
+    private static void waitUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * The command line options.
+     */
+    private static final class Options {
+        private String host = "127.0.0.1";
+        private int port = 12345;
+        private boolean embedded = false;
+        private int users = 1000;
+        private int rooms = 10;
+        private double loginRate = 500;
+        private double lineRate = 2000;
+        private double privateShare = 0.1;
+        private double idleShare = 0.1;
+        private boolean pong = true;
+        private boolean trace = false;
+        private int durationSeconds = 30;
+        private int reportSeconds = 5;
+
+        private static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--host" -> options.host = args[++i];
+                    case "--port" -> options.port = Integer.parseInt(args[++i]);
+                    case "--embedded" -> options.embedded = true;
+                    case "--users" -> options.users = Integer.parseInt(args[++i]);
+                    case "--rooms" -> options.rooms = Integer.parseInt(args[++i]);
+                    case "--login-rate" -> options.loginRate = Double.parseDouble(args[++i]);
+                    case "--rate" -> options.lineRate = Double.parseDouble(args[++i]);
+                    case "--private" -> options.privateShare = Double.parseDouble(args[++i]);
+                    case "--idle" -> options.idleShare = Double.parseDouble(args[++i]);
+                    case "--no-pong" -> options.pong = false;
+                    case "--trace" -> options.trace = true;
+                    case "--duration" -> options.durationSeconds = Integer.parseInt(args[++i]);
+                    case "--report" -> options.reportSeconds = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            return options;
+        }
+    }
+}
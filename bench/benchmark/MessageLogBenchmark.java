@@ -0,0 +1,83 @@
+package benchmark;
+
+import server.history.HistoryStore;
+import server.history.MessageLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the {@link MessageLog} of a room: the throughput of appends, from the room thread queueing them to the
+ * appender having written them to the mapped segments, and the time to read the latest messages of a large log, as
+ * a room does when it is created. The log is written to a temporary directory that is deleted afterwards.
+ * Appends wait for the appender to keep the queue of the store from filling up, so no message is dropped.
+ * <p>
+ * Usage: {@code java -cp out:out-bench benchmark.MessageLogBenchmark [messages] [contentLength]}
+ */
+public class MessageLogBenchmark {
+    private static final int SEGMENT_BYTES = 16 * 1024 * 1024;  // Segment size of the benchmark log
+    private static final int BACKLOG = 32 * 1024;  // Appends queued ahead of the appender, below the queue capacity
+    private static int sink;  // Keeps the reads from being optimized away
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int contentLength = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        String content = "x".repeat(contentLength);
+        Path directory = Files.createTempDirectory("message-log-bench");
+        HistoryStore store = new HistoryStore(directory, SEGMENT_BYTES, Long.MAX_VALUE, TimeUnit.DAYS.toMillis(1));
+        try {
+            MessageLog log = store.getLog("bench");
+            long start = System.nanoTime();
+            long timestamp = System.currentTimeMillis();
+            for (int i = 0; i < messages; i++) {
+                while (i - log.getNextOffset() >= BACKLOG) {
+                    Thread.onSpinWait();  // Wait for the appender instead of filling the queue and dropping
+                }
+                log.append(timestamp, "user" + (i & 1023), content);
+            }
+            while (log.getNextOffset() < messages) {
+                Thread.sleep(1);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long bytes = (long) messages * recordSize("user512", content);
+            System.out.printf("%-28s %-18s %14.0f msg/s %12.1f MB/s %12d msgs%n", "log.append",
+                    "content=" + contentLength, messages / seconds, bytes / seconds / 1e6, messages);
+
+            for (int count : new int[]{10, 100}) {
+                System.out.println(Harness.measure("log.readTail", "count=" + count, 1_000, 2_000,
+                        () -> sink += log.readTail(count).size()));
+            }
+            long middle = messages / 2;
+            System.out.println(Harness.measure("log.readMiddle", "count=100", 1_000, 2_000,
+                    () -> sink += log.read(middle, 100).size()));
+        } finally {
+            store.close();
+            deleteDirectory(directory);
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    /**
+     * Computes the bytes of a record with ASCII strings: length, CRC and timestamp, then both strings with
+     * their varint lengths.
+     */
+    private static int recordSize(String nick, String content) {
+        return 16 + varintSize(nick.length()) + nick.length() + varintSize(content.length()) + content.length();
+    }
+
+    private static int varintSize(int value) {
+        return (32 - Integer.numberOfLeadingZeros(value | 1) + 6) / 7;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
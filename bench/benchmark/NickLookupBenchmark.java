@@ -0,0 +1,62 @@
+package benchmark;
+
+import server.model.ChatRoom;
+import server.model.User;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Measures looking a user up by nick, as private messages and logins do, in a large room.
+ * The nick index of {@link ChatRoom#getUserByNick} is compared with the case-insensitive scan of every user that
+ * the room used to do. Queries use a different case than the stored nicks, and the login check asks for a nick
+ * that is taken with another case.
+ * <p>
+ * Usage: {@code java -cp out:out-bench benchmark.NickLookupBenchmark [roomSize...]}
+ */
+public class NickLookupBenchmark {
+    private static final int QUERIES = 1024;  // Distinct nicks looked up in turn, a power of two
+    private static int sink;  // Keeps the lookups from being optimized away
+
+    public static void main(String[] args) throws UnknownHostException {
+        int[] sizes = args.length > 0 ? parseSizes(args) : new int[]{1_000, 100_000};
+        for (int size : sizes) {
+            ChatRoom room = BroadcastBenchmark.createRoom(size);
+            String[] queries = new String[QUERIES];
+            User[] logins = new User[QUERIES];
+            InetAddress address = InetAddress.getLoopbackAddress();
+            for (int i = 0; i < QUERIES; i++) {
+                int id = (int) ((i * 2_654_435_761L) % size);
+                queries[i] = "USER" + id;
+                logins[i] = new User("User" + id, address, 50_000);
+            }
+
+            int[] next = new int[1];
+            System.out.println(Harness.measure("nick.index", "users=" + size, 1_000, 2_000,
+                    () -> sink += room.getUserByNick(queries[next[0]++ & (QUERIES - 1)]) == null ? 0 : 1));
+            System.out.println(Harness.measure("nick.scan", "users=" + size, 1_000, 2_000,
+                    () -> sink += scan(room, queries[next[0]++ & (QUERIES - 1)]) == null ? 0 : 1));
+            System.out.println(Harness.measure("nick.loginTaken", "users=" + size, 1_000, 2_000,
+                    () -> sink += room.addUser(logins[next[0]++ & (QUERIES - 1)]) ? 1 : 0));
+        }
+        if (sink == 42) System.out.println();
+    }
+
+    /**
+     * The previous lookup: a case-insensitive comparison against every user in the room.
+     */
+    private static User scan(ChatRoom room, String nick) {
+        for (User user : room.getUsers()) {
+            if (user.getNick().equalsIgnoreCase(nick)) return user;
+        }
+        return null;
+    }
+
+    private static int[] parseSizes(String[] args) {
+        int[] sizes = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        return sizes;
+    }
+}
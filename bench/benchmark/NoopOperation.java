@@ -0,0 +1,58 @@
+package benchmark;
+
+import common.UDPOperation;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A UDPOperation that sends nothing and only counts the datagrams and bytes it was asked to send,
+ * so benchmarks measure the server code and not the kernel.
+ */
+public class NoopOperation implements UDPOperation {
+    private long packets;  // Datagrams "sent"
+    private long bytes;  // Bytes "sent"
+
+    @Override
+    public void send(byte[] data, InetAddress address, int port) {
+        packets++;
+        bytes += data.length;
+    }
+
+    @Override
+    public void send(ByteBuffer data, InetSocketAddress target) {
+        packets++;
+        bytes += data.remaining();
+    }
+
+    @Override
+    public void receive() {
+    }
+
+    @Override
+    public void setReceiveTimeout(int timeout) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Retrieves the number of datagrams sent so far.
+     *
+     * @return The datagram count.
+     */
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Retrieves the number of bytes sent so far.
+     *
+     * @return The byte count.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+}
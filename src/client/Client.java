@@ -1,65 +1,112 @@
 package client;
 
+import common.FragmentReassembler;
+import common.FragmentingOperation;
+import common.PacketHandler;
+import common.ReliableReceiver;
+import common.Transport;
+import common.UDPOperation;
+import common.codec.Trace;
 import common.util.MessageUtil;
-import common.UDPSocket;
+import common.util.SimpleLogger;
+import common.util.StageHistograms;
 import client.model.message.ClientMessage;
 import server.model.message.ServerMessage;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Represents a client in the UDP-based communication system. The client connects to a server, sends and receives messages,
  * and handles specific server responses such as login, disconnect, and ping.
  *
  * The client maintains the connection state and manages a queue of received messages.
+ * Messages that do not fit in the receive buffer travel in fragments both ways, see {@link FragmentingOperation}.
+ * <p>
+ * With the {@value #TRACE_PROPERTY} system property set, chat messages are sent with a {@link Trace}. The traced
+ * messages of other users arrive stamped by the server, and the time they spent in every stage is recorded.
  */
-public class Client extends UDPSocket {
+public class Client implements PacketHandler {
 
     private static final int PACKET_RECEPTION_TIMEOUT = 5000; // 5 seconds
     private static final int DEFAULT_BUFFER_SIZE = 1024; // Default buffer size for receiving packets
+    private static final String TRACE_PROPERTY = "chat.trace";  // System property enabling the tracing of the chat messages
+    private final Logger logger = SimpleLogger.getInstance().getLogger(Client.class);  // Logger for logging messages
+    private final UDPOperation socket;  // Transport used to talk to the server
     private boolean connected = false;
     private String nick;
     private final Queue<String> messageQueue = new LinkedList<>();  // Queue to store received messages
-    private final InetAddress serverAddress;
-    private final int serverPort;
+    private final InetSocketAddress serverAddress;  // Address of the server, created once for every message sent
+    private final boolean tracing = Boolean.getBoolean(TRACE_PROPERTY);  // Whether the chat messages are sent with a trace
+    private final StageHistograms traceStages =
+            new StageHistograms("network in", "server", "delivery", "end-to-end");  // Stages of the traced messages received
 
     /**
-     * Creates a new client and initializes the UDP socket for communication.
+     * Creates a new client and initializes the UDP socket for communication, using the transport configured
+     * through the system properties.
      *
      * @param serverAddress The IP address of the server to connect to.
      * @param serverPort The port number of the server.
      * @throws IOException If an error occurs while setting up the socket.
      */
     public Client(InetAddress serverAddress, int serverPort) throws IOException {
-        super(DEFAULT_BUFFER_SIZE);
+        this(serverAddress, serverPort, Transport.fromSystemProperty());
+    }
+
+    /**
+     * Creates a new client and initializes the UDP socket for communication with the given transport.
+     *
+     * @param serverAddress The IP address of the server to connect to.
+     * @param serverPort The port number of the server.
+     * @param transport The transport used to talk to the server.
+     * @throws IOException If an error occurs while setting up the socket.
+     */
+    public Client(InetAddress serverAddress, int serverPort, Transport transport) throws IOException {
         logger.setUseParentHandlers(false);
         logger.setLevel(Level.OFF);
-        this.serverAddress = serverAddress;
-        this.serverPort = serverPort;
+        this.serverAddress = new InetSocketAddress(serverAddress, serverPort);
 
-        socket.setSoTimeout(PACKET_RECEPTION_TIMEOUT); // Set socket timeout for receiving packets
+        SimpleLogger.getInstance().getLogger(transport.getImplementation()).setLevel(Level.OFF);  // Keep transport logs out of the console
+        ReliableReceiver reliableReceiver = new ReliableReceiver(this);  // Acknowledges the messages the server sends reliably
+        this.socket = new FragmentingOperation(transport.open(DEFAULT_BUFFER_SIZE, new FragmentReassembler(reliableReceiver)), DEFAULT_BUFFER_SIZE);
+        reliableReceiver.attach(socket);
+        socket.setReceiveTimeout(PACKET_RECEPTION_TIMEOUT); // Set socket timeout for receiving packets
     }
 
     /**
-     * Processes the received packet from the server. The packet is parsed and its content is handled
-     * based on the server message status.
+     * Processes the received packet from the server. The packet may carry a single message or a batch
+     * of messages coalesced by the server; each one is parsed and handled in order.
      *
      * @param packet The received DatagramPacket.
      */
     @Override
     public void processPacket(DatagramPacket packet) {
-        ServerMessage message = MessageUtil.parseServerMessage(packet.getData(), packet.getLength());
+        List<ServerMessage> messages = MessageUtil.parseServerMessages(packet.getData(), packet.getLength());
 
-        if (message == null) {
+        if (messages.isEmpty()) {
             logger.log(Level.SEVERE, "Bad message received");
             return;
         }
 
+        for (ServerMessage message : messages) {
+            handleMessage(message);
+        }
+    }
+
+    /**
+     * Handles a single message from the server based on its status.
+     *
+     * @param message The message to handle.
+     */
+    private void handleMessage(ServerMessage message) {
         ServerMessage.ServerStatus status = message.getStatus();
 
         //todo: this can be simplified.
@@ -68,12 +115,29 @@ public class Client extends UDPSocket {
                 connected = true;
                 messageQueue.add(message.getContent());
             }
-            case INFO, ERROR -> messageQueue.add(message.getContent());
+            case INFO, ERROR -> {
+                if (message.getTrace() != null) recordTrace(message.getTrace());
+                messageQueue.add(message.getContent());
+            }
             case DISCONNECT -> handleDisconnectMessage(message);
             case PING -> handlePing();
         }
     }
 
+    /**
+     * Records the stages of a traced message of another user: from its sender to the server, inside the server,
+     * from the server to this client, and the whole way.
+     *
+     * @param trace The trace of the message, stamped by the server.
+     */
+    private void recordTrace(Trace trace) {
+        long now = Trace.nowMicros();
+        traceStages.record(0, trace.serverReceiveMicros() - trace.clientSendMicros());
+        traceStages.record(1, trace.serverDispatchMicros() - trace.serverReceiveMicros());
+        traceStages.record(2, now - trace.serverDispatchMicros());
+        traceStages.record(3, now - trace.clientSendMicros());
+    }
+
     /**
      * Handles the ping message received from the server by sending a pong message back.
      */
@@ -106,6 +170,14 @@ public class Client extends UDPSocket {
         receive();  // Wait for confirmation from the server
     }
 
+    /**
+     * Waits for the next packets from the server and processes them.
+     * Returns after the reception timeout if nothing arrives.
+     */
+    public void receive() {
+        socket.receive();
+    }
+
     /**
      * Disconnects the client from the server and closes the socket.
      */
@@ -116,12 +188,15 @@ public class Client extends UDPSocket {
     }
 
     /**
-     * Sends a message to the server.
+     * Sends a message to the server. Chat messages get a trace when tracing is enabled.
      *
      * @param message The message to be sent.
      */
     public void sendMessage(ClientMessage message) {
-        send(MessageUtil.createClientMessage(message), serverAddress, serverPort);
+        if (tracing && message.getType() == ClientMessage.MSG && message.getTrace() == null) {
+            message = new ClientMessage(message.getContent(), message.getNick(), message.getType(), Trace.start());
+        }
+        socket.send(ByteBuffer.wrap(MessageUtil.createClientMessage(message)), serverAddress);
     }
 
     /**
@@ -154,6 +229,15 @@ public class Client extends UDPSocket {
         return !messageQueue.isEmpty();
     }
 
+    /**
+     * Retrieves the latency of the traced messages received, by stage.
+     *
+     * @return The stage histograms, in microseconds.
+     */
+    public StageHistograms getTraceStages() {
+        return traceStages;
+    }
+
     /**
      * Retrieves the current nickname of the client.
      *
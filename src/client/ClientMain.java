@@ -1,6 +1,7 @@
 package client;
 
 import client.model.message.ClientMessage;
+import common.util.StageHistograms;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -132,8 +133,9 @@ public class ClientMain {
             while (client.isConnected()) {
                 client.receive();
                 if (client.hasMessages()) {
-                    String lastMessage = client.retrieveNextMessage();
-                    displayMessages(lastMessage);
+                    while (client.hasMessages()) {  // A single packet may carry several coalesced messages
+                        displayMessages(client.retrieveNextMessage());
+                    }
                     System.out.print("\r> ");  // Keep the prompt on the same line
                 }
             }
@@ -179,10 +181,16 @@ public class ClientMain {
     }
 
     /**
-     * Disconnects from the server and exits the program.
+     * Disconnects from the server and exits the program, printing the latency of the traced messages received,
+     * if any.
      */
     private static void disconnectAndExit() {
         System.out.println("Disconnecting...");
+        StageHistograms traceStages = client.getTraceStages();
+        if (traceStages.getCount() > 0) {
+            System.out.println("Latency of the " + traceStages.getCount() + " traced messages received:");
+            System.out.println(traceStages.render());
+        }
         client.disconnect();
         System.exit(0);
     }
@@ -1,8 +1,11 @@
 package client.model.message;
 
+import common.codec.Trace;
+
 /**
  * Represents a message sent by the client to the server in the communication system.
  * The message contains the content, the sender's nickname, and the type of message (either a regular message or a command).
+ * It may also carry a {@link Trace}, to measure the latency of its delivery.
  */
 public class ClientMessage {
 
@@ -24,6 +27,7 @@ public class ClientMessage {
     private final String content;  // The content of the message
     private final String nick;     // The nickname of the sender
     private final int type;        // The type of the message (0 for regular message, 1 for command)
+    private final Trace trace;     // The trace fields of the message, null if it is not traced
 
     /**
      * Creates a new client message with the specified content, sender nickname, and message type.
@@ -33,9 +37,22 @@ public class ClientMessage {
      * @param type The type of the message (0 for regular message, 1 for command, 2 for pong).
      */
     public ClientMessage(String content, String nick, int type) {
+        this(content, nick, type, null);
+    }
+
+    /**
+     * Creates a new client message that optionally carries trace fields.
+     *
+     * @param content The content of the message.
+     * @param nick The nickname of the sender.
+     * @param type The type of the message (0 for regular message, 1 for command, 2 for pong).
+     * @param trace The trace of the message, or null if it is not traced.
+     */
+    public ClientMessage(String content, String nick, int type, Trace trace) {
         this.content = content;
         this.nick = nick;
         this.type = type;
+        this.trace = trace;
     }
 
     /**
@@ -64,5 +81,14 @@ public class ClientMessage {
     public int getType() {
         return type;
     }
+
+    /**
+     * Gets the trace fields of the message.
+     *
+     * @return The trace, or null if the message is not traced.
+     */
+    public Trace getTrace() {
+        return trace;
+    }
 }
 
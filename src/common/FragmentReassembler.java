@@ -0,0 +1,175 @@
+package common;
+
+import common.codec.BinaryCodec;
+import common.util.SimpleLogger;
+
+import java.net.DatagramPacket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The FragmentReassembler class is a PacketHandler that puts back together the payloads split by a
+ * {@link FragmentingOperation} and hands them to the wrapped handler as one packet. Other packets go straight
+ * through.
+ * <p>
+ * Partial payloads are bounded in number and in bytes, and dropped if they are not completed within
+ * {@link #TIMEOUT_MILLIS}, so lost fragments or a peer sending fragments that never complete cannot exhaust the
+ * memory. Partials are kept in arrival order, so the expired ones are always at the head, and when a bound is
+ * reached the oldest partial makes room for the new one.
+ * <p>
+ * The reassembler may be shared by several receiving threads: fragments are stored under its lock, and the
+ * wrapped handler is called outside of it.
+ */
+public class FragmentReassembler implements PacketHandler {
+    private static final long TIMEOUT_MILLIS = 5000;  // Time to receive every fragment of a payload
+    private static final int MAX_PARTIALS = 256;  // Payloads being reassembled at once
+    private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;  // Bytes of the fragments held at once
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(FragmentReassembler.class);  // Logger for the class
+
+    private final PacketHandler handler;  // Handler of the packets and reassembled payloads
+    private final Map<PartialKey, Partial> partials = new LinkedHashMap<>();  // Payloads being reassembled, oldest first, guarded by itself
+    private int pendingBytes = 0;  // Bytes held by the partials, guarded by the partials
+    private long dropped = 0;  // Partials dropped because they expired or made room, guarded by the partials
+
+    /**
+     * Identifies a payload: the address that sent it and the id it was given there.
+     */
+    private record PartialKey(SocketAddress source, int payloadId) {
+    }
+
+    /**
+     * The fragments of a payload received so far.
+     */
+    private static final class Partial {
+        private final byte[][] fragments;  // Slices of the payload by index, null until received
+        private final long createdAt;  // Time the first fragment arrived
+        private int received = 0;  // Number of fragments received
+        private int bytes = 0;  // Bytes of the fragments received
+
+        private Partial(int count, long createdAt) {
+            this.fragments = new byte[count][];
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Constructs a reassembler in front of the given handler.
+     *
+     * @param handler The handler of the packets and the reassembled payloads.
+     */
+    public FragmentReassembler(PacketHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Stores a fragment, handing the payload to the wrapped handler once it is complete. Any other packet is
+     * handed over as is.
+     *
+     * @param packet The received packet.
+     */
+    @Override
+    public void processPacket(DatagramPacket packet) {
+        byte[] data = packet.getData();
+        int offset = packet.getOffset();
+        int length = packet.getLength();
+        if (!BinaryCodec.isFragment(data, offset, length)) {
+            handler.processPacket(packet);
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(data, offset + 2, BinaryCodec.FRAGMENT_HEADER_SIZE - 2);
+        int payloadId = header.getInt();
+        int index = header.get() & 0xFF;
+        int count = header.get() & 0xFF;
+        if (count < 2 || count > FragmentingOperation.MAX_FRAGMENTS || index >= count) {
+            logger.log(Level.WARNING, "Malformed fragment from {0}", packet.getSocketAddress());
+            return;
+        }
+
+        byte[] slice = new byte[length - BinaryCodec.FRAGMENT_HEADER_SIZE];
+        System.arraycopy(data, offset + BinaryCodec.FRAGMENT_HEADER_SIZE, slice, 0, slice.length);
+        byte[] payload = store(new PartialKey(packet.getSocketAddress(), payloadId), index, count, slice);
+        if (payload != null) {
+            handler.processPacket(new DatagramPacket(payload, payload.length, packet.getSocketAddress()));
+        }
+    }
+
+    /**
+     * Stores a fragment in its partial payload.
+     *
+     * @return The whole payload if the fragment completed it, null otherwise.
+     */
+    private byte[] store(PartialKey key, int index, int count, byte[] slice) {
+        long now = System.currentTimeMillis();
+        synchronized (partials) {
+            expire(now);
+            Partial partial = partials.get(key);
+            if (partial == null) {
+                makeRoom(slice.length);
+                partial = new Partial(count, now);
+                partials.put(key, partial);
+            } else if (partial.fragments.length != count) {
+                return null;  // Does not belong to this payload
+            }
+            if (partial.fragments[index] != null) return null;  // Duplicate
+
+            partial.fragments[index] = slice;
+            partial.received++;
+            partial.bytes += slice.length;
+            pendingBytes += slice.length;
+            if (partial.received < count) {
+                if (pendingBytes > MAX_PENDING_BYTES) makeRoom(0);
+                return null;
+            }
+
+            partials.remove(key);
+            pendingBytes -= partial.bytes;
+            byte[] payload = new byte[partial.bytes];
+            int position = 0;
+            for (byte[] fragment : partial.fragments) {
+                System.arraycopy(fragment, 0, payload, position, fragment.length);
+                position += fragment.length;
+            }
+            return payload;
+        }
+    }
+
+    /**
+     * Drops the partials whose time to complete is over. Called with the lock held.
+     */
+    private void expire(long now) {
+        Iterator<Partial> oldest = partials.values().iterator();
+        while (oldest.hasNext()) {
+            Partial partial = oldest.next();
+            if (now - partial.createdAt < TIMEOUT_MILLIS) break;  // The rest arrived later
+            drop(oldest, partial);
+        }
+    }
+
+    /**
+     * Drops the oldest partials until there is room for another one holding the given bytes.
+     * Called with the lock held.
+     */
+    private void makeRoom(int bytes) {
+        Iterator<Partial> oldest = partials.values().iterator();
+        while (oldest.hasNext() && (partials.size() >= MAX_PARTIALS || pendingBytes + bytes > MAX_PENDING_BYTES)) {
+            drop(oldest, oldest.next());
+        }
+    }
+
+    /**
+     * Removes a partial and accounts for it. Called with the lock held.
+     */
+    private void drop(Iterator<Partial> iterator, Partial partial) {
+        iterator.remove();
+        pendingBytes -= partial.bytes;
+        if (dropped++ % 100 == 0) {
+            logger.log(Level.WARNING, "Dropped incomplete payloads: {0}", dropped);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package common;
+
+import common.codec.BinaryCodec;
+import common.util.BufferPool;
+import common.util.SimpleLogger;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The FragmentingOperation class wraps a UDPOperation and splits the payloads larger than the receive buffer
+ * of the peer into numbered fragments, which a {@link FragmentReassembler} on the other side puts back together.
+ * Payloads that fit are sent unchanged, so only large messages pay for the fragment headers.
+ * <p>
+ * A payload can have up to {@link #MAX_FRAGMENTS} fragments; larger ones are dropped and logged. Fragments are
+ * sent back to back through pooled buffers, so splitting a payload does not allocate.
+ */
+public class FragmentingOperation implements UDPOperation {
+    /**
+     * Maximum number of fragments of a payload.
+     */
+    public static final int MAX_FRAGMENTS = 64;
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(FragmentingOperation.class);  // Logger for the class
+
+    private final UDPOperation delegate;  // Transport that sends the datagrams
+    private final int maxDatagramSize;  // Largest datagram the peer can receive
+    private final BufferPool fragmentBuffers;  // Buffers the fragments are assembled in
+    private final AtomicInteger nextPayloadId = new AtomicInteger();  // Id of the next fragmented payload
+
+    /**
+     * Constructs a FragmentingOperation that keeps every datagram within the given size.
+     *
+     * @param delegate The transport that sends the datagrams.
+     * @param maxDatagramSize The receive buffer size of the peers, larger payloads are fragmented.
+     */
+    public FragmentingOperation(UDPOperation delegate, int maxDatagramSize) {
+        this.delegate = delegate;
+        this.maxDatagramSize = maxDatagramSize;
+        this.fragmentBuffers = new BufferPool(Runtime.getRuntime().availableProcessors(), maxDatagramSize);
+    }
+
+    /**
+     * Computes the largest payload that can be sent in fragments of the given datagram size.
+     *
+     * @param maxDatagramSize The receive buffer size of the peers.
+     * @return The largest payload in bytes.
+     */
+    public static int maxPayloadSize(int maxDatagramSize) {
+        return MAX_FRAGMENTS * (maxDatagramSize - BinaryCodec.FRAGMENT_HEADER_SIZE);
+    }
+
+    /**
+     * Sends the data, in fragments if it does not fit in one datagram.
+     *
+     * @param data The data to send, in byte array form.
+     * @param address The destination InetAddress.
+     * @param port The destination port number.
+     */
+    @Override
+    public void send(byte[] data, InetAddress address, int port) {
+        if (data.length <= maxDatagramSize) {
+            delegate.send(data, address, port);
+        } else {
+            send(ByteBuffer.wrap(data), new InetSocketAddress(address, port));
+        }
+    }
+
+    /**
+     * Sends the remaining bytes of the buffer, in fragments if they do not fit in one datagram.
+     * The position of the buffer is left unchanged.
+     *
+     * @param data The data to send, from its position to its limit.
+     * @param target The destination socket address.
+     */
+    @Override
+    public void send(ByteBuffer data, InetSocketAddress target) {
+        int length = data.remaining();
+        if (length <= maxDatagramSize) {
+            delegate.send(data, target);
+            return;
+        }
+
+        int sliceSize = maxDatagramSize - BinaryCodec.FRAGMENT_HEADER_SIZE;
+        int count = (length + sliceSize - 1) / sliceSize;
+        if (count > MAX_FRAGMENTS) {
+            logger.log(Level.SEVERE, "Payload of {0} bytes needs more than {1} fragments, dropped", new Object[]{length, MAX_FRAGMENTS});
+            return;
+        }
+
+        int payloadId = nextPayloadId.getAndIncrement();
+        ByteBuffer fragment = fragmentBuffers.acquire();
+        try {
+            for (int index = 0, start = data.position(); index < count; index++, start += sliceSize) {
+                fragment.clear();
+                BinaryCodec.writeFragmentHeader(fragment, payloadId, index, count);
+                fragment.put(fragment.position(), data, start, Math.min(sliceSize, data.limit() - start));
+                fragment.limit(BinaryCodec.FRAGMENT_HEADER_SIZE + Math.min(sliceSize, data.limit() - start)).position(0);
+                delegate.send(fragment, target);
+            }
+        } finally {
+            fragmentBuffers.release(fragment);
+        }
+    }
+
+    /**
+     * Receives through the wrapped transport; fragments are reassembled by its packet handler.
+     */
+    @Override
+    public void receive() {
+        delegate.receive();
+    }
+
+    /**
+     * Sets the receive timeout of the wrapped transport.
+     *
+     * @param timeout The timeout in milliseconds, 0 to wait indefinitely.
+     */
+    @Override
+    public void setReceiveTimeout(int timeout) {
+        delegate.setReceiveTimeout(timeout);
+    }
+
+    /**
+     * Closes the wrapped transport.
+     */
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,235 @@
+package common;
+
+import common.util.SimpleLogger;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The NioUDPSocket class is the non-blocking implementation of the UDPOperation interface.
+ * It is built on a {@link DatagramChannel} registered with a {@link Selector}, and reads and writes
+ * through direct ByteBuffers that are allocated once and reused for every packet.
+ * Each wakeup of the selector drains all the datagrams queued in the socket, so a single thread
+ * can keep up with bursts of traffic without allocating a packet per datagram.
+ * <p>
+ * Sends allocate nothing either: callers pass the cached socket address of their peer, and every sent datagram
+ * is only logged at FINE, behind the level check, so a broadcast does not flood the log.
+ */
+public class NioUDPSocket implements UDPOperation {
+    private static final int MAX_DATAGRAM_SIZE = 65507;  // Largest UDP payload over IPv4
+    private static final int MAX_PACKETS_PER_WAKEUP = 256;  // Upper bound of packets drained before selecting again
+
+    private final Logger logger = SimpleLogger.getInstance().getLogger(getClass());  // Logger for logging messages
+    private final DatagramChannel channel;  // The underlying non-blocking channel
+    private final Selector selector;  // Selector used to wait for readable datagrams
+    private final ByteBuffer receiveBuffer;  // Direct buffer the channel reads into
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);  // Direct buffer the channel writes from
+    private InetSocketAddress lastTarget;  // Target of the last byte array sent, reused while it does not change; guarded by sendBuffer
+    private final byte[] packetData;  // Heap copy of the last datagram, exposed to the handler
+    private final DatagramPacket packet;  // Packet reused for every datagram handed to the handler
+    private final PacketHandler handler;  // Receives every packet read from the channel
+    private volatile int receiveTimeout = 0;  // Milliseconds to wait in select, 0 waits indefinitely
+
+    /**
+     * Constructs a new NioUDPSocket bound to the specified port.
+     *
+     * @param port The port number to bind the channel to, 0 for an ephemeral port.
+     * @param bufferSize The size of the buffer to use for receiving data.
+     * @param handler The handler that processes the received packets.
+     * @throws IOException If there is an error opening or binding the channel.
+     */
+    public NioUDPSocket(int port, int bufferSize, PacketHandler handler) throws IOException {
+        this(port, bufferSize, false, handler);
+    }
+
+    /**
+     * Constructs a new NioUDPSocket bound to the specified port, optionally enabling SO_REUSEPORT
+     * so several channels can be bound to the same port.
+     *
+     * @param port The port number to bind the channel to, 0 for an ephemeral port.
+     * @param bufferSize The size of the buffer to use for receiving data.
+     * @param reusePort Whether to enable SO_REUSEPORT before binding.
+     * @param handler The handler that processes the received packets.
+     * @throws IOException If there is an error opening or binding the channel.
+     */
+    public NioUDPSocket(int port, int bufferSize, boolean reusePort, PacketHandler handler) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.configureBlocking(false);
+        if (reusePort) {
+            this.channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        this.channel.bind(new InetSocketAddress(port));
+        this.selector = Selector.open();
+        this.channel.register(selector, SelectionKey.OP_READ);
+
+        this.receiveBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.packetData = new byte[bufferSize];
+        this.packet = new DatagramPacket(packetData, bufferSize);
+        this.handler = handler;
+
+        log(Level.INFO, "Channel created on port %d with buffer size %d", getLocalPort(), bufferSize);
+    }
+
+    /**
+     * Constructs a new NioUDPSocket bound to an ephemeral port.
+     *
+     * @param bufferSize The size of the buffer to use for receiving data.
+     * @param handler The handler that processes the received packets.
+     * @throws IOException If there is an error opening the channel.
+     */
+    public NioUDPSocket(int bufferSize, PacketHandler handler) throws IOException {
+        this(0, bufferSize, handler);
+    }
+
+    /**
+     * Sends the specified data to the given address and port. The data is copied into the reused
+     * direct send buffer, so the channel does not need a temporary buffer of its own. The socket address of the
+     * last target is kept, so sending to the same peer again does not allocate one.
+     * If the kernel send buffer is full the datagram is dropped, as it would be on the wire.
+     *
+     * @param data The data to send as a byte array.
+     * @param address The destination address to send the data to.
+     * @param port The destination port to send the data to.
+     */
+    @Override
+    public void send(byte[] data, InetAddress address, int port) {
+        try {
+            int sent;
+            synchronized (sendBuffer) {
+                sendBuffer.clear();
+                sendBuffer.put(data);
+                sendBuffer.flip();
+                InetSocketAddress target = lastTarget;
+                if (target == null || target.getPort() != port || !address.equals(target.getAddress())) {
+                    target = new InetSocketAddress(address, port);
+                    lastTarget = target;
+                }
+                sent = channel.send(sendBuffer, target);
+            }
+            if (sent == 0) {
+                log(Level.WARNING, "Send buffer full, dropped %d bytes to %s:%d", data.length, address, port);
+            } else if (logger.isLoggable(Level.FINE)) {
+                log(Level.FINE, "Data sent to %s:%d, size: %d bytes", address, port, sent);
+            }
+        } catch (IOException e) {
+            log(Level.SEVERE, "IO exception occurred while sending data: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the remaining bytes of the buffer to the given target. Direct buffers are written by the channel
+     * without any copy; the position is restored afterwards so the buffer can be sent again.
+     *
+     * @param data The data to send, from its position to its limit.
+     * @param target The destination socket address.
+     */
+    @Override
+    public void send(ByteBuffer data, InetSocketAddress target) {
+        int position = data.position();
+        try {
+            int sent = channel.send(data, target);
+            if (sent == 0) {
+                log(Level.WARNING, "Send buffer full, dropped %d bytes to %s", data.remaining(), target);
+            } else if (logger.isLoggable(Level.FINE)) {
+                log(Level.FINE, "Data sent to %s, size: %d bytes", target, sent);
+            }
+        } catch (IOException e) {
+            log(Level.SEVERE, "IO exception occurred while sending data: %s", e.getMessage());
+        } finally {
+            data.position(position);
+        }
+    }
+
+    /**
+     * Waits until the channel is readable and then drains every queued datagram, handing each one
+     * to the packet handler. Returns without processing anything if the receive timeout expires.
+     */
+    @Override
+    public void receive() {
+        try {
+            int timeout = receiveTimeout;
+            int ready = timeout > 0 ? selector.select(timeout) : selector.select();
+            if (ready == 0) return;
+            selector.selectedKeys().clear();
+
+            int drained = 0;
+            SocketAddress source;
+            while (drained < MAX_PACKETS_PER_WAKEUP && (source = channel.receive(receiveBuffer)) != null) {
+                receiveBuffer.flip();
+                int length = receiveBuffer.remaining();
+                receiveBuffer.get(packetData, 0, length);
+                receiveBuffer.clear();
+
+                packet.setData(packetData, 0, length);
+                packet.setSocketAddress(source);
+                handler.processPacket(packet);  // Process the received packet
+                drained++;
+            }
+            log(Level.FINE, "Drained %d packets in one wakeup", drained);
+        } catch (ClosedChannelException | ClosedSelectorException e) {
+            log(Level.INFO, "Channel closed while receiving data");
+        } catch (IOException e) {
+            log(Level.SEVERE, "IO exception occurred while receiving data: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Sets how long the selector waits for a readable datagram.
+     *
+     * @param timeout The timeout in milliseconds, 0 to wait indefinitely.
+     */
+    @Override
+    public void setReceiveTimeout(int timeout) {
+        this.receiveTimeout = timeout;
+    }
+
+    /**
+     * Closes the selector and the channel, waking up any thread blocked in {@link #receive()}.
+     */
+    @Override
+    public void close() {
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            log(Level.SEVERE, "IO exception occurred while closing the channel: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the local port the channel is bound to.
+     *
+     * @return The local port, or -1 if it cannot be determined.
+     */
+    private int getLocalPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Logs messages at the specified level with the provided message format and arguments.
+     * The message is only formatted if the level is enabled, and then by the log writer thread.
+     *
+     * @param level The logging level (e.g., INFO, SEVERE).
+     * @param msg The format string for the log message.
+     * @param args The arguments to format the message string.
+     */
+    public void log(Level level, String msg, Object... args) {
+        SimpleLogger.log(logger, level, msg, args);
+    }
+}
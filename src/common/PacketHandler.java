@@ -0,0 +1,20 @@
+package common;
+
+import java.net.DatagramPacket;
+
+/**
+ * The PacketHandler interface is implemented by the components that consume the datagrams received by an
+ * {@link UDPOperation}. Transports call it once per received packet, from their receiving thread.
+ */
+@FunctionalInterface
+public interface PacketHandler {
+
+    /**
+     * Processes the received DatagramPacket.
+     * The packet and its data buffer may be reused by the transport once this method returns,
+     * so implementations must copy anything they need to keep.
+     *
+     * @param packet The DatagramPacket that has been received.
+     */
+    void processPacket(DatagramPacket packet);
+}
@@ -0,0 +1,144 @@
+package common;
+
+import common.codec.BinaryCodec;
+
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ReliableReceiver class is the receiving side of the reliable delivery of {@code server.ReliableSender}:
+ * a PacketHandler that acknowledges every reliable datagram and hands its payload to the wrapped handler once,
+ * however many times it is retransmitted. Payloads are handed over as they arrive, without waiting for the ones
+ * that were lost before them. Other packets go straight through.
+ * <p>
+ * For every sender it keeps the highest sequence number up to which everything arrived and a bitmap of the
+ * {@value Long#SIZE} sequence numbers after it, which is also what the ACKs carry. The sender never has more in
+ * flight, so a sequence number beyond the bitmap means the sender gave up the oldest missing ones, and they are
+ * skipped. A datagram of a new channel of the sender resets its state.
+ * <p>
+ * The receiver is used by a single receiving thread.
+ */
+public class ReliableReceiver implements PacketHandler {
+    private final PacketHandler handler;  // Handler of the packets and the reliable payloads
+    private final Map<SocketAddress, ReceiveState> states = new HashMap<>();  // State per sender
+    private final ByteBuffer ack = ByteBuffer.allocate(BinaryCodec.ACK_SIZE);  // Reused ACK datagram
+    private UDPOperation socket;  // Transport the ACKs are sent through
+
+    /**
+     * What arrived from one channel of a sender.
+     */
+    private static final class ReceiveState {
+        private final int channelId;  // Channel of the sender
+        private int cumulative = 0;  // Highest sequence number up to which everything arrived
+        private long selective = 0;  // Bit i set if cumulative + 2 + i arrived
+
+        private ReceiveState(int channelId) {
+            this.channelId = channelId;
+        }
+    }
+
+    /**
+     * Constructs a receiver in front of the given handler. The transport must be attached before packets arrive.
+     *
+     * @param handler The handler of the packets and the reliable payloads.
+     */
+    public ReliableReceiver(PacketHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Sets the transport the ACKs are sent through, which is usually created with this receiver as its handler.
+     *
+     * @param socket The transport.
+     */
+    public void attach(UDPOperation socket) {
+        this.socket = socket;
+    }
+
+    /**
+     * Acknowledges a reliable datagram and hands its payload over if it is new. Any other packet is handed over
+     * as is.
+     *
+     * @param packet The received packet.
+     */
+    @Override
+    public void processPacket(DatagramPacket packet) {
+        byte[] data = packet.getData();
+        int offset = packet.getOffset();
+        int length = packet.getLength();
+        if (!BinaryCodec.isReliable(data, offset, length)) {
+            handler.processPacket(packet);
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(data, offset + 2, BinaryCodec.RELIABLE_HEADER_SIZE - 2);
+        int channelId = header.getInt();
+        int sequence = header.getInt();
+        SocketAddress source = packet.getSocketAddress();
+        ReceiveState state = states.get(source);
+        if (state == null || state.channelId != channelId) {
+            state = new ReceiveState(channelId);
+            states.put(source, state);
+        }
+
+        boolean fresh = record(state, sequence);
+        sendAck(state, (InetSocketAddress) source);  // Duplicates are acknowledged again, the last ACK may have been lost
+        if (fresh) {
+            byte[] payload = Arrays.copyOfRange(data, offset + BinaryCodec.RELIABLE_HEADER_SIZE, offset + length);
+            handler.processPacket(new DatagramPacket(payload, payload.length, source));
+        }
+    }
+
+    /**
+     * Records the arrival of a sequence number.
+     *
+     * @return true if it arrived for the first time, false if it is a duplicate.
+     */
+    private static boolean record(ReceiveState state, int sequence) {
+        int distance = sequence - state.cumulative;  // Overflow-safe comparison
+        if (distance <= 0) return false;
+        if (distance > 2 * Long.SIZE) {  // The sender gave up everything we miss, start over from here
+            state.cumulative = sequence - 1;
+            state.selective = 0;
+        }
+        while (sequence - state.cumulative - 2 >= Long.SIZE) {  // The sender gave up the oldest ones, skip them
+            advance(state);
+        }
+        if (sequence - state.cumulative == 1) {
+            advance(state);
+            return true;
+        }
+        long mask = 1L << (sequence - state.cumulative - 2);
+        if ((state.selective & mask) != 0) return false;
+        state.selective |= mask;
+        return true;
+    }
+
+    /**
+     * Marks the next expected sequence number as done and moves past the ones that had already arrived.
+     */
+    private static void advance(ReceiveState state) {
+        state.cumulative++;
+        while ((state.selective & 1) != 0) {  // Bit 0 is now the next expected sequence number
+            state.selective >>>= 1;
+            state.cumulative++;
+        }
+        state.selective >>>= 1;
+    }
+
+    /**
+     * Sends the state of a channel back to its sender.
+     */
+    private void sendAck(ReceiveState state, InetSocketAddress target) {
+        if (socket == null) return;
+        ack.clear();
+        BinaryCodec.writeAck(ack, state.channelId, state.cumulative, state.selective);
+        ack.flip();
+        socket.send(ack, target);
+    }
+}
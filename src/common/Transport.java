@@ -0,0 +1,114 @@
+package common;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+
+/**
+ * Enumeration of the available UDP transports. Both the server and the client pick their transport at startup
+ * through the {@value #PROPERTY} system property, so the same load can be run against each implementation.
+ */
+public enum Transport {
+    BLOCKING(UDPSocket.class),  // DatagramSocket based, one packet per receive call
+    NIO(NioUDPSocket.class);  // DatagramChannel + Selector based, drains bursts through reused direct buffers
+
+    /**
+     * System property used to select the transport (blocking or nio).
+     */
+    public static final String PROPERTY = "chat.transport";
+
+    private final Class<? extends UDPOperation> implementation;
+
+    /**
+     * Constructor for Transport enumeration.
+     *
+     * @param implementation The class implementing the transport.
+     */
+    Transport(Class<? extends UDPOperation> implementation) {
+        this.implementation = implementation;
+    }
+
+    /**
+     * Retrieves the class implementing the transport, which is also the class its logger is registered under.
+     *
+     * @return The implementation class.
+     */
+    public Class<? extends UDPOperation> getImplementation() {
+        return implementation;
+    }
+
+    /**
+     * Opens a transport of this type bound to the specified port.
+     *
+     * @param port The port number to bind to, 0 for an ephemeral port.
+     * @param bufferSize The size of the buffer to use for receiving data.
+     * @param handler The handler that processes the received packets.
+     * @return The opened UDPOperation.
+     * @throws IOException If the socket cannot be created or bound.
+     */
+    public UDPOperation open(int port, int bufferSize, PacketHandler handler) throws IOException {
+        return open(port, bufferSize, false, handler);
+    }
+
+    /**
+     * Opens a transport of this type bound to the specified port, optionally with SO_REUSEPORT enabled
+     * so that several transports can share the port and the kernel spreads the incoming datagrams among them.
+     *
+     * @param port The port number to bind to, 0 for an ephemeral port.
+     * @param bufferSize The size of the buffer to use for receiving data.
+     * @param reusePort Whether to enable SO_REUSEPORT before binding.
+     * @param handler The handler that processes the received packets.
+     * @return The opened UDPOperation.
+     * @throws IOException If the socket cannot be created or bound.
+     */
+    public UDPOperation open(int port, int bufferSize, boolean reusePort, PacketHandler handler) throws IOException {
+        return switch (this) {
+            case BLOCKING -> new UDPSocket(port, bufferSize, reusePort, handler);
+            case NIO -> new NioUDPSocket(port, bufferSize, reusePort, handler);
+        };
+    }
+
+    /**
+     * Opens a transport of this type bound to an ephemeral port.
+     *
+     * @param bufferSize The size of the buffer to use for receiving data.
+     * @param handler The handler that processes the received packets.
+     * @return The opened UDPOperation.
+     * @throws IOException If the socket cannot be created.
+     */
+    public UDPOperation open(int bufferSize, PacketHandler handler) throws IOException {
+        return switch (this) {
+            case BLOCKING -> new UDPSocket(bufferSize, handler);
+            case NIO -> new NioUDPSocket(bufferSize, handler);
+        };
+    }
+
+    /**
+     * Checks whether the platform supports SO_REUSEPORT on datagram sockets.
+     *
+     * @return true if SO_REUSEPORT can be enabled, false otherwise.
+     */
+    public static boolean isReusePortSupported() {
+        try (DatagramSocket probe = new DatagramSocket(null)) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Resolves the transport configured through the {@value #PROPERTY} system property.
+     *
+     * @return The configured transport, or BLOCKING if none or an unknown one is configured.
+     */
+    public static Transport fromSystemProperty() {
+        String name = System.getProperty(PROPERTY, "blocking");
+        for (Transport transport : values()) {
+            if (transport.name().equalsIgnoreCase(name)) {
+                return transport;
+            }
+        }
+        return BLOCKING;
+    }
+}
@@ -1,12 +1,13 @@
 package common;
 
-import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 /**
  * The UDPOperation interface defines the essential operations for UDP communication.
- * Any class implementing this interface must provide methods to send data,
- * receive data, and process received packets.
+ * Any class implementing this interface must provide methods to send data and receive data.
+ * Received packets are delivered to the {@link PacketHandler} the transport was created with.
  */
 public interface UDPOperation {
 
@@ -20,14 +21,30 @@ public interface UDPOperation {
     void send(byte[] data, InetAddress address, int port);
 
     /**
-     * Receives a DatagramPacket from the socket.
+     * Sends the remaining bytes of the buffer to the specified target. The position of the buffer is left
+     * unchanged, so the same encoded buffer can be sent to many targets without copying or re-encoding it.
+     * A buffer shared between threads must be duplicated per thread, as the position is used during the call.
+     *
+     * @param data The data to send, from its position to its limit.
+     * @param target The destination socket address.
+     */
+    void send(ByteBuffer data, InetSocketAddress target);
+
+    /**
+     * Receives the pending datagrams from the socket and hands them to the packet handler.
+     * Blocks until at least one packet arrives or the receive timeout expires.
      */
     void receive();
 
     /**
-     * Processes the received DatagramPacket.
+     * Sets how long {@link #receive()} waits for a packet before returning.
      *
-     * @param packet The DatagramPacket that has been received.
+     * @param timeout The timeout in milliseconds, 0 to wait indefinitely.
+     */
+    void setReceiveTimeout(int timeout);
+
+    /**
+     * Closes the underlying socket. Any thread blocked in {@link #receive()} returns.
      */
-    void processPacket(DatagramPacket packet);
+    void close();
 }
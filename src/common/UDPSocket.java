@@ -6,29 +6,62 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * The UDPSocket class provides a basic implementation of the UDPOperation interface for handling UDP communications.
- * It provides the functionality to send and receive UDP packets, as well as logging the actions performed.
+ * The UDPSocket class provides the blocking implementation of the UDPOperation interface for handling UDP communications.
+ * It is built on a {@link DatagramSocket}, provides the functionality to send and receive UDP packets,
+ * and logs the actions performed.
  */
-public abstract class UDPSocket implements UDPOperation {
+public class UDPSocket implements UDPOperation {
+    private static final int MAX_DATAGRAM_SIZE = 65507;  // Largest UDP payload over IPv4
     protected final byte[] buffer;  // Buffer used for receiving data
+    private final byte[] sendData = new byte[MAX_DATAGRAM_SIZE];  // Copy of buffers without a backing array, guarded by sendPacket
+    private final DatagramPacket sendPacket = new DatagramPacket(sendData, 0);  // Packet reused to send ByteBuffers
     protected final Logger logger = SimpleLogger.getInstance().getLogger(getClass());  // Logger for logging messages
     protected final DatagramSocket socket;  // The underlying DatagramSocket for UDP communication
+    private final PacketHandler handler;  // Receives every packet read from the socket
 
     /**
      * Constructs a new UDPSocket instance with the specified port and buffer size.
      *
      * @param port The port number to bind the socket to.
      * @param bufferSize The size of the buffer to use for receiving data.
+     * @param handler The handler that processes the received packets.
      * @throws SocketException If there is an error creating or binding the socket.
      */
-    public UDPSocket(int port, int bufferSize) throws SocketException {
-        socket = new DatagramSocket(port);  // Create socket bound to the specified port
+    public UDPSocket(int port, int bufferSize, PacketHandler handler) throws SocketException {
+        this(port, bufferSize, false, handler);
+    }
+
+    /**
+     * Constructs a new UDPSocket instance with the specified port and buffer size, optionally enabling
+     * SO_REUSEPORT so several sockets can be bound to the same port.
+     *
+     * @param port The port number to bind the socket to.
+     * @param bufferSize The size of the buffer to use for receiving data.
+     * @param reusePort Whether to enable SO_REUSEPORT before binding.
+     * @param handler The handler that processes the received packets.
+     * @throws SocketException If there is an error creating or binding the socket.
+     */
+    public UDPSocket(int port, int bufferSize, boolean reusePort, PacketHandler handler) throws SocketException {
+        socket = new DatagramSocket(null);  // Create an unbound socket so options can be set before binding
+        try {
+            if (reusePort) {
+                socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            socket.bind(new InetSocketAddress(port));  // Bind the socket to the specified port
+        } catch (IOException e) {
+            socket.close();
+            throw e instanceof SocketException se ? se : new SocketException(e.getMessage());
+        }
         buffer = new byte[bufferSize];  // Set up the buffer for receiving data
+        this.handler = handler;
 
         log(Level.INFO, "Socket created on port %d with buffer size %d", port, bufferSize);
     }
@@ -37,11 +70,13 @@ public abstract class UDPSocket implements UDPOperation {
      * Constructs a new UDPSocket instance with a default port and specified buffer size.
      *
      * @param bufferSize The size of the buffer to use for receiving data.
+     * @param handler The handler that processes the received packets.
      * @throws SocketException If there is an error creating the socket.
      */
-    public UDPSocket(int bufferSize) throws SocketException {
+    public UDPSocket(int bufferSize, PacketHandler handler) throws SocketException {
         socket = new DatagramSocket();  // Create an unbound socket
         buffer = new byte[bufferSize];  // Set up the buffer for receiving data
+        this.handler = handler;
         log(Level.INFO, "Socket created with buffer size %d", bufferSize);
     }
 
@@ -57,7 +92,9 @@ public abstract class UDPSocket implements UDPOperation {
         try {
             DatagramPacket packet = new DatagramPacket(data, 0, data.length, address, port);
             socket.send(packet);  // Send the packet over UDP
-            log(Level.INFO, "Data sent to %s:%d, size: %d bytes", address.toString(), port, data.length);
+            if (logger.isLoggable(Level.FINE)) {
+                log(Level.FINE, "Data sent to %s:%d, size: %d bytes", address, port, data.length);
+            }
         } catch (SocketException e) {
             log(Level.SEVERE, "Socket exception occurred while sending data: %s", e.getMessage());
         } catch (IOException e) {
@@ -65,6 +102,35 @@ public abstract class UDPSocket implements UDPOperation {
         }
     }
 
+    /**
+     * Sends the remaining bytes of the buffer to the given target through a reused DatagramPacket.
+     * Heap buffers are sent straight from their backing array, other buffers are copied once into the send array.
+     *
+     * @param data The data to send, from its position to its limit.
+     * @param target The destination socket address.
+     */
+    @Override
+    public void send(ByteBuffer data, InetSocketAddress target) {
+        int length = data.remaining();
+        try {
+            synchronized (sendPacket) {
+                if (data.hasArray()) {
+                    sendPacket.setData(data.array(), data.arrayOffset() + data.position(), length);
+                } else {
+                    data.get(data.position(), sendData, 0, length);
+                    sendPacket.setData(sendData, 0, length);
+                }
+                sendPacket.setSocketAddress(target);
+                socket.send(sendPacket);  // Send the packet over UDP
+            }
+            if (logger.isLoggable(Level.FINE)) {
+                log(Level.FINE, "Data sent to %s, size: %d bytes", target, length);
+            }
+        } catch (IOException e) {
+            log(Level.SEVERE, "IO exception occurred while sending data: %s", e.getMessage());
+        }
+    }
+
     /**
      * Receives a DatagramPacket from the socket. This method blocks until a packet is received.
      */
@@ -73,9 +139,11 @@ public abstract class UDPSocket implements UDPOperation {
         try {
             DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
             socket.receive(packet);  // Receive a packet from the socket
-            log(Level.INFO, "Packet received from %s:%d, size: %d bytes",
-                    packet.getAddress().toString(), packet.getPort(), packet.getLength());
-            processPacket(packet);  // Process the received packet
+            if (logger.isLoggable(Level.FINE)) {
+                log(Level.FINE, "Packet received from %s:%d, size: %d bytes",
+                        packet.getAddress(), packet.getPort(), packet.getLength());
+            }
+            handler.processPacket(packet);  // Process the received packet
         } catch (SocketException e) {
             log(Level.SEVERE, "Socket exception occurred while receiving data: %s", e.getMessage());
         } catch (IOException e) {
@@ -83,15 +151,37 @@ public abstract class UDPSocket implements UDPOperation {
         }
     }
 
+    /**
+     * Sets the SO_TIMEOUT of the underlying socket.
+     *
+     * @param timeout The timeout in milliseconds, 0 to wait indefinitely.
+     */
+    @Override
+    public void setReceiveTimeout(int timeout) {
+        try {
+            socket.setSoTimeout(timeout);
+        } catch (SocketException e) {
+            log(Level.SEVERE, "Unable to set the receive timeout: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the underlying DatagramSocket.
+     */
+    @Override
+    public void close() {
+        socket.close();
+    }
+
     /**
      * Logs messages at the specified level with the provided message format and arguments.
+     * The message is only formatted if the level is enabled, and then by the log writer thread.
      *
      * @param level The logging level (e.g., INFO, SEVERE).
      * @param msg The format string for the log message.
      * @param args The arguments to format the message string.
      */
     public void log(Level level, String msg, Object... args) {
-        logger.log(level, String.format(msg, args));
+        SimpleLogger.log(logger, level, msg, args);
     }
 }
-
@@ -0,0 +1,472 @@
+package common.codec;
+
+import client.model.message.ClientMessage;
+import server.model.message.ServerMessage;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The BinaryCodec class encodes and decodes chat messages in the binary wire format.
+ * Every frame has the following layout:
+ * <pre>
+ * +---------+------+--------+--------------+------------+-----------------+---------------+
+ * | version | type | status | nick length  | nick       | content length  | content       |
+ * | 1 byte  | byte | byte   | varint       | UTF-8      | varint          | UTF-8         |
+ * +---------+------+--------+--------------+------------+-----------------+---------------+
+ * </pre>
+ * Client frames carry the message type (MSG, COMMAND, PONG) and a zero status; server frames carry
+ * {@link #SERVER_TYPE}, the server status and an empty nick. The version byte is never a printable character,
+ * so a binary frame cannot be mistaken for a legacy text message.
+ * <p>
+ * A frame whose status byte has the {@link #TRACE_FLAG} bit set is followed by the fields of its {@link Trace},
+ * as longs: the id and the client send time in client frames, and also the server receive and dispatch times in
+ * server frames. Frames without a trace are unchanged, and decoders that predate the flag reject traced frames.
+ * <p>
+ * Several server frames for the same recipient can be packed into one datagram as a batch: a version byte,
+ * {@link #BATCH_TYPE}, and the frames back to back. Frames are self-delimiting, so no count is needed.
+ * <p>
+ * A payload too large for one datagram travels as fragments: a version byte, {@link #FRAGMENT_TYPE}, the id of
+ * the payload (int), the index of the fragment and the number of fragments (one unsigned byte each), and a slice
+ * of the payload. The payload may be a frame, a batch or a legacy text message.
+ * <p>
+ * A payload sent reliably is preceded by a version byte, {@link #RELIABLE_TYPE}, the id of the channel and the
+ * sequence number of the payload in it (two ints). The receiver answers with an ACK datagram: a version byte,
+ * {@link #ACK_TYPE}, the channel id, the highest sequence number up to which everything arrived (int), and a
+ * bitmap (long) whose bit {@code i} tells whether the sequence number {@code cumulative + 2 + i} arrived.
+ * <p>
+ * Strings are encoded straight into the destination buffer, without intermediate byte arrays.
+ */
+public final class BinaryCodec {
+
+    /**
+     * Version byte that starts every binary frame.
+     */
+    public static final byte VERSION = 0x01;
+
+    /**
+     * Type byte of the frames sent by the server.
+     */
+    public static final byte SERVER_TYPE = 0x10;
+
+    /**
+     * Type byte of a datagram that carries several server frames.
+     */
+    public static final byte BATCH_TYPE = 0x11;
+
+    /**
+     * Size of the header that precedes the frames of a batch.
+     */
+    public static final int BATCH_HEADER_SIZE = 2;
+
+    /**
+     * Type byte of a datagram that carries a fragment of a larger payload.
+     */
+    public static final byte FRAGMENT_TYPE = 0x12;
+
+    /**
+     * Size of the header that precedes the slice of payload in a fragment.
+     */
+    public static final int FRAGMENT_HEADER_SIZE = 8;
+
+    /**
+     * Type byte of a datagram that carries a payload sent reliably.
+     */
+    public static final byte RELIABLE_TYPE = 0x13;
+
+    /**
+     * Size of the header that precedes the payload of a reliable datagram.
+     */
+    public static final int RELIABLE_HEADER_SIZE = 10;
+
+    /**
+     * Type byte of a datagram that acknowledges reliable payloads.
+     */
+    public static final byte ACK_TYPE = 0x14;
+
+    /**
+     * Size of an ACK datagram.
+     */
+    public static final int ACK_SIZE = 18;
+
+    /**
+     * Bit of the status byte set when the frame is followed by trace fields.
+     */
+    public static final int TRACE_FLAG = 0x40;
+
+    /**
+     * Size of the trace fields after the content of a client frame.
+     */
+    public static final int CLIENT_TRACE_SIZE = 16;
+
+    /**
+     * Size of the trace fields after the content of a server frame.
+     */
+    public static final int SERVER_TRACE_SIZE = 32;
+
+    private static final int HEADER_SIZE = 3;  // Version, type and status bytes
+    private static final int MAX_VARINT_SIZE = 5;  // Bytes needed by a varint of a 32-bit length
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Checks whether the datagram starting with the given byte is a binary frame.
+     *
+     * @param firstByte The first byte of the datagram.
+     * @return true if the datagram is a binary frame, false otherwise.
+     */
+    public static boolean isBinary(byte firstByte) {
+        return firstByte == VERSION;
+    }
+
+    /**
+     * Checks whether the buffer, from its position, holds a batch of frames.
+     *
+     * @param buffer The buffer to check, its position is not changed.
+     * @return true if the buffer starts with a batch header, false otherwise.
+     */
+    public static boolean isBatch(ByteBuffer buffer) {
+        int position = buffer.position();
+        return buffer.remaining() >= BATCH_HEADER_SIZE
+                && buffer.get(position) == VERSION && buffer.get(position + 1) == BATCH_TYPE;
+    }
+
+    /**
+     * Checks whether a datagram is a fragment of a larger payload.
+     *
+     * @param data The buffer holding the datagram.
+     * @param offset The offset of the datagram in the buffer.
+     * @param length The length of the datagram.
+     * @return true if the datagram starts with a fragment header, false otherwise.
+     */
+    public static boolean isFragment(byte[] data, int offset, int length) {
+        return length > FRAGMENT_HEADER_SIZE && data[offset] == VERSION && data[offset + 1] == FRAGMENT_TYPE;
+    }
+
+    /**
+     * Writes the header of a fragment at the position of the buffer.
+     *
+     * @param buffer The destination buffer.
+     * @param payloadId The id shared by the fragments of the payload.
+     * @param index The index of the fragment, from 0.
+     * @param count The number of fragments of the payload, up to 255.
+     */
+    public static void writeFragmentHeader(ByteBuffer buffer, int payloadId, int index, int count) {
+        buffer.put(VERSION).put(FRAGMENT_TYPE).putInt(payloadId).put((byte) index).put((byte) count);
+    }
+
+    /**
+     * Checks whether a datagram carries a payload sent reliably.
+     *
+     * @param data The buffer holding the datagram.
+     * @param offset The offset of the datagram in the buffer.
+     * @param length The length of the datagram.
+     * @return true if the datagram starts with a reliable header, false otherwise.
+     */
+    public static boolean isReliable(byte[] data, int offset, int length) {
+        return length > RELIABLE_HEADER_SIZE && data[offset] == VERSION && data[offset + 1] == RELIABLE_TYPE;
+    }
+
+    /**
+     * Writes the header of a reliable datagram at the position of the buffer.
+     *
+     * @param buffer The destination buffer.
+     * @param channelId The id of the channel of the sender.
+     * @param sequence The sequence number of the payload in the channel.
+     */
+    public static void writeReliableHeader(ByteBuffer buffer, int channelId, int sequence) {
+        buffer.put(VERSION).put(RELIABLE_TYPE).putInt(channelId).putInt(sequence);
+    }
+
+    /**
+     * Checks whether a datagram is an ACK.
+     *
+     * @param data The buffer holding the datagram.
+     * @param offset The offset of the datagram in the buffer.
+     * @param length The length of the datagram.
+     * @return true if the datagram is an ACK, false otherwise.
+     */
+    public static boolean isAck(byte[] data, int offset, int length) {
+        return length == ACK_SIZE && data[offset] == VERSION && data[offset + 1] == ACK_TYPE;
+    }
+
+    /**
+     * Writes an ACK at the position of the buffer.
+     *
+     * @param buffer The destination buffer.
+     * @param channelId The id of the acknowledged channel.
+     * @param cumulative The highest sequence number up to which every payload arrived.
+     * @param selective The bitmap of the payloads that arrived after a gap.
+     */
+    public static void writeAck(ByteBuffer buffer, int channelId, int cumulative, long selective) {
+        buffer.put(VERSION).put(ACK_TYPE).putInt(channelId).putInt(cumulative).putLong(selective);
+    }
+
+    /**
+     * Writes the header of a batch at the position of the buffer.
+     *
+     * @param buffer The destination buffer.
+     */
+    public static void writeBatchHeader(ByteBuffer buffer) {
+        buffer.put(VERSION).put(BATCH_TYPE);
+    }
+
+    /**
+     * Computes the encoded size of a client message.
+     *
+     * @param message The message to measure.
+     * @return The number of bytes {@link #encode(ClientMessage, ByteBuffer)} writes.
+     */
+    public static int encodedSize(ClientMessage message) {
+        int traceSize = message.getTrace() == null ? 0 : CLIENT_TRACE_SIZE;
+        return frameSize(utf8Length(message.getNick()), utf8Length(message.getContent())) + traceSize;
+    }
+
+    /**
+     * Computes the encoded size of a server message.
+     *
+     * @param message The message to measure.
+     * @return The number of bytes {@link #encode(ServerMessage, ByteBuffer)} writes.
+     */
+    public static int encodedSize(ServerMessage message) {
+        int traceSize = message.getTrace() == null ? 0 : SERVER_TRACE_SIZE;
+        return frameSize(0, utf8Length(message.getContent())) + traceSize;
+    }
+
+    /**
+     * Encodes a client message at the position of the buffer.
+     *
+     * @param message The message to encode.
+     * @param buffer The destination buffer, its position is advanced past the frame.
+     */
+    public static void encode(ClientMessage message, ByteBuffer buffer) {
+        Trace trace = message.getTrace();
+        writeFrame(buffer, (byte) message.getType(), (byte) (trace == null ? 0 : TRACE_FLAG), message.getNick(), message.getContent());
+        if (trace != null) buffer.putLong(trace.id()).putLong(trace.clientSendMicros());
+    }
+
+    /**
+     * Encodes a server message at the position of the buffer.
+     *
+     * @param message The message to encode.
+     * @param buffer The destination buffer, its position is advanced past the frame.
+     */
+    public static void encode(ServerMessage message, ByteBuffer buffer) {
+        Trace trace = message.getTrace();
+        int status = message.getStatus().getValue() | (trace == null ? 0 : TRACE_FLAG);
+        writeFrame(buffer, SERVER_TYPE, (byte) status, null, message.getContent());
+        if (trace != null) {
+            buffer.putLong(trace.id()).putLong(trace.clientSendMicros())
+                    .putLong(trace.serverReceiveMicros()).putLong(trace.serverDispatchMicros());
+        }
+    }
+
+    /**
+     * Decodes a client message from the position of the buffer.
+     *
+     * @param buffer The source buffer, its position is advanced past the frame.
+     * @return The decoded message, or null if the frame is not a valid client frame.
+     */
+    public static ClientMessage decodeClientMessage(ByteBuffer buffer) {
+        try {
+            if (buffer.get() != VERSION) return null;
+            byte type = buffer.get();
+            boolean traced = (buffer.get() & TRACE_FLAG) != 0;  // The rest of the status is unused by client frames
+            if (type == SERVER_TYPE) return null;
+            String nick = readString(buffer);
+            String content = readString(buffer);
+            Trace trace = traced ? new Trace(buffer.getLong(), buffer.getLong(), 0, 0) : null;
+            return new ClientMessage(content, nick, type, trace);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a server message from the position of the buffer.
+     *
+     * @param buffer The source buffer, its position is advanced past the frame.
+     * @return The decoded message, or null if the frame is not a valid server frame.
+     */
+    public static ServerMessage decodeServerMessage(ByteBuffer buffer) {
+        try {
+            if (buffer.get() != VERSION) return null;
+            if (buffer.get() != SERVER_TYPE) return null;
+            int status = buffer.get();
+            boolean traced = (status & TRACE_FLAG) != 0;
+            status &= ~TRACE_FLAG;
+            if (ServerMessage.ServerStatus.fromValue(status) == null) return null;
+            skipBytes(buffer, readVarint(buffer));  // Nick, empty in server frames
+            String content = readString(buffer);
+            Trace trace = traced ? new Trace(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong()) : null;
+            return new ServerMessage(content, status, trace);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a complete frame.
+     */
+    private static void writeFrame(ByteBuffer buffer, byte type, byte status, String nick, String content) {
+        buffer.put(VERSION).put(type).put(status);
+        writeString(buffer, nick);
+        writeString(buffer, content);
+    }
+
+    /**
+     * Computes the size of a frame from the encoded lengths of its strings.
+     */
+    private static int frameSize(int nickLength, int contentLength) {
+        return HEADER_SIZE + varintSize(nickLength) + nickLength + varintSize(contentLength) + contentLength;
+    }
+
+    /**
+     * Writes a varint-length-prefixed UTF-8 string. A null string is written as an empty one.
+     *
+     * @param buffer The destination buffer.
+     * @param value The string to write.
+     */
+    public static void writeString(ByteBuffer buffer, CharSequence value) {
+        writeVarint(buffer, utf8Length(value));
+        if (value != null) putUtf8(buffer, value);
+    }
+
+    /**
+     * Reads a varint-length-prefixed UTF-8 string.
+     *
+     * @param buffer The source buffer.
+     * @return The decoded string.
+     */
+    public static String readString(ByteBuffer buffer) {
+        int length = readVarint(buffer);
+        if (length > buffer.remaining()) throw new BufferUnderflowException();
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(buffer.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint.
+     *
+     * @param buffer The destination buffer.
+     * @param value The non-negative value to write.
+     */
+    public static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     *
+     * @param buffer The source buffer.
+     * @return The decoded value.
+     * @throws IllegalArgumentException If the varint is longer than five bytes or negative.
+     */
+    public static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_VARINT_SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) throw new IllegalArgumentException("Negative varint");
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    /**
+     * Computes the number of bytes of a varint.
+     *
+     * @param value The non-negative value.
+     * @return The encoded size, between 1 and 5 bytes.
+     */
+    public static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Computes the UTF-8 length of a string without encoding it. Unpaired surrogates count as one byte,
+     * as they are encoded as '?', like {@link String#getBytes} does.
+     *
+     * @param value The string to measure, null counts as empty.
+     * @return The number of UTF-8 bytes.
+     */
+    public static int utf8Length(CharSequence value) {
+        if (value == null) return 0;
+        int length = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encodes a string as UTF-8 directly into the buffer.
+     *
+     * @param buffer The destination buffer.
+     * @param value The string to encode.
+     */
+    private static void putUtf8(ByteBuffer buffer, CharSequence value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Advances the buffer past the given number of bytes.
+     */
+    private static void skipBytes(ByteBuffer buffer, int count) {
+        if (count > buffer.remaining()) throw new BufferUnderflowException();
+        buffer.position(buffer.position() + count);
+    }
+}
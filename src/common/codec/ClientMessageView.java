@@ -0,0 +1,252 @@
+package common.codec;
+
+import client.model.message.ClientMessage;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ClientMessageView class is a reusable flyweight over a received client datagram.
+ * Wrapping a datagram only locates the type, nick and content fields inside the receive buffer,
+ * in either wire format, without copying bytes or creating strings. The nick and content strings are
+ * decoded on first use and cached until the view is wrapped around the next datagram.
+ * The trace fields of a traced binary frame are read when it is wrapped.
+ * <p>
+ * A view is only valid while the buffer it wraps is not reused; handlers that outlive the receive call
+ * must work on a {@link #copy()}. Views are not thread-safe, each receiving thread keeps its own.
+ */
+public class ClientMessageView {
+    private static final byte[] CLIENT_PREFIX = "CLIENT|".getBytes(StandardCharsets.US_ASCII);  // Legacy text prefix
+
+    private byte[] data;  // Buffer holding the datagram
+    private int type;  // Message type
+    private int nickOffset;  // Offset of the nick bytes in data
+    private int nickLength;  // Length of the nick bytes
+    private int contentOffset;  // Offset of the content bytes in data
+    private int contentLength;  // Length of the content bytes
+    private Trace trace;  // Trace fields of the frame, null if it is not traced
+    private String nick;  // Nick decoded on demand
+    private String content;  // Content decoded on demand
+
+    /**
+     * Points the view at a datagram and locates its fields.
+     *
+     * @param data The buffer holding the datagram.
+     * @param offset The offset of the datagram in the buffer.
+     * @param length The length of the datagram.
+     * @return true if the datagram is a well-formed client message, false otherwise.
+     */
+    public boolean wrap(byte[] data, int offset, int length) {
+        this.data = data;
+        this.nick = null;
+        this.content = null;
+        this.trace = null;
+        if (length <= 0) return false;
+        return BinaryCodec.isBinary(data[offset]) ? wrapBinary(offset, offset + length) : wrapText(offset, offset + length);
+    }
+
+    /**
+     * Locates the fields of a binary frame.
+     */
+    private boolean wrapBinary(int position, int end) {
+        if (end - position < 5) return false;  // Header plus two empty varints
+        position++;  // Version
+        type = data[position++];
+        boolean traced = (data[position++] & BinaryCodec.TRACE_FLAG) != 0;  // The rest of the status is unused
+        if (type == BinaryCodec.SERVER_TYPE) return false;
+
+        long nickField = readVarint(position, end);
+        if (nickField < 0) return false;
+        nickOffset = (int) (nickField >>> 32);
+        nickLength = (int) nickField;
+        position = nickOffset + nickLength;
+
+        long contentField = readVarint(position, end);
+        if (contentField < 0) return false;
+        contentOffset = (int) (contentField >>> 32);
+        contentLength = (int) contentField;
+        position = contentOffset + contentLength;
+        if (!traced) return position <= end;
+        if (end - position < BinaryCodec.CLIENT_TRACE_SIZE) return false;
+        trace = new Trace(readLong(position), readLong(position + 8), 0, 0);
+        return true;
+    }
+
+    /**
+     * Reads a big-endian long, as written by {@link java.nio.ByteBuffer#putLong(long)}.
+     */
+    private long readLong(int position) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[position + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a varint length and checks that the bytes it announces are in bounds.
+     *
+     * @return The offset of the announced bytes in the high half and the length in the low half, or -1 if invalid.
+     */
+    private long readVarint(int position, int end) {
+        int value = 0;
+        for (int shift = 0; shift < 35 && position < end; shift += 7) {
+            byte b = data[position++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0 || value > end - position) return -1;
+                return ((long) position << 32) | value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Locates the fields of a legacy text message ({@code CLIENT|nick|type|content}).
+     */
+    private boolean wrapText(int position, int end) {
+        if (end - position < CLIENT_PREFIX.length) return false;
+        for (byte b : CLIENT_PREFIX) {
+            if (data[position++] != b) return false;
+        }
+
+        nickOffset = position;
+        while (position < end && data[position] != '|') position++;
+        if (position == end) return false;
+        nickLength = position - nickOffset;
+        position++;
+
+        int digits = 0;
+        int value = 0;
+        boolean negative = position < end && data[position] == '-';
+        if (negative) position++;
+        while (position < end && data[position] != '|') {
+            byte b = data[position++];
+            if (b < '0' || b > '9' || ++digits > 9) return false;
+            value = value * 10 + (b - '0');
+        }
+        if (position == end || digits == 0) return false;
+        type = negative ? -value : value;
+
+        contentOffset = position + 1;
+        contentLength = end - contentOffset;
+        return true;
+    }
+
+    /**
+     * Retrieves the type of the message (0 for regular message, 1 for command, 2 for pong).
+     *
+     * @return The type of the message.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Gets the nickname of the sender, decoding it on first use.
+     *
+     * @return The nickname of the sender.
+     */
+    public String getNick() {
+        if (nick == null) {
+            nick = new String(data, nickOffset, nickLength, StandardCharsets.UTF_8);
+        }
+        return nick;
+    }
+
+    /**
+     * Gets the content of the message, decoding it on first use.
+     *
+     * @return The content of the message.
+     */
+    public String getContent() {
+        if (content == null) {
+            content = new String(data, contentOffset, contentLength, StandardCharsets.UTF_8);
+        }
+        return content;
+    }
+
+    /**
+     * Retrieves the trace fields of the message.
+     *
+     * @return The trace, or null if the message is not traced.
+     */
+    public Trace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Retrieves the buffer the view is wrapped around, to read the nick or content bytes in place.
+     *
+     * @return The wrapped buffer.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Retrieves the offset of the UTF-8 nick bytes in {@link #getData()}.
+     *
+     * @return The nick offset.
+     */
+    public int getNickOffset() {
+        return nickOffset;
+    }
+
+    /**
+     * Retrieves the length of the UTF-8 nick bytes.
+     *
+     * @return The nick length.
+     */
+    public int getNickLength() {
+        return nickLength;
+    }
+
+    /**
+     * Retrieves the offset of the UTF-8 content bytes in {@link #getData()}.
+     *
+     * @return The content offset.
+     */
+    public int getContentOffset() {
+        return contentOffset;
+    }
+
+    /**
+     * Retrieves the length of the UTF-8 content bytes.
+     *
+     * @return The content length.
+     */
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Creates a view that owns a copy of the nick and content bytes, so it stays valid after the
+     * receive buffer is reused. Strings already decoded by this view are carried over.
+     *
+     * @return A detached copy of the view.
+     */
+    public ClientMessageView copy() {
+        ClientMessageView copy = new ClientMessageView();
+        copy.data = new byte[nickLength + contentLength];
+        System.arraycopy(data, nickOffset, copy.data, 0, nickLength);
+        System.arraycopy(data, contentOffset, copy.data, nickLength, contentLength);
+        copy.type = type;
+        copy.nickOffset = 0;
+        copy.nickLength = nickLength;
+        copy.contentOffset = nickLength;
+        copy.contentLength = contentLength;
+        copy.trace = trace;
+        copy.nick = nick;
+        copy.content = content;
+        return copy;
+    }
+
+    /**
+     * Materializes the view as a ClientMessage, decoding the strings that were not decoded yet.
+     *
+     * @return The ClientMessage with the same fields.
+     */
+    public ClientMessage toClientMessage() {
+        return new ClientMessage(getContent(), getNick(), type, trace);
+    }
+}
@@ -0,0 +1,51 @@
+package common.codec;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The Trace record holds the optional trace fields of a chat message: an id and the time of every stage the
+ * message went through, in microseconds since the epoch. A client stamps the time it sent the message, the
+ * server the time it received it and the time it dispatched it to the room, and every recipient compares them
+ * with the time it got it, so the end-to-end latency can be split into network, server and delivery time.
+ * <p>
+ * Client frames carry the id and the send time; server frames carry every field. Times are wall-clock times,
+ * so stages that cross hosts include the offset between their clocks. A field that was not stamped yet is 0.
+ *
+ * @param id The id of the trace, chosen by the client that sent the message.
+ * @param clientSendMicros The time the client sent the message.
+ * @param serverReceiveMicros The time the server received the message.
+ * @param serverDispatchMicros The time the server started sending the message to the room.
+ */
+public record Trace(long id, long clientSendMicros, long serverReceiveMicros, long serverDispatchMicros) {
+
+    /**
+     * Starts a trace with a random id, stamped with the current time as the send time.
+     *
+     * @return The new trace.
+     */
+    public static Trace start() {
+        return new Trace(ThreadLocalRandom.current().nextLong(), nowMicros(), 0, 0);
+    }
+
+    /**
+     * Creates a copy of this trace stamped with the times the server received and dispatched the message.
+     *
+     * @param receiveMicros The time the server received the message.
+     * @param dispatchMicros The time the server started sending the message to the room.
+     * @return The stamped trace.
+     */
+    public Trace dispatched(long receiveMicros, long dispatchMicros) {
+        return new Trace(id, clientSendMicros, receiveMicros, dispatchMicros);
+    }
+
+    /**
+     * Retrieves the current wall-clock time with microsecond precision, the unit of every trace field.
+     *
+     * @return The microseconds since the epoch.
+     */
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    }
+}
@@ -0,0 +1,31 @@
+package common.codec;
+
+/**
+ * Enumeration of the wire formats understood by the server and the client.
+ * Decoding always detects the format from the first byte of the datagram, the configured format
+ * only decides how outgoing messages are encoded. It is chosen through the {@value #PROPERTY} system property.
+ */
+public enum WireFormat {
+    BINARY,  // Versioned, length-prefixed binary frames
+    TEXT;  // Legacy pipe-delimited text, kept for old clients
+
+    /**
+     * System property used to select the wire format (binary or text).
+     */
+    public static final String PROPERTY = "chat.codec";
+
+    /**
+     * Resolves the wire format configured through the {@value #PROPERTY} system property.
+     *
+     * @return The configured format, or BINARY if none or an unknown one is configured.
+     */
+    public static WireFormat fromSystemProperty() {
+        String name = System.getProperty(PROPERTY, "binary");
+        for (WireFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return BINARY;
+    }
+}
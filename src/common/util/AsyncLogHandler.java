@@ -0,0 +1,150 @@
+package common.util;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * The AsyncLogHandler class is a logging handler that takes records off the logging thread.
+ * <p>
+ * {@link #publish(LogRecord)} only claims a slot of a bounded ring buffer and stores the record in it, without
+ * formatting anything or taking a lock. A background writer thread drains the ring in order, formats every record
+ * and writes each batch to the stream with a single call. When the ring is full the record is dropped and counted,
+ * so a burst of logs slows down the writer, never the packet path; the number of dropped records is reported
+ * in the output once there is room again.
+ */
+public class AsyncLogHandler extends Handler {
+    private static final int MAX_BATCH = 256;  // Records formatted into a single write
+    private static final long IDLE_PARK_NANOS = 10_000_000L;  // Longest sleep of the writer when the ring is empty
+
+    private final LogRecord[] ring;  // Records waiting to be written
+    private final AtomicLongArray published;  // Sequence stored in every slot, marks the slot as readable
+    private final int mask;  // Ring capacity minus one
+    private final AtomicLong tail = new AtomicLong();  // Next sequence to claim by the producers
+    private final AtomicLong dropped = new AtomicLong();  // Records dropped because the ring was full
+    private final PrintStream out;  // Destination of the formatted records
+    private final Thread writer;  // Background thread draining the ring
+    private final StringBuilder batch = new StringBuilder(8192);  // Formatted batch, used by the writer only
+    private volatile long head = 0;  // Next sequence to write
+    private volatile boolean sleeping = false;  // Whether the writer is parked waiting for records
+
+    /**
+     * Constructs a handler writing to the given stream and starts its writer thread.
+     *
+     * @param out The stream the records are written to.
+     * @param capacity The capacity of the ring, rounded up to a power of two.
+     */
+    public AsyncLogHandler(PrintStream out, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new LogRecord[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) published.set(i, -1);
+        this.mask = size - 1;
+        this.out = out;
+        this.writer = new Thread(this::drainLoop, "log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "log-flush"));
+    }
+
+    /**
+     * Queues a record for the writer thread. Never blocks.
+     *
+     * @param record The record to write.
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (record == null || !isLoggable(record)) return;
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= ring.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & mask);
+        ring[slot] = record;
+        published.lazySet(slot, sequence);  // Publishes the record to the writer
+        if (sleeping) LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes every queued record before returning.
+     */
+    @Override
+    public void flush() {
+        synchronized (batch) {
+            while (drain() > 0) {
+                // Keep writing until the ring is empty
+            }
+        }
+    }
+
+    /**
+     * Writes the queued records. The writer thread keeps running, as other loggers share the handler.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Drains the ring forever, parking while it is empty.
+     */
+    private void drainLoop() {
+        while (true) {
+            int written;
+            synchronized (batch) {
+                written = drain();
+            }
+            if (written == 0) {
+                sleeping = true;
+                if (published.get((int) (head & mask)) != head) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Formats up to {@link #MAX_BATCH} records in order and writes them with a single call.
+     *
+     * @return The number of records written.
+     */
+    private int drain() {
+        long sequence = head;
+        int count = 0;
+        batch.setLength(0);
+
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) batch.append("[log] ").append(lost).append(" records dropped, the log ring was full\n");
+
+        while (count < MAX_BATCH) {
+            int slot = (int) (sequence & mask);
+            if (published.get(slot) != sequence) break;
+            LogRecord record = ring[slot];
+            ring[slot] = null;
+            sequence++;
+            head = sequence;  // Frees the slot for the producers
+            count++;
+            try {
+                batch.append(getFormatter().format(record));
+            } catch (RuntimeException e) {
+                reportError("Cannot format a log record", e, ErrorManager.FORMAT_FAILURE);
+            }
+        }
+
+        if (batch.length() > 0) {
+            out.print(batch);
+            out.flush();
+        }
+        return count;
+    }
+}
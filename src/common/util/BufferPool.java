@@ -0,0 +1,53 @@
+package common.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The BufferPool class keeps a small set of direct ByteBuffers that threads borrow and give back.
+ * Unlike a ThreadLocal, the number of buffers is bounded by the pool size and not by the number of threads,
+ * which matters when work runs on short-lived (e.g. virtual) threads. Acquiring and releasing are lock-free
+ * and do not allocate; when every slot is taken a new buffer is allocated, and it is dropped on release
+ * if there is no room for it.
+ */
+public class BufferPool {
+    private final AtomicReferenceArray<ByteBuffer> slots;  // Free buffers, null marks an empty slot
+    private final int bufferSize;  // Capacity of every buffer
+
+    /**
+     * Constructs a pool of direct buffers.
+     *
+     * @param slots The maximum number of free buffers kept by the pool.
+     * @param bufferSize The capacity of every buffer.
+     */
+    public BufferPool(int slots, int bufferSize) {
+        this.slots = new AtomicReferenceArray<>(slots);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Borrows a cleared buffer from the pool, allocating one if the pool is empty.
+     *
+     * @return A buffer with position 0 and limit equal to its capacity.
+     */
+    public ByteBuffer acquire() {
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                ByteBuffer buffer = slots.getAndSet(i, null);
+                if (buffer != null) return buffer.clear();
+            }
+        }
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Gives a buffer back to the pool. The caller must not use it afterwards.
+     *
+     * @param buffer The buffer to give back.
+     */
+    public void release(ByteBuffer buffer) {
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, buffer)) return;
+        }
+    }
+}
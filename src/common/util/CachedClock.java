@@ -0,0 +1,47 @@
+package common.util;
+
+/**
+ * The CachedClock class is a coarse clock for the hot paths: a daemon thread reads the system clock once per
+ * millisecond and publishes it in a volatile field, so reading the time is a plain memory read instead of a call
+ * into the operating system on every message.
+ * <p>
+ * The cached time never goes backwards, even if the system clock does, and lags it by at most about a
+ * millisecond, which is enough for timestamps, ids and inactivity checks. Round-trip times and other short
+ * intervals should still be measured with {@link System#nanoTime()}.
+ */
+public final class CachedClock {
+    private static final long TICK_MILLIS = 1;  // Period of the updates
+    private static volatile long now = System.currentTimeMillis();  // Last time read, in milliseconds since the epoch
+
+    static {
+        Thread ticker = new Thread(CachedClock::tick, "cached-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private CachedClock() {
+    }
+
+    /**
+     * Retrieves the cached time.
+     *
+     * @return The time in milliseconds since the epoch, as of the last tick.
+     */
+    public static long currentTimeMillis() {
+        return now;
+    }
+
+    /**
+     * Updates the cached time until the JVM exits.
+     */
+    private static void tick() {
+        while (true) {
+            now = Math.max(now, System.currentTimeMillis());
+            try {
+                Thread.sleep(TICK_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package common.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The Histogram class records non-negative values, such as latencies, in log-linear buckets: values below
+ * {@value #SUB_BUCKETS} are counted exactly and every larger power of two is split in {@value #HALF} buckets, so
+ * percentiles are within about 6% of the true value over the whole range of a long, in a fixed array of counters.
+ * <p>
+ * Recording is a lock-free increment of one counter and allocates nothing, so any number of threads can record
+ * at once. Like a {@link java.util.concurrent.atomic.LongAdder}, the counters are striped: every thread records
+ * in one of several arrays, chosen by its hash, so threads recording similar values do not contend on the same
+ * counter. Reads sum the stripes without stopping the writers and see a recent, not exact, state.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 5;  // Bits of the value kept by the bucket index
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;  // Values counted exactly, below 2^SUB_BITS
+    private static final int HALF = SUB_BUCKETS / 2;  // Buckets added by every power of two above SUB_BITS bits
+
+    private static final int BUCKETS = index(Long.MAX_VALUE) + 1;  // Buckets of every stripe
+    private static final int STRIPES =
+            Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));  // A power of two
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];  // Values per bucket, per stripe
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public Histogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value The value to record.
+     */
+    public void record(long value) {
+        stripes[stripe()].incrementAndGet(index(Math.max(0, value)));
+    }
+
+    /**
+     * Chooses the stripe of the current thread from its identity hash, spread so consecutive hashes do not share
+     * a stripe.
+     */
+    private static int stripe() {
+        int h = System.identityHashCode(Thread.currentThread()) * 0x9E3779B9;
+        return (h >>> 16) & (STRIPES - 1);
+    }
+
+    /**
+     * Sums the stripes of every bucket.
+     */
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] += counts.get(i);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Retrieves the number of recorded values.
+     *
+     * @return The number of values.
+     */
+    public long getCount() {
+        long total = 0;
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Retrieves the value below which a fraction of the recorded values fall, as the upper bound of its bucket.
+     *
+     * @param fraction The fraction, from 0 to 1 (e.g. 0.99 for the 99th percentile).
+     * @return The percentile, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double fraction) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(snapshot.length - 1);
+    }
+
+    /**
+     * Retrieves the upper bound of the bucket of the largest recorded value.
+     *
+     * @return The maximum, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        long[] snapshot = snapshot();
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (snapshot[i] != 0) return upperBound(i);
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets every recorded value. Values recorded meanwhile may be kept or forgotten.
+     */
+    public void reset() {
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * Maps a value to its bucket: values below {@link #SUB_BUCKETS} have their own bucket, larger ones keep their
+     * {@link #SUB_BITS} highest bits.
+     */
+    private static int index(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * Maps a bucket back to the largest value it holds.
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / HALF - 1;
+        long sub = index - (long) shift * HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -1,14 +1,36 @@
 package common.util;
 
 import client.model.message.ClientMessage;
+import common.codec.BinaryCodec;
+import common.codec.WireFormat;
 import server.model.message.ServerMessage;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Utility class for handling client and server messages in a UDP-based chat application.
  * This class provides methods to create and parse messages from both clients and servers.
  * It ensures consistent encoding and proper handling of message lengths.
+ * <p>
+ * Messages are created in the {@link WireFormat} configured at startup (binary by default).
+ * Parsing detects the format of every datagram, so binary and legacy text peers can talk to the same server.
  */
 public class MessageUtil {
+    private static final WireFormat FORMAT = WireFormat.fromSystemProperty();  // Format used for outgoing messages
+    private static final String CLIENT_PREFIX = "CLIENT|";  // Prefix of the legacy text client messages
+    private static final String SERVER_PREFIX = "SERVER|";  // Prefix of the legacy text server messages
+
+    /**
+     * Retrieves the wire format used to create messages.
+     *
+     * @return The configured wire format.
+     */
+    public static WireFormat getWireFormat() {
+        return FORMAT;
+    }
 
     /**
      * Creates a client message in the form of a byte array.
@@ -17,8 +39,13 @@ public class MessageUtil {
      * @return A byte array representing the client message in UTF-8 encoding.
      */
     public static byte[] createClientMessage(ClientMessage message) {
-        String formattedMessage = "CLIENT|" + message.getNick() + "|" + message.getType() + "|" + message.getContent();
-        return formattedMessage.getBytes();
+        if (FORMAT == WireFormat.TEXT) {
+            String formattedMessage = CLIENT_PREFIX + message.getNick() + "|" + message.getType() + "|" + message.getContent();
+            return formattedMessage.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] data = new byte[BinaryCodec.encodedSize(message)];
+        BinaryCodec.encode(message, ByteBuffer.wrap(data));
+        return data;
     }
 
     /**
@@ -28,8 +55,27 @@ public class MessageUtil {
      * @return A byte array representing the server message in UTF-8 encoding.
      */
     public static byte[] createServerMessage(ServerMessage message) {
-        String formattedMessage = "SERVER|" + message.getStatus().getValue() + "|" + message.getContent();
-        return formattedMessage.getBytes();
+        if (FORMAT == WireFormat.TEXT) {
+            String formattedMessage = SERVER_PREFIX + message.getStatus().getValue() + "|" + message.getContent();
+            return formattedMessage.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] data = new byte[BinaryCodec.encodedSize(message)];
+        BinaryCodec.encode(message, ByteBuffer.wrap(data));
+        return data;
+    }
+
+    /**
+     * Encodes a server message into the buffer, in the configured wire format.
+     *
+     * @param message The ServerMessage object containing the message details.
+     * @param buffer The destination buffer, its position is advanced past the message.
+     */
+    public static void encodeServerMessage(ServerMessage message, ByteBuffer buffer) {
+        if (FORMAT == WireFormat.TEXT) {
+            buffer.put(createServerMessage(message));
+        } else {
+            BinaryCodec.encode(message, buffer);
+        }
     }
 
     /**
@@ -40,25 +86,49 @@ public class MessageUtil {
      * @return A ClientMessage object parsed from the data, or null if the format is invalid.
      */
     public static ClientMessage parseClientMessage(byte[] data, int length) {
-        String rawMessage = new String(data, 0, length);
+        if (length > 0 && BinaryCodec.isBinary(data[0])) {
+            return BinaryCodec.decodeClientMessage(ByteBuffer.wrap(data, 0, length));
+        }
+        String rawMessage = new String(data, 0, length, StandardCharsets.UTF_8);
         return parseClientMessage(rawMessage);
     }
 
     /**
-     * Parses a client message from a string.
+     * Parses a client message from a buffer, from its position to its limit.
+     *
+     * @param buffer The buffer containing the message data.
+     * @return A ClientMessage object parsed from the data, or null if the format is invalid.
+     */
+    public static ClientMessage parseClientMessage(ByteBuffer buffer) {
+        if (buffer.hasRemaining() && BinaryCodec.isBinary(buffer.get(buffer.position()))) {
+            return BinaryCodec.decodeClientMessage(buffer);
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return parseClientMessage(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a client message from a string in the legacy text format.
+     * The content is the last field, so it may contain the separator.
      *
      * @param message The string representation of the client message.
      * @return A ClientMessage object parsed from the string, or null if the format is invalid.
      */
     public static ClientMessage parseClientMessage(String message) {
-        String[] parts = message.split("\\|");
-        if (parts.length == 4 && parts[0].equals("CLIENT")) {
-            String nick = parts[1];
-            int type = Integer.parseInt(parts[2]);
-            String content = parts[3];
+        if (!message.startsWith(CLIENT_PREFIX)) return null;
+        int nickEnd = message.indexOf('|', CLIENT_PREFIX.length());
+        if (nickEnd < 0) return null;
+        int typeEnd = message.indexOf('|', nickEnd + 1);
+        if (typeEnd < 0) return null;
+        try {
+            String nick = message.substring(CLIENT_PREFIX.length(), nickEnd);
+            int type = Integer.parseInt(message, nickEnd + 1, typeEnd, 10);
+            String content = message.substring(typeEnd + 1);
             return new ClientMessage(content, nick, type);
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return null;
     }
 
     /**
@@ -69,23 +139,56 @@ public class MessageUtil {
      * @return A ServerMessage object parsed from the data, or null if the format is invalid.
      */
     public static ServerMessage parseServerMessage(byte[] data, int length) {
-        String rawMessage = new String(data, 0, length);
+        if (length > 0 && BinaryCodec.isBinary(data[0])) {
+            return BinaryCodec.decodeServerMessage(ByteBuffer.wrap(data, 0, length));
+        }
+        String rawMessage = new String(data, 0, length, StandardCharsets.UTF_8);
         return parseServerMessage(rawMessage);
     }
 
     /**
-     * Parses a server message from a string.
+     * Parses every server message in a datagram, which may be a single message or a batch of coalesced messages.
+     *
+     * @param data   The byte array containing the datagram.
+     * @param length The actual length of the data to parse.
+     * @return The parsed messages in order, empty if the format is invalid. A malformed frame in a batch
+     *         ends the list.
+     */
+    public static List<ServerMessage> parseServerMessages(byte[] data, int length) {
+        List<ServerMessage> messages = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+        if (!BinaryCodec.isBatch(buffer)) {
+            ServerMessage message = parseServerMessage(data, length);
+            if (message != null) messages.add(message);
+            return messages;
+        }
+
+        buffer.position(BinaryCodec.BATCH_HEADER_SIZE);
+        while (buffer.hasRemaining()) {
+            ServerMessage message = BinaryCodec.decodeServerMessage(buffer);
+            if (message == null) break;
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Parses a server message from a string in the legacy text format.
+     * The content is the last field, so it may contain the separator.
      *
      * @param message The string representation of the server message.
      * @return A ServerMessage object parsed from the string, or null if the format is invalid.
      */
     public static ServerMessage parseServerMessage(String message) {
-        String[] parts = message.split("\\|");
-        if (parts.length == 3 && parts[0].equals("SERVER")) {
-            int status = Integer.parseInt(parts[1]);
-            String content = parts[2];
+        if (!message.startsWith(SERVER_PREFIX)) return null;
+        int statusEnd = message.indexOf('|', SERVER_PREFIX.length());
+        if (statusEnd < 0) return null;
+        try {
+            int status = Integer.parseInt(message, SERVER_PREFIX.length(), statusEnd, 10);
+            String content = message.substring(statusEnd + 1);
             return new ServerMessage(content, status);
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return null;
     }
-}
\ No newline at end of file
+}
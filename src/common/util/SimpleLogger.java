@@ -1,17 +1,54 @@
 package common.util;
 
 import java.text.MessageFormat;
-import java.util.HashMap;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.*;
 
 /**
  * The SimpleLogger class provides a simple logging utility that supports customized logging to the console.
  * It ensures that loggers are reused for each class, and it allows for color-coded log levels in the console output.
+ * <p>
+ * Every logger writes through a single shared {@link AsyncLogHandler}, so the threads that log only queue the record
+ * and the formatting and console output happen on a background thread. Messages logged with
+ * {@link #log(Logger, Level, String, Object...)} keep their {@code String.format} pattern and arguments in the record
+ * and are only formatted by the writer, and only if the level is enabled. The level of every logger can be set at
+ * startup through the {@value #LEVEL_PROPERTY} system property.
  */
 public class SimpleLogger {
-    private static SimpleLogger instance;  // Singleton instance of SimpleLogger
-    private final Map<Class<?>, Logger> loggers = new HashMap<>();  // Map to store loggers by class
+    private static final String LEVEL_PROPERTY = "chat.log.level";  // System property with the level of every logger
+    private static final int RING_CAPACITY = 8192;  // Records the handler can queue before dropping
+    private final Map<Class<?>, Logger> loggers = new ConcurrentHashMap<>();  // Map to store loggers by class
+    private final Handler handler;  // Handler shared by every logger
+    private final Level level;  // Level configured for every logger, null to keep the default
+
+    /**
+     * Holds the singleton, created on first use by the class loader, which makes it safe to publish.
+     */
+    private static final class Holder {
+        private static final SimpleLogger INSTANCE = new SimpleLogger();  // Singleton instance of SimpleLogger
+    }
+
+    /**
+     * Creates the shared handler and removes the handlers of the root logger.
+     */
+    private SimpleLogger() {
+        String configured = System.getProperty(LEVEL_PROPERTY);
+        this.level = configured == null ? null : Level.parse(configured.toUpperCase(Locale.ROOT));
+
+        this.handler = new AsyncLogHandler(System.err, RING_CAPACITY);
+        this.handler.setLevel(Level.ALL);  // Set level to ALL, the loggers filter the records
+        this.handler.setFormatter(new ConsoleFormatter());  // Set custom formatter
+
+        Logger rootLogger = Logger.getLogger("");
+        for (Handler rootHandler : rootLogger.getHandlers()) {
+            rootLogger.removeHandler(rootHandler);
+        }
+    }
 
     /**
      * Returns the singleton instance of the SimpleLogger.
@@ -19,93 +56,121 @@ public class SimpleLogger {
      * @return The SimpleLogger instance.
      */
     public static SimpleLogger getInstance() {
-        if (instance == null) {
-            instance = new SimpleLogger();  // Create the instance if it doesn't exist
-        }
-        return instance;
+        return Holder.INSTANCE;
     }
 
     /**
      * Returns a Logger instance for the specified class. If the logger for the class does not exist,
-     * it creates and configures a new logger.
+     * it creates and configures a new logger. Safe to call from any thread.
      *
      * @param clazz The class for which to retrieve the logger.
      * @return The Logger instance for the specified class.
      */
     public Logger getLogger(Class<?> clazz) {
-        // Reuse the logger if it already exists
-        Logger logger = loggers.get(clazz);
-        if (logger == null) {
-            logger = Logger.getLogger(clazz.getSimpleName());
-
-            // Remove existing handlers from the logger
-            for (Handler handler : logger.getHandlers()) {
-                logger.removeHandler(handler);
-            }
-
-            // Remove handlers from the root logger
-            Logger rootLogger = Logger.getLogger("");
-            for (Handler handler : rootLogger.getHandlers()) {
-                rootLogger.removeHandler(handler);
-            }
+        return loggers.computeIfAbsent(clazz, this::createLogger);
+    }
 
-            // Set up a new handler for console output
-            ConsoleHandler consoleHandler = new ConsoleHandler();
-            consoleHandler.setLevel(Level.ALL);  // Set level to ALL to capture all log levels
-            consoleHandler.setFormatter(getFormatter());  // Set custom formatter
+    /**
+     * Logs a message in {@code String.format} syntax. Nothing is formatted on the calling thread: if the level
+     * is enabled, the pattern and the arguments are queued as they are and formatted by the writer thread.
+     * Arguments must not be modified after the call.
+     *
+     * @param logger The logger to log to.
+     * @param level The logging level (e.g., INFO, SEVERE).
+     * @param format The format string for the log message.
+     * @param args The arguments to format the message string.
+     */
+    public static void log(Logger logger, Level level, String format, Object... args) {
+        if (!logger.isLoggable(level)) return;
+        LogRecord record = new FormatRecord(level, format);
+        record.setParameters(args);
+        record.setLoggerName(logger.getName());
+        logger.log(record);
+    }
 
-            // Add the handler and disable parent handlers
-            logger.addHandler(consoleHandler);
-            logger.setUseParentHandlers(false);
+    /**
+     * Creates a logger writing through the shared handler.
+     */
+    private Logger createLogger(Class<?> clazz) {
+        Logger logger = Logger.getLogger(clazz.getSimpleName());
 
-            // Store the logger for reuse
-            loggers.put(clazz, logger);
+        // Remove existing handlers from the logger
+        for (Handler existing : logger.getHandlers()) {
+            logger.removeHandler(existing);
         }
 
+        // Add the shared handler and disable parent handlers
+        logger.addHandler(handler);
+        logger.setUseParentHandlers(false);
+        if (level != null) logger.setLevel(level);
         return logger;
     }
 
     /**
-     * Creates and returns a custom formatter for log messages, which includes timestamp, log level,
-     * logger name, and the log message itself. The formatter also supports color coding based on the log level.
-     *
-     * @return A Formatter instance used for log message formatting.
+     * A log record whose message is a {@code String.format} pattern rather than a {@link MessageFormat} one.
+     */
+    private static final class FormatRecord extends LogRecord {
+        private static final long serialVersionUID = 1L;
+
+        FormatRecord(Level level, String format) {
+            super(level, format);
+        }
+    }
+
+    /**
+     * Formats log messages with timestamp, log level, logger name, and the log message itself, color coded by level.
+     * It is only used by the writer thread, which lets it reuse the timestamp of the previous record within
+     * the same second.
      */
-    private Formatter getFormatter() {
-        return new Formatter() {
-            @Override
-            public String format(LogRecord record) {
-                // Get current timestamp formatted as yyyy-MM-dd HH:mm:ss
-                String timestamp = java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                String level = record.getLevel().toString();  // Get log level
-                String name = record.getLoggerName();  // Get logger name
-                String message = record.getMessage();  // Get log message
-                if (record.getParameters() != null) {
-                    message = MessageFormat.format(message, record.getParameters());  // Format the message with parameters
-                }
-
-                String color = getColorForLevel(level);  // Get color for log level
-
-                // Format the log message with the timestamp, level, name, message, and color
-                return String.format("%s[%s] [%s] [%s] - %s%s\n", color, timestamp, level, name, message, "\u001B[0m");
+    private static final class ConsoleFormatter extends Formatter {
+        private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+                .withZone(ZoneId.systemDefault());  // Timestamp as yyyy-MM-dd HH:mm:ss
+        private static final String RESET = "\u001B[0m";  // Resets the console color
+        private long cachedSecond = Long.MIN_VALUE;  // Epoch second of the cached timestamp
+        private String cachedTimestamp;  // Formatted timestamp of cachedSecond
+
+        @Override
+        public String format(LogRecord record) {
+            String level = record.getLevel().toString();  // Get log level
+            String message = record.getMessage();  // Get log message
+            Object[] parameters = record.getParameters();
+            if (record instanceof FormatRecord) {
+                message = String.format(message, parameters);
+            } else if (parameters != null) {
+                message = MessageFormat.format(message, parameters);  // Format the message with parameters
             }
 
-            /**
-             * Returns the ANSI color code for the log level.
-             *
-             * @param level The log level (e.g., SEVERE, INFO, WARNING, etc.).
-             * @return The ANSI color code corresponding to the log level.
-             */
-            private String getColorForLevel(String level) {
-                return switch (level) {
-                    case "SEVERE" -> "\u001B[31m"; // Red for SEVERE
-                    case "WARNING" -> "\u001B[33m"; // Yellow for WARNING
-                    case "INFO" -> "\u001B[32m"; // Green for INFO
-                    case "FINE", "FINER", "FINEST" -> "\u001B[34m"; // Blue for FINE levels
-                    default -> "\u001B[37m"; // Default color (white) for other levels
-                };
+            // Format the log message with the timestamp, level, name, message, and color
+            return getColorForLevel(level) + '[' + timestamp(record.getInstant()) + "] [" + level + "] ["
+                    + record.getLoggerName() + "] - " + message + RESET + '\n';
+        }
+
+        /**
+         * Formats the time of a record, reusing the previous result within the same second.
+         */
+        private String timestamp(Instant instant) {
+            long second = instant.getEpochSecond();
+            if (second != cachedSecond) {
+                cachedTimestamp = TIMESTAMP.format(instant);
+                cachedSecond = second;
             }
-        };
+            return cachedTimestamp;
+        }
+
+        /**
+         * Returns the ANSI color code for the log level.
+         *
+         * @param level The log level (e.g., SEVERE, INFO, WARNING, etc.).
+         * @return The ANSI color code corresponding to the log level.
+         */
+        private static String getColorForLevel(String level) {
+            return switch (level) {
+                case "SEVERE" -> "\u001B[31m"; // Red for SEVERE
+                case "WARNING" -> "\u001B[33m"; // Yellow for WARNING
+                case "INFO" -> "\u001B[32m"; // Green for INFO
+                case "FINE", "FINER", "FINEST" -> "\u001B[34m"; // Blue for FINE levels
+                default -> "\u001B[37m"; // Default color (white) for other levels
+            };
+        }
     }
 }
-
@@ -0,0 +1,84 @@
+package common.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The StageHistograms class keeps one {@link Histogram} per stage of a path, such as the stages a traced message
+ * goes through, so the latency of the path can be split by stage. Stages are named once and recorded by index,
+ * so recording is as cheap as recording in a single histogram.
+ */
+public class StageHistograms {
+    private final String[] names;  // Name of every stage, in order
+    private final Histogram[] histograms;  // Durations of every stage, in microseconds
+
+    /**
+     * Constructs the histograms of the given stages.
+     *
+     * @param names The names of the stages, in order; stage {@code i} is recorded with index {@code i}.
+     */
+    public StageHistograms(String... names) {
+        this.names = names.clone();
+        this.histograms = new Histogram[names.length];
+        for (int i = 0; i < names.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Records the duration of a stage.
+     *
+     * @param stage The index of the stage.
+     * @param micros The duration in microseconds; negative durations, from clocks of different hosts, count as 0.
+     */
+    public void record(int stage, long micros) {
+        histograms[stage].record(micros);
+    }
+
+    /**
+     * Retrieves the number of durations recorded for the first stage, which is recorded for every path.
+     *
+     * @return The number of recorded paths.
+     */
+    public long getCount() {
+        return histograms[0].getCount();
+    }
+
+    /**
+     * Retrieves a percentile of every stage.
+     *
+     * @param fraction The fraction, from 0 to 1 (e.g. 0.99 for the 99th percentile).
+     * @return The percentile in microseconds, by stage name in stage order.
+     */
+    public Map<String, Long> getPercentiles(double fraction) {
+        Map<String, Long> percentiles = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            percentiles.put(names[i], histograms[i].getPercentile(fraction));
+        }
+        return percentiles;
+    }
+
+    /**
+     * Renders the median, 99th percentile and maximum of every stage, one stage per line.
+     *
+     * @return The rendered stages.
+     */
+    public String render() {
+        StringBuilder sb = new StringBuilder(64 * names.length);
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) sb.append('\n');
+            sb.append(names[i]).append(" p50/p99/max ").append(histograms[i].getPercentile(0.50)).append('/')
+                    .append(histograms[i].getPercentile(0.99)).append('/').append(histograms[i].getMax()).append(" us");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Forgets the recorded durations of every stage.
+     */
+    public void reset() {
+        for (Histogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package server;
+
+import common.PacketHandler;
+import common.util.SimpleLogger;
+
+import java.net.DatagramPacket;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The AdmissionFilter class is the first stage of the inbound path: a PacketHandler that limits the packets
+ * every source address can send, before they are reassembled, decoded or looked up, so a flooding host costs a
+ * few nanoseconds per packet instead of a parse and a session lookup.
+ * <p>
+ * Every packet must fit in two limits: the one of its host, whatever source port it uses, and a tighter one of
+ * its address and port. The host limit is what stops a flood that rotates its source port, since every port would
+ * otherwise start with a full bucket; it is sized for the clients that share an address, behind a NAT or on the
+ * same machine. The port limit keeps one of those clients from taking the budget of the others.
+ * <p>
+ * The limits are token buckets kept as a theoretical arrival time (GCRA) in fixed {@link AtomicLongArray}s,
+ * indexed by a hash of the source. Admitting a packet is a compare-and-set on one slot of each table: nothing is
+ * allocated and the receiver shards share the tables without locks. Sources that hash to the same slot share its
+ * budget, which with {@link #SLOTS} slots only happens for a few of them. Dropped packets are counted in a
+ * {@link LongAdder} and only a sample of them is logged, so a flood does not contend on a shared counter.
+ */
+public class AdmissionFilter implements PacketHandler {
+    private static final int SLOTS = 1 << 16;  // Buckets in the table, a power of two
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(AdmissionFilter.class);  // Logger for the class
+
+    private static final int LOG_SAMPLE = 10_000;  // One dropped packet in this many is logged, on average
+
+    private final PacketHandler handler;  // Handler of the admitted packets
+    private final AtomicLongArray arrivals = new AtomicLongArray(SLOTS);  // Theoretical arrival time per source bucket, in ns from the epoch
+    private final AtomicLongArray hostArrivals = new AtomicLongArray(SLOTS);  // Theoretical arrival time per host bucket, in ns from the epoch
+    private final long epoch = System.nanoTime();  // Origin of the arrival times, so a zeroed slot is a full bucket
+    private final long interval;  // Nanoseconds between packets of a source at the sustained rate
+    private final long burst;  // Depth of every source bucket in nanoseconds
+    private final long hostInterval;  // Nanoseconds between packets of a host at the sustained rate
+    private final long hostBurst;  // Depth of every host bucket in nanoseconds
+    private final LongAdder rejected = new LongAdder();  // Packets dropped for going over the limit
+    private volatile boolean rejectedAny;  // Whether a packet was dropped yet, so the first one is always logged
+
+    /**
+     * Constructs an AdmissionFilter in front of the given handler.
+     *
+     * @param handler The handler of the admitted packets.
+     * @param packetsPerSecond The sustained packets per second every source address and port may send.
+     * @param burstPackets The packets a source address and port may send at once after being idle.
+     * @param hostPacketsPerSecond The sustained packets per second every source address may send, from any port.
+     * @param hostBurstPackets The packets a source address may send at once after being idle.
+     */
+    public AdmissionFilter(PacketHandler handler, long packetsPerSecond, long burstPackets,
+                           long hostPacketsPerSecond, long hostBurstPackets) {
+        this.handler = handler;
+        this.interval = 1_000_000_000L / packetsPerSecond;
+        this.burst = burstPackets * interval;
+        this.hostInterval = 1_000_000_000L / hostPacketsPerSecond;
+        this.hostBurst = hostBurstPackets * hostInterval;
+        logger.log(Level.INFO, "Inbound limit of {0} packets/s per source in bursts of {1}, {2} packets/s per host "
+                + "in bursts of {3}", new Object[]{packetsPerSecond, burstPackets, hostPacketsPerSecond, hostBurstPackets});
+    }
+
+    /**
+     * Hands the packet over if its source is within its limit, and drops it otherwise.
+     *
+     * @param packet The received packet.
+     */
+    @Override
+    public void processPacket(DatagramPacket packet) {
+        if (admit(packet)) {
+            handler.processPacket(packet);
+        } else {
+            reject(packet);
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of the host of a packet, and then from the bucket of its source port. A packet
+     * the host bucket rejects does not touch the table of the ports.
+     *
+     * @return true if the host and the source are within their limits.
+     */
+    private boolean admit(DatagramPacket packet) {
+        int address = packet.getAddress().hashCode();
+        long now = System.nanoTime() - epoch;
+        return tryAcquire(hostArrivals, slot(address, 0), now, hostInterval, hostBurst)
+                && tryAcquire(arrivals, slot(address, packet.getPort()), now, interval, burst);
+    }
+
+    /**
+     * Takes a token from one bucket of a table.
+     *
+     * @return true if the bucket had room.
+     */
+    private static boolean tryAcquire(AtomicLongArray table, int slot, long now, long interval, long burst) {
+        now += burst;  // Shifted by a burst, so a zeroed slot starts full
+        while (true) {
+            long current = table.get(slot);
+            long next = Math.max(current, now) + interval;
+            if (next - now > burst) return false;
+            if (table.compareAndSet(slot, current, next)) return true;
+        }
+    }
+
+    /**
+     * Spreads an address hash and a port over the slots of a table.
+     */
+    private static int slot(int address, int port) {
+        long h = (((address & 0xFFFFFFFFL) << 16) | (port & 0xFFFF)) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (SLOTS - 1);
+    }
+
+    /**
+     * Counts a dropped packet, logging the first one and then about one in {@link #LOG_SAMPLE}. The sample is
+     * drawn from a thread-local random, so deciding whether to log never reads the shared count.
+     */
+    private void reject(DatagramPacket packet) {
+        rejected.increment();
+        if (!rejectedAny) {
+            rejectedAny = true;
+        } else if (ThreadLocalRandom.current().nextInt(LOG_SAMPLE) != 0) {
+            return;
+        }
+        logger.log(Level.WARNING, "Inbound limit exceeded by {0}, about {1} packets dropped so far",
+                new Object[]{packet.getSocketAddress(), rejected.sum()});
+    }
+
+    /**
+     * Retrieves the number of packets dropped for going over the limit.
+     *
+     * @return The number of dropped packets.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
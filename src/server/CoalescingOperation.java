@@ -0,0 +1,186 @@
+package server;
+
+import common.UDPOperation;
+import common.codec.BinaryCodec;
+import common.util.SimpleLogger;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The CoalescingOperation class wraps a UDPOperation and packs the binary frames sent to the same recipient
+ * into a single datagram. A recipient's pending batch is flushed when the next frame would not fit in
+ * {@link #MAX_BATCH_SIZE}, and on every tick of a flusher thread, so a frame waits at most one tick.
+ * <p>
+ * A batch holding a single frame is sent as a plain frame. Frames too large to batch flush the pending batch
+ * and then go out on their own, so the order of the messages to a recipient is preserved.
+ * Batches of recipients that stop receiving messages are released after {@link #IDLE_TICKS} ticks.
+ */
+public class CoalescingOperation implements UDPOperation {
+    private static final int MAX_BATCH_SIZE = 1024;  // Receive buffer size of the clients
+    private static final int IDLE_TICKS = 1000;  // Empty ticks after which a recipient's batch is released
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(CoalescingOperation.class);  // Logger for the class
+
+    private final UDPOperation delegate;  // Transport that sends the datagrams
+    private final Map<InetSocketAddress, Batch> batches = new ConcurrentHashMap<>();  // Pending batch per recipient
+    private final ScheduledExecutorService flusher;  // Thread that flushes the batches on every tick
+
+    /**
+     * Constructs a CoalescingOperation that flushes the pending batches every tick.
+     *
+     * @param delegate The transport that sends the datagrams.
+     * @param tickMillis The flush period in milliseconds.
+     */
+    public CoalescingOperation(UDPOperation delegate, long tickMillis) {
+        this.delegate = delegate;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "coalescing-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleAtFixedRate(this::flushAll, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        logger.log(Level.INFO, "Coalescing enabled with a {0} ms tick", tickMillis);
+    }
+
+    /**
+     * Queues the data for the recipient; it is wrapped and takes the same path as buffers.
+     *
+     * @param data The frame to send, in byte array form.
+     * @param address The destination InetAddress.
+     * @param port The destination port number.
+     */
+    @Override
+    public void send(byte[] data, InetAddress address, int port) {
+        send(ByteBuffer.wrap(data), new InetSocketAddress(address, port));
+    }
+
+    /**
+     * Appends the frame to the recipient's pending batch, flushing the batch first if the frame does not fit.
+     * The frame is copied, so the caller can reuse its buffer as soon as this method returns.
+     *
+     * @param data The frame to send, from its position to its limit.
+     * @param target The destination socket address.
+     */
+    @Override
+    public void send(ByteBuffer data, InetSocketAddress target) {
+        int length = data.remaining();
+        while (true) {
+            Batch batch = batches.computeIfAbsent(target, Batch::new);
+            synchronized (batch) {
+                if (batch.retired) continue;  // Released by the flusher meanwhile, take a fresh one
+
+                if (BinaryCodec.BATCH_HEADER_SIZE + length > MAX_BATCH_SIZE) {
+                    flush(batch);
+                    delegate.send(data, target);  // Too large to share a datagram
+                    return;
+                }
+                if (batch.buffer.remaining() < length) {
+                    flush(batch);
+                }
+                int position = data.position();
+                batch.buffer.put(data);
+                data.position(position);
+                batch.frames++;
+                batch.idleTicks = 0;
+                if (!batch.buffer.hasRemaining()) {
+                    flush(batch);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Flushes every pending batch and releases the ones that have been idle for too long.
+     */
+    private void flushAll() {
+        try {
+            for (Batch batch : batches.values()) {
+                synchronized (batch) {
+                    if (batch.frames > 0) {
+                        flush(batch);
+                    } else if (++batch.idleTicks >= IDLE_TICKS) {
+                        batch.retired = true;
+                        batches.remove(batch.target, batch);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Error flushing the coalesced messages: {0}", e.getMessage());  // Keep the tick alive
+        }
+    }
+
+    /**
+     * Sends the pending frames of a batch and resets it. Must be called holding the batch's lock.
+     *
+     * @param batch The batch to flush.
+     */
+    private void flush(Batch batch) {
+        if (batch.frames == 0) return;
+        ByteBuffer buffer = batch.buffer;
+        buffer.flip();
+        if (batch.frames == 1) {
+            buffer.position(BinaryCodec.BATCH_HEADER_SIZE);  // A lone frame does not need the batch header
+        }
+        delegate.send(buffer, batch.target);
+        batch.reset();
+    }
+
+    @Override
+    public void receive() {
+        delegate.receive();
+    }
+
+    @Override
+    public void setReceiveTimeout(int timeout) {
+        delegate.setReceiveTimeout(timeout);
+    }
+
+    /**
+     * Flushes the pending batches, stops the flusher and closes the wrapped transport.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flushAll();
+        delegate.close();
+    }
+
+    /**
+     * The frames waiting to be sent to one recipient, guarded by the batch itself.
+     */
+    private static class Batch {
+        private final InetSocketAddress target;  // Recipient of the batch
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_BATCH_SIZE);  // Header followed by the frames
+        private int frames;  // Number of frames in the buffer
+        private int idleTicks;  // Consecutive ticks without frames
+        private boolean retired;  // Whether the batch was removed from the map
+
+        /**
+         * Constructs an empty batch for a recipient.
+         *
+         * @param target The recipient.
+         */
+        Batch(InetSocketAddress target) {
+            this.target = target;
+            reset();
+        }
+
+        /**
+         * Empties the batch, leaving only the header.
+         */
+        void reset() {
+            buffer.clear();
+            BinaryCodec.writeBatchHeader(buffer);
+            frames = 0;
+        }
+    }
+}
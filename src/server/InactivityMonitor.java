@@ -0,0 +1,99 @@
+package server;
+
+import common.util.CachedClock;
+import common.util.SimpleLogger;
+import server.model.RoomRegistry;
+import server.model.User;
+import server.session.Session;
+import server.session.SessionTable;
+import server.timer.TimingWheel;
+
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The InactivityMonitor class detects the users that stopped sending packets, pings them and evicts the ones
+ * that do not answer.
+ * <p>
+ * Every packet only writes the last activity time of its {@link Session}, which is O(1) and never touches the
+ * timer. Each session has a single timeout on a {@link TimingWheel}, due when the user would become inactive;
+ * when it fires, the session is checked against its last activity: if it was active in the meantime the timeout
+ * is simply rescheduled for the new deadline, otherwise the user is pinged, and evicted after
+ * {@link #MAX_PING_COUNT} checks without activity. Only the sessions whose deadline expired are ever looked at,
+ * and pings go out on the timer thread even when no packet arrives.
+ */
+public class InactivityMonitor {
+    private static final long INACTIVITY_THRESHOLD = 20000;  // 20s: Time without packets before a user is pinged
+    private static final long PING_INTERVAL = 5000;  // 5s: Time between pings to an inactive user
+    private static final int MAX_PING_COUNT = 3;  // Checks without activity before the user is evicted
+    private static final long TICK_MILLIS = 100;  // Resolution of the timing wheel
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(InactivityMonitor.class);  // Logger for the class
+
+    private final TimingWheel timer = new TimingWheel(TICK_MILLIS, "inactivity-timer");  // Wheel driving the checks
+    private final RoomRegistry roomRegistry;  // Registry the users must be logged in to
+    private final SessionTable sessions;  // Table the idle sessions are dropped from
+    private final MessageSender messageSender;  // Sender used for the pings
+    private final Consumer<User> evictionHandler;  // Removes a user that did not answer the pings
+
+    /**
+     * Constructs a monitor for the sessions of the server.
+     *
+     * @param roomRegistry The registry the users are logged in to.
+     * @param sessions The session table of the server.
+     * @param messageSender The sender used to ping the inactive users.
+     * @param evictionHandler Called on the timer thread for every user that did not answer the pings.
+     */
+    public InactivityMonitor(RoomRegistry roomRegistry, SessionTable sessions, MessageSender messageSender, Consumer<User> evictionHandler) {
+        this.roomRegistry = roomRegistry;
+        this.sessions = sessions;
+        this.messageSender = messageSender;
+        this.evictionHandler = evictionHandler;
+    }
+
+    /**
+     * Starts watching a session that was just opened.
+     *
+     * @param session The new session.
+     */
+    public void watch(Session session) {
+        timer.schedule(() -> check(session), INACTIVITY_THRESHOLD);
+    }
+
+    /**
+     * Runs when the timeout of a session fires: reschedules it if the session was active in the meantime,
+     * otherwise pings or evicts the user. Sessions of addresses that are not logged in are dropped once idle.
+     *
+     * @param session The session to check.
+     */
+    private void check(Session session) {
+        long last = session.getLastActivity();
+        if (last < 0) return;  // Already closed
+        long idle = CachedClock.currentTimeMillis() - last;  // Same clock the activity is stamped with
+        if (idle < INACTIVITY_THRESHOLD) {
+            session.resetPings();
+            timer.schedule(() -> check(session), INACTIVITY_THRESHOLD - idle);
+            return;
+        }
+
+        User user = session.getUser();
+        if (!roomRegistry.isLoggedIn(user)) {
+            if (session.close(last)) {
+                sessions.remove(session);
+            } else {
+                timer.schedule(() -> check(session), INACTIVITY_THRESHOLD);  // A packet arrived meanwhile
+            }
+            return;
+        }
+
+        if (session.incrementPings() >= MAX_PING_COUNT) {
+            session.close();
+            sessions.remove(session);
+            evictionHandler.accept(user);
+            return;
+        }
+        logger.log(Level.INFO, "Sending ping to inactive user {0}", session.getKey());
+        messageSender.sendPing(user);
+        timer.schedule(() -> check(session), PING_INTERVAL);
+    }
+}
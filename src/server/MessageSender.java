@@ -1,12 +1,19 @@
 package server;
 
+import common.codec.WireFormat;
+import common.util.BufferPool;
 import common.util.MessageUtil;
 import common.util.SimpleLogger;
 import common.UDPOperation;
+import server.metrics.ServerMetrics;
 import server.model.ChatRoom;
 import server.model.User;
+import server.model.message.RenderedView;
 import server.model.message.ServerMessage;
 
+import java.net.DatagramPacket;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,10 +22,28 @@ import java.util.logging.Logger;
  * It interfaces with a `UDPOperation` to send messages to either a single user, multiple users,
  * or broadcast messages to a chat room. It also provides various message types such as information,
  * error, login, and exit messages.
+ * <p>
+ * Messages are encoded into a pooled direct buffer. A broadcast is encoded once and the same bytes are sent
+ * to every recipient, so fan-out costs one send per recipient and no encoding or allocation.
+ * <p>
+ * Optionally, messages go through a {@link CoalescingOperation} that packs the messages pending for the same
+ * recipient into one datagram per flush tick.
+ * <p>
+ * Optionally too, the messages that must not be lost (login replies, errors, disconnections and private messages)
+ * are delivered through a {@link ReliableSender}, which retransmits them until the client acknowledges them.
+ * Chat messages, information and pings stay best-effort. Reliable messages skip the coalescing, so they may
+ * overtake best-effort messages still waiting for the next tick.
+ * <p>
+ * The fan-out and duration of every broadcast are recorded in the {@link ServerMetrics} of the server.
  */
 public class MessageSender {
+    private static final int MAX_DATAGRAM_SIZE = 65507;  // Largest UDP payload over IPv4
     private final UDPOperation udpOperation;  // Reference to the UDPSocket operation
+    private final ReliableSender reliableSender;  // Reliable delivery of the important messages, null if disabled
+    private final ServerMetrics metrics;  // Registry the broadcasts are recorded in
     private static final Logger logger = SimpleLogger.getInstance().getLogger(MessageSender.class);  // Logger for the class
+    private final BufferPool encodeBuffers =
+            new BufferPool(Runtime.getRuntime().availableProcessors() * 2, MAX_DATAGRAM_SIZE);  // Encoding buffers
 
     /**
      * Constructs a MessageSender instance with a reference to the common UDP interface.
@@ -26,30 +51,140 @@ public class MessageSender {
      * @param udpOperation The UDPOperation instance used to send UDP packets.
      */
     public MessageSender(UDPOperation udpOperation) {
-        this.udpOperation = udpOperation;  // Store the reference to the UDPSocket
+        this(udpOperation, 0, false);
+    }
+
+    /**
+     * Constructs a MessageSender that coalesces the messages to each recipient, flushing them every tick.
+     * Coalescing needs the binary wire format; with the text format, or a tick of 0, messages are sent one by one.
+     *
+     * @param udpOperation The UDPOperation instance used to send UDP packets.
+     * @param coalesceTickMillis The flush period of the coalesced messages in milliseconds, 0 to disable coalescing.
+     */
+    public MessageSender(UDPOperation udpOperation, long coalesceTickMillis) {
+        this(udpOperation, coalesceTickMillis, false);
+    }
+
+    /**
+     * Constructs a MessageSender that optionally coalesces the messages to each recipient and delivers the
+     * important ones reliably. Both need the binary wire format.
+     *
+     * @param udpOperation The UDPOperation instance used to send UDP packets.
+     * @param coalesceTickMillis The flush period of the coalesced messages in milliseconds, 0 to disable coalescing.
+     * @param reliable Whether to deliver login replies, errors, disconnections and private messages reliably.
+     */
+    public MessageSender(UDPOperation udpOperation, long coalesceTickMillis, boolean reliable) {
+        this(udpOperation, coalesceTickMillis, reliable, new ServerMetrics());
+    }
+
+    /**
+     * Constructs a MessageSender that optionally coalesces the messages to each recipient and delivers the
+     * important ones reliably, recording its broadcasts in the given metrics.
+     *
+     * @param udpOperation The UDPOperation instance used to send UDP packets.
+     * @param coalesceTickMillis The flush period of the coalesced messages in milliseconds, 0 to disable coalescing.
+     * @param reliable Whether to deliver login replies, errors, disconnections and private messages reliably.
+     * @param metrics The registry the broadcasts are recorded in.
+     */
+    public MessageSender(UDPOperation udpOperation, long coalesceTickMillis, boolean reliable, ServerMetrics metrics) {
+        this.metrics = metrics;
+        this.udpOperation = wrapForCoalescing(udpOperation, coalesceTickMillis);  // Store the reference to the UDPSocket
+        this.reliableSender = createReliableSender(udpOperation, reliable);
         logger.log(Level.INFO, "MessageSender initialized");
     }
 
+    /**
+     * Wraps the transport in a CoalescingOperation when coalescing is enabled and possible.
+     */
+    private static UDPOperation wrapForCoalescing(UDPOperation udpOperation, long coalesceTickMillis) {
+        if (coalesceTickMillis <= 0) return udpOperation;
+        if (MessageUtil.getWireFormat() != WireFormat.BINARY) {
+            logger.log(Level.WARNING, "Coalescing needs the binary wire format, sending messages one by one");
+            return udpOperation;
+        }
+        return new CoalescingOperation(udpOperation, coalesceTickMillis);
+    }
+
+    /**
+     * Creates the reliable sender when reliable delivery is enabled and possible.
+     */
+    private static ReliableSender createReliableSender(UDPOperation udpOperation, boolean reliable) {
+        if (!reliable) return null;
+        if (MessageUtil.getWireFormat() != WireFormat.BINARY) {
+            logger.log(Level.WARNING, "Reliable delivery needs the binary wire format, sending every message best-effort");
+            return null;
+        }
+        return new ReliableSender(udpOperation);
+    }
+
+    /**
+     * Handles a packet if it acknowledges reliable messages.
+     *
+     * @param packet The packet received from a client.
+     * @return true if the packet was an ACK and has been handled, false if it is a client message.
+     */
+    public boolean processAck(DatagramPacket packet) {
+        return reliableSender != null && reliableSender.processAck(packet);
+    }
+
     /**
      * Helper method to send a message to a specific user.
      *
      * @param message The message to be sent.
      * @param user The user to whom the message will be sent.
+     * @param reliable Whether the message must be delivered reliably, if reliable delivery is enabled.
+     */
+    private void sendMessage(ServerMessage message, User user, boolean reliable) {
+        ByteBuffer msgData = encodeBuffers.acquire();
+        try {
+            if (!encode(message, msgData)) return;
+            if (reliable && reliableSender != null) {
+                reliableSender.send(msgData, user.getSocketAddress());  // Retransmitted until acknowledged
+            } else {
+                udpOperation.send(msgData, user.getSocketAddress());  // Send the message to the user
+            }
+        } finally {
+            encodeBuffers.release(msgData);
+        }
+    }
+
+    /**
+     * Encodes a message into a buffer and flips it, so it is ready to be sent.
+     *
+     * @param message The message to encode.
+     * @param buffer The cleared destination buffer.
+     * @return true if the message was encoded, false if it does not fit in a datagram.
      */
-    private void sendMessage(ServerMessage message, User user) {
-        byte[] msgData = MessageUtil.createServerMessage(message);  // Convert the message to a byte array
-        udpOperation.send(msgData, user.getIp(), user.getPort());  // Send the message to the user
+    private boolean encode(ServerMessage message, ByteBuffer buffer) {
+        try {
+            MessageUtil.encodeServerMessage(message, buffer);
+        } catch (BufferOverflowException e) {
+            logger.log(Level.SEVERE, "Message too large for a datagram, dropped");
+            return false;
+        }
+        buffer.flip();
+        return true;
     }
 
     /**
-     * Sends a message to a single user.
+     * Sends a message to a single user. Login replies, errors and disconnections are delivered reliably
+     * if reliable delivery is enabled.
      *
      * @param message The message content.
      * @param status The status code indicating the message type.
      * @param user The recipient user.
      */
     public void sendToUser(String message, int status, User user) {
-        sendMessage(new ServerMessage(message, status), user);  // Create ServerMessage and send it
+        sendMessage(new ServerMessage(message, status), user, isReliable(status));  // Create ServerMessage and send it
+    }
+
+    /**
+     * Checks whether the messages with a status must be delivered reliably.
+     */
+    private static boolean isReliable(int status) {
+        return status == ServerMessage.ServerStatus.LOGIN_OK.getValue()
+                || status == ServerMessage.ServerStatus.ERROR.getValue()
+                || status == ServerMessage.ServerStatus.DISCONNECT.getValue();
     }
 
     /**
@@ -61,10 +196,32 @@ public class MessageSender {
      * @param owner The user sending the message (to be excluded from the broadcast).
      */
     public void sendBroadcast(String message, int status, ChatRoom chatRoom, User owner) {
-        ServerMessage serverMessage = new ServerMessage(message, status);
-        chatRoom.getUsers().stream()
-                .filter(user -> !user.equals(owner))  // Exclude the owner from the broadcast
-                .forEach(user -> sendMessage(serverMessage, user));  // Send the message to each user
+        sendBroadcast(new ServerMessage(message, status), chatRoom, owner);
+    }
+
+    /**
+     * Sends a broadcast message, such as a traced chat message, to all users in the chat room, excluding the sender.
+     *
+     * @param message The message to send.
+     * @param chatRoom The chat room containing all users.
+     * @param owner The user sending the message (to be excluded from the broadcast).
+     */
+    public void sendBroadcast(ServerMessage message, ChatRoom chatRoom, User owner) {
+        ByteBuffer msgData = encodeBuffers.acquire();
+        try {
+            if (!encode(message, msgData)) return;  // Encoded once for every recipient
+            long start = System.nanoTime();
+            int recipients = 0;
+            for (User user : chatRoom.getUsers()) {
+                if (!user.equals(owner)) {  // Exclude the owner from the broadcast
+                    udpOperation.send(msgData, user.getSocketAddress());  // Send the same bytes to each user
+                    recipients++;
+                }
+            }
+            metrics.recordBroadcast(recipients, System.nanoTime() - start);
+        } finally {
+            encodeBuffers.release(msgData);
+        }
     }
 
     /**
@@ -89,6 +246,17 @@ public class MessageSender {
         sendToUser(messageHistory, ServerMessage.ServerStatus.INFO.getValue(), user);
     }
 
+    /**
+     * Sends a rendered view of a chat room, such as a history page, to a user. The view is encoded once and the
+     * same bytes are sent to every user it is sent to.
+     *
+     * @param view The rendered view.
+     * @param user The recipient user.
+     */
+    public void sendViewToUser(RenderedView view, User user) {
+        udpOperation.send(ByteBuffer.wrap(view.getEncoded()), user.getSocketAddress());
+    }
+
     /**
      * Sends an informational message to a user.
      *
@@ -99,6 +267,16 @@ public class MessageSender {
         sendToUser(msg, ServerMessage.ServerStatus.INFO.getValue(), user);
     }
 
+    /**
+     * Sends a private message to a user, reliably if reliable delivery is enabled.
+     *
+     * @param msg The formatted private message.
+     * @param user The recipient user.
+     */
+    public void sendPrivateToUser(String msg, User user) {
+        sendMessage(new ServerMessage(msg, ServerMessage.ServerStatus.INFO.getValue()), user, true);
+    }
+
     /**
      * Sends a login success message to a user.
      *
@@ -135,6 +313,7 @@ public class MessageSender {
      * @param user The user to whom the ping message will be sent.
      */
     public void sendPing(User user) {
+        metrics.recordPing();
         sendToUser("ping", ServerMessage.ServerStatus.PING.getValue(), user);
     }
 }
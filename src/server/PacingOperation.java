@@ -0,0 +1,252 @@
+package server;
+
+import common.UDPOperation;
+import common.util.SimpleLogger;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The PacingOperation class wraps a UDPOperation and paces the datagrams sent to every recipient, so a burst of
+ * broadcasts does not overflow the kernel send buffer or the receive buffer of slow clients.
+ * <p>
+ * Every recipient has a token bucket of bytes, and all of them share a global egress budget. A datagram goes out
+ * right away if both buckets have room for it; otherwise it waits in a small bounded queue of its recipient,
+ * drained by a pacer thread as the buckets refill. A datagram that finds the queue full is dropped, as it would
+ * have been by the kernel, but counted and logged.
+ * <p>
+ * The buckets are kept as a theoretical arrival time (GCRA): a single {@link AtomicLong} per bucket updated with
+ * a compare-and-set, so sending takes no lock however many sessions there are. The queues are lock-free too.
+ */
+public class PacingOperation implements UDPOperation {
+    private static final int MAX_QUEUED = 64;  // Datagrams waiting per recipient
+    private static final long TICK_MILLIS = 5;  // Period of the pacer thread
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(60);  // Time after which an idle recipient is forgotten
+    private static final int RETIRED = -1;  // Backlog of a recipient removed from the map
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(PacingOperation.class);  // Logger for the class
+
+    private final UDPOperation delegate;  // Transport that sends the datagrams
+    private final double nanosPerByte;  // Cost of a byte in the bucket of a recipient
+    private final long burstNanos;  // Depth of the bucket of a recipient
+    private final double globalNanosPerByte;  // Cost of a byte in the global bucket
+    private final long globalBurstNanos;  // Depth of the global bucket
+    private final AtomicLong globalArrival = new AtomicLong(System.nanoTime());  // Theoretical arrival time of the global bucket
+    private final Map<InetSocketAddress, Recipient> recipients = new ConcurrentHashMap<>();  // Pacing state per recipient
+    private final Queue<Recipient> backlogged = new ConcurrentLinkedQueue<>();  // Recipients with queued datagrams
+    private final LongAdder dropped = new LongAdder();  // Datagrams dropped because their queue was full
+    private final ScheduledExecutorService pacer;  // Thread that drains the queues
+
+    /**
+     * The pacing state of one recipient.
+     */
+    private static final class Recipient {
+        private final InetSocketAddress target;  // Address of the recipient
+        private final AtomicLong arrival;  // Theoretical arrival time of the bucket
+        private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();  // Datagrams waiting for tokens
+        private final AtomicInteger backlog = new AtomicInteger();  // Size of the queue, RETIRED once removed
+        private final AtomicBoolean scheduled = new AtomicBoolean();  // Whether it is in the backlogged queue
+
+        private Recipient(InetSocketAddress target) {
+            this.target = target;
+            this.arrival = new AtomicLong(System.nanoTime());
+        }
+    }
+
+    /**
+     * Constructs a PacingOperation.
+     *
+     * @param delegate The transport that sends the datagrams.
+     * @param bytesPerSecond The sustained rate of every recipient.
+     * @param burstBytes The bytes a recipient can receive at once after being idle.
+     * @param globalBytesPerSecond The sustained rate of all the recipients together.
+     * @param globalBurstBytes The bytes that can be sent at once in total after being idle.
+     */
+    public PacingOperation(UDPOperation delegate, long bytesPerSecond, long burstBytes,
+                           long globalBytesPerSecond, long globalBurstBytes) {
+        this.delegate = delegate;
+        this.nanosPerByte = 1e9 / bytesPerSecond;
+        this.burstNanos = (long) (burstBytes * nanosPerByte);
+        this.globalNanosPerByte = 1e9 / globalBytesPerSecond;
+        this.globalBurstNanos = (long) (globalBurstBytes * globalNanosPerByte);
+        this.pacer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pacer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pacer.scheduleAtFixedRate(this::drain, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        pacer.scheduleAtFixedRate(this::forgetIdle, 60, 60, TimeUnit.SECONDS);
+        logger.log(Level.INFO, "Pacing enabled at {0} B/s per client and {1} B/s in total",
+                new Object[]{bytesPerSecond, globalBytesPerSecond});
+    }
+
+    /**
+     * Sends the data now or queues it; it is wrapped and takes the same path as buffers.
+     *
+     * @param data The data to send, in byte array form.
+     * @param address The destination InetAddress.
+     * @param port The destination port number.
+     */
+    @Override
+    public void send(byte[] data, InetAddress address, int port) {
+        send(ByteBuffer.wrap(data), new InetSocketAddress(address, port));
+    }
+
+    /**
+     * Sends the data now if the buckets allow it and nothing is queued for the recipient, or queues a copy.
+     * The position of the buffer is left unchanged.
+     *
+     * @param data The data to send, from its position to its limit.
+     * @param target The destination socket address.
+     */
+    @Override
+    public void send(ByteBuffer data, InetSocketAddress target) {
+        int length = data.remaining();
+        while (true) {
+            Recipient recipient = recipients.computeIfAbsent(target, Recipient::new);
+            int backlog = recipient.backlog.get();
+            if (backlog == RETIRED) continue;  // Forgotten meanwhile, take a fresh one
+            if (backlog == 0 && tryAcquire(recipient, length, System.nanoTime())) {
+                delegate.send(data, target);
+                return;
+            }
+            if (backlog >= MAX_QUEUED) {
+                drop(target);
+                return;
+            }
+            if (!recipient.backlog.compareAndSet(backlog, backlog + 1)) continue;  // Raced with another sender or the pacer
+
+            byte[] copy = new byte[length];
+            data.get(data.position(), copy);
+            recipient.queue.add(copy);
+            if (recipient.scheduled.compareAndSet(false, true)) backlogged.add(recipient);
+            return;
+        }
+    }
+
+    /**
+     * Takes tokens for a datagram from the bucket of the recipient and from the global bucket.
+     *
+     * @return true if both buckets had room, false if the datagram must wait.
+     */
+    private boolean tryAcquire(Recipient recipient, int length, long now) {
+        long cost = (long) (length * nanosPerByte);
+        if (!tryAcquire(recipient.arrival, cost, burstNanos, now)) return false;
+        if (tryAcquire(globalArrival, (long) (length * globalNanosPerByte), globalBurstNanos, now)) return true;
+        recipient.arrival.addAndGet(-cost);  // Give the tokens back, the datagram waits
+        return false;
+    }
+
+    /**
+     * Takes tokens from a bucket kept as a theoretical arrival time: the bucket has room if, after adding the cost
+     * of the datagram, the arrival time is no further ahead of now than the depth of the bucket. A full bucket
+     * always lets a datagram through, even one larger than its depth, which then goes into debt.
+     */
+    private static boolean tryAcquire(AtomicLong arrival, long cost, long burst, long now) {
+        while (true) {
+            long current = arrival.get();
+            long start = Math.max(current, now);
+            long next = start + cost;
+            if (start > now && next - now > burst) return false;
+            if (arrival.compareAndSet(current, next)) return true;
+        }
+    }
+
+    /**
+     * Sends the queued datagrams the buckets allow, oldest first. Runs on the pacer thread.
+     * The backlog of a recipient counts a datagram until it has been handed to the delegate, so a concurrent
+     * {@link #send(ByteBuffer, InetSocketAddress)} cannot overtake it.
+     */
+    private void drain() {
+        long now = System.nanoTime();
+        for (int pending = backlogged.size(); pending > 0; pending--) {
+            Recipient recipient = backlogged.poll();
+            if (recipient == null) return;
+            byte[] next;
+            while ((next = recipient.queue.peek()) != null && tryAcquire(recipient, next.length, now)) {
+                recipient.queue.poll();
+                delegate.send(ByteBuffer.wrap(next), recipient.target);
+                recipient.backlog.decrementAndGet();  // Only now may a sender bypass the queue, keeping the order
+            }
+            recipient.scheduled.set(false);
+            if (!recipient.queue.isEmpty() && recipient.scheduled.compareAndSet(false, true)) {
+                backlogged.add(recipient);  // Still waiting for tokens, try again next tick
+            }
+        }
+    }
+
+    /**
+     * Forgets the recipients that have nothing queued and whose bucket has been full for a while.
+     * Runs on the pacer thread.
+     */
+    private void forgetIdle() {
+        long idleBefore = System.nanoTime() - IDLE_NANOS;
+        for (Iterator<Recipient> iterator = recipients.values().iterator(); iterator.hasNext(); ) {
+            Recipient recipient = iterator.next();
+            if (recipient.arrival.get() < idleBefore && recipient.backlog.compareAndSet(0, RETIRED)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Counts a dropped datagram, logging every hundredth.
+     */
+    private void drop(InetSocketAddress target) {
+        dropped.increment();
+        long total = dropped.sum();
+        if (total % 100 == 1) {
+            logger.log(Level.WARNING, "Send queue of {0} full, {1} datagrams dropped so far", new Object[]{target, total});
+        }
+    }
+
+    /**
+     * Retrieves the number of datagrams dropped because the queue of their recipient was full.
+     *
+     * @return The number of dropped datagrams.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Receives through the wrapped transport.
+     */
+    @Override
+    public void receive() {
+        delegate.receive();
+    }
+
+    /**
+     * Sets the receive timeout of the wrapped transport.
+     *
+     * @param timeout The timeout in milliseconds, 0 to wait indefinitely.
+     */
+    @Override
+    public void setReceiveTimeout(int timeout) {
+        delegate.setReceiveTimeout(timeout);
+    }
+
+    /**
+     * Stops the pacer and closes the wrapped transport. Queued datagrams are discarded.
+     */
+    @Override
+    public void close() {
+        pacer.shutdownNow();
+        delegate.close();
+    }
+}
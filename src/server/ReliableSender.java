@@ -0,0 +1,270 @@
+package server;
+
+import common.UDPOperation;
+import common.codec.BinaryCodec;
+import common.util.SimpleLogger;
+import server.timer.Timeout;
+import server.timer.TimingWheel;
+
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The ReliableSender class delivers payloads to clients reliably over UDP, for the messages that must not be lost
+ * (login replies, errors, disconnections, private messages) while the rest of the traffic stays best-effort.
+ * <p>
+ * Every client address gets a channel with a random id and increasing sequence numbers. A payload is sent with
+ * its channel id and sequence number and kept until the client acknowledges it; the ACKs carry the highest
+ * sequence number up to which everything arrived and a bitmap of the payloads received after a gap, so only the
+ * payloads that were really lost are sent again. The client delivers payloads as they arrive, so a lost payload
+ * never holds back the ones after it.
+ * <p>
+ * Retransmissions are driven by a {@link TimingWheel}. The retransmission timeout of each channel follows the
+ * measured round-trip time (smoothed RTT plus four times its variation, RFC 6298), only measured on payloads
+ * that were sent once, and doubles on every retransmission of a payload. A payload is given up after
+ * {@link #MAX_TRANSMISSIONS} sends. The payloads in flight span at most {@link #WINDOW} sequence numbers from the
+ * oldest unacknowledged one, which the ACK bitmap can always describe; the next ones wait in a bounded queue.
+ * <p>
+ * Channels without pending payloads are dropped after {@link #IDLE_MILLIS}. A new channel gets a new id, so the
+ * client starts counting from scratch instead of taking its payloads for duplicates.
+ */
+public class ReliableSender {
+    private static final int WINDOW = 64;  // Span of sequence numbers in flight per channel, the span of the ACK bitmap
+    private static final int MAX_QUEUED = 256;  // Payloads per channel waiting for room in the window
+    private static final int MAX_TRANSMISSIONS = 6;  // Sends of a payload before giving it up
+    private static final long TICK_MILLIS = 10;  // Resolution of the retransmission timer
+    private static final long INITIAL_RTO_MILLIS = 1000;  // Retransmission timeout before the first RTT sample
+    private static final long MIN_RTO_MILLIS = 200;  // Lower bound of the retransmission timeout
+    private static final long MAX_RTO_MILLIS = 5000;  // Upper bound of the retransmission timeout
+    private static final long IDLE_MILLIS = 60_000;  // Time after which an idle channel is dropped
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(ReliableSender.class);  // Logger for the class
+
+    private final UDPOperation delegate;  // Transport that sends the datagrams
+    private final Map<InetSocketAddress, Channel> channels = new ConcurrentHashMap<>();  // Channel per client address
+    private final TimingWheel timer = new TimingWheel(TICK_MILLIS, "reliable-timer");  // Drives the retransmissions
+
+    /**
+     * A payload waiting to be acknowledged.
+     */
+    private static final class Pending {
+        private final int sequence;  // Sequence number in the channel
+        private final byte[] datagram;  // Header and payload, as sent
+        private long sentAt;  // Time of the last send
+        private int transmissions = 0;  // Number of sends
+        private Timeout timeout;  // Retransmission of the last send
+
+        private Pending(int sequence, byte[] datagram) {
+            this.sequence = sequence;
+            this.datagram = datagram;
+        }
+    }
+
+    /**
+     * The state of the reliable delivery to one client address. Guarded by itself.
+     */
+    private static final class Channel {
+        private final int id = ThreadLocalRandom.current().nextInt();  // Tells the client a new channel started
+        private final InetSocketAddress target;  // Address of the client
+        private final NavigableMap<Integer, Pending> inFlight = new TreeMap<>();  // Unacknowledged payloads by sequence number
+        private final Queue<byte[]> queued = new ArrayDeque<>();  // Payloads waiting for room in the window
+        private int nextSequence = 1;  // Sequence number of the next payload
+        private long smoothedRtt = -1;  // Smoothed round-trip time in ms, -1 before the first sample
+        private long rttVariation = 0;  // Variation of the round-trip time in ms
+        private long rto = INITIAL_RTO_MILLIS;  // Retransmission timeout in ms
+        private long lastActivity = System.currentTimeMillis();  // Time of the last send or ACK
+        private boolean closed = false;  // Dropped from the channel map
+
+        private Channel(InetSocketAddress target) {
+            this.target = target;
+        }
+
+        /**
+         * Checks whether the next payload can be sent without going past the window.
+         */
+        private boolean hasRoom() {
+            return inFlight.isEmpty() || nextSequence - inFlight.firstKey() < WINDOW;
+        }
+    }
+
+    /**
+     * Constructs a ReliableSender that sends through the given transport.
+     *
+     * @param delegate The transport that sends the datagrams.
+     */
+    public ReliableSender(UDPOperation delegate) {
+        this.delegate = delegate;
+        timer.schedule(this::dropIdleChannels, IDLE_MILLIS);
+        logger.log(Level.INFO, "Reliable delivery enabled");
+    }
+
+    /**
+     * Sends a payload reliably. The payload is copied, so the caller can reuse its buffer as soon as this method
+     * returns, and the position of the buffer is left unchanged.
+     *
+     * @param data The payload to send, from its position to its limit.
+     * @param target The destination socket address.
+     */
+    public void send(ByteBuffer data, InetSocketAddress target) {
+        byte[] payload = new byte[data.remaining()];
+        data.get(data.position(), payload);
+        while (true) {
+            Channel channel = channels.computeIfAbsent(target, Channel::new);
+            synchronized (channel) {
+                if (channel.closed) continue;  // Dropped meanwhile, take a fresh one
+                channel.lastActivity = System.currentTimeMillis();
+                if (channel.hasRoom() && channel.queued.isEmpty()) {
+                    transmit(channel, createPending(channel, payload));
+                } else if (channel.queued.size() < MAX_QUEUED) {
+                    channel.queued.add(payload);
+                } else {
+                    logger.log(Level.WARNING, "Reliable queue full for {0}, message dropped", target);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Handles an ACK from a client: forgets the acknowledged payloads, measures the round-trip time and fills the
+     * window with queued payloads.
+     *
+     * @param packet The received packet.
+     * @return true if the packet was an ACK, false if it must be handled as a client message.
+     */
+    public boolean processAck(DatagramPacket packet) {
+        byte[] data = packet.getData();
+        int offset = packet.getOffset();
+        if (!BinaryCodec.isAck(data, offset, packet.getLength())) return false;
+
+        ByteBuffer ack = ByteBuffer.wrap(data, offset + 2, BinaryCodec.ACK_SIZE - 2);
+        int channelId = ack.getInt();
+        int cumulative = ack.getInt();
+        long selective = ack.getLong();
+        Channel channel = channels.get(packet.getSocketAddress());
+        if (channel == null) return true;
+
+        synchronized (channel) {
+            if (channel.closed || channel.id != channelId) return true;  // ACK of a previous channel
+            long now = System.currentTimeMillis();
+            channel.lastActivity = now;
+            Pending sample = null;
+            for (Iterator<Pending> pending = channel.inFlight.values().iterator(); pending.hasNext(); ) {
+                Pending candidate = pending.next();
+                if (!isAcknowledged(candidate.sequence, cumulative, selective)) continue;
+                pending.remove();
+                candidate.timeout.cancel();
+                if (candidate.transmissions == 1 && (sample == null || candidate.sequence > sample.sequence)) {
+                    sample = candidate;  // Karn: retransmitted payloads give ambiguous samples
+                }
+            }
+            if (sample != null) updateRto(channel, now - sample.sentAt);
+            fillWindow(channel);
+        }
+        return true;
+    }
+
+    /**
+     * Sends the queued payloads that fit in the window. Called with the channel lock held.
+     */
+    private void fillWindow(Channel channel) {
+        while (channel.hasRoom() && !channel.queued.isEmpty()) {
+            transmit(channel, createPending(channel, channel.queued.poll()));
+        }
+    }
+
+    /**
+     * Checks whether an ACK covers a sequence number.
+     */
+    private static boolean isAcknowledged(int sequence, int cumulative, long selective) {
+        int distance = sequence - cumulative;  // Overflow-safe comparison
+        if (distance <= 0) return true;
+        int bit = distance - 2;
+        return bit >= 0 && bit < Long.SIZE && (selective & (1L << bit)) != 0;
+    }
+
+    /**
+     * Updates the round-trip time estimates and the retransmission timeout of a channel with a new sample.
+     * Called with the channel lock held.
+     */
+    private static void updateRto(Channel channel, long rtt) {
+        if (channel.smoothedRtt < 0) {
+            channel.smoothedRtt = rtt;
+            channel.rttVariation = rtt / 2;
+        } else {
+            channel.rttVariation = (3 * channel.rttVariation + Math.abs(channel.smoothedRtt - rtt)) / 4;
+            channel.smoothedRtt = (7 * channel.smoothedRtt + rtt) / 8;
+        }
+        long rto = channel.smoothedRtt + Math.max(TICK_MILLIS, 4 * channel.rttVariation);
+        channel.rto = Math.min(MAX_RTO_MILLIS, Math.max(MIN_RTO_MILLIS, rto));
+    }
+
+    /**
+     * Numbers a payload and prepends the reliable header. Called with the channel lock held.
+     */
+    private static Pending createPending(Channel channel, byte[] payload) {
+        int sequence = channel.nextSequence++;
+        ByteBuffer datagram = ByteBuffer.allocate(BinaryCodec.RELIABLE_HEADER_SIZE + payload.length);
+        BinaryCodec.writeReliableHeader(datagram, channel.id, sequence);
+        datagram.put(payload);
+        Pending pending = new Pending(sequence, datagram.array());
+        channel.inFlight.put(sequence, pending);
+        return pending;
+    }
+
+    /**
+     * Sends a payload and schedules its retransmission, backing the timeout off exponentially.
+     * Called with the channel lock held.
+     */
+    private void transmit(Channel channel, Pending pending) {
+        pending.sentAt = System.currentTimeMillis();
+        long timeout = Math.min(MAX_RTO_MILLIS, channel.rto << pending.transmissions);
+        pending.transmissions++;
+        delegate.send(ByteBuffer.wrap(pending.datagram), channel.target);
+        pending.timeout = timer.schedule(() -> retransmit(channel, pending), timeout);
+    }
+
+    /**
+     * Sends a payload again if it is still unacknowledged, or gives it up after too many sends.
+     * Runs on the timer thread.
+     */
+    private void retransmit(Channel channel, Pending pending) {
+        synchronized (channel) {
+            if (channel.inFlight.get(pending.sequence) != pending) return;  // Acknowledged meanwhile
+            if (pending.transmissions < MAX_TRANSMISSIONS) {
+                transmit(channel, pending);
+                return;
+            }
+            channel.inFlight.remove(pending.sequence);  // The client skips it once later payloads leave the window
+            logger.log(Level.WARNING, "Message {0} to {1} not acknowledged, given up", new Object[]{pending.sequence, channel.target});
+            fillWindow(channel);
+        }
+    }
+
+    /**
+     * Drops the channels with nothing pending that have been idle for a while, and schedules the next check.
+     * Runs on the timer thread.
+     */
+    private void dropIdleChannels() {
+        long idleSince = System.currentTimeMillis() - IDLE_MILLIS;
+        for (Channel channel : channels.values()) {
+            synchronized (channel) {
+                if (channel.inFlight.isEmpty() && channel.queued.isEmpty() && channel.lastActivity < idleSince) {
+                    channel.closed = true;
+                    channels.remove(channel.target, channel);
+                }
+            }
+        }
+        timer.schedule(this::dropIdleChannels, IDLE_MILLIS);
+    }
+}
@@ -1,77 +1,260 @@
 package server;
 
-import common.util.MessageUtil;
-import common.UDPSocket;
+import common.FragmentReassembler;
+import common.FragmentingOperation;
+import common.PacketHandler;
+import common.Transport;
+import common.UDPOperation;
+import common.codec.ClientMessageView;
+import common.codec.Trace;
+import common.util.CachedClock;
+import common.util.SimpleLogger;
+import server.history.HistoryStore;
+import server.metrics.MeteredOperation;
+import server.metrics.ServerMetrics;
 import server.model.ChatRoom;
+import server.model.RoomRegistry;
 import server.model.User;
 import server.model.message.ChatMessage;
+import server.model.message.ServerMessage;
+import server.session.Session;
+import server.session.SessionTable;
 import client.model.message.ClientMessage;
 import server.commands.CommandHandler;
+import server.dispatch.DispatchMode;
+import server.dispatch.OrderedExecutor;
 
+import java.io.IOException;
 import java.net.DatagramPacket;
-import java.net.SocketException;
-import java.net.UnknownHostException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
- * The Server class extends UDPSocket and acts as the central server for handling client messages
- * in a chat room. It processes different types of client messages, handles user connections and disconnections,
- * and manages communication within the chat room.
- * It is responsible for receiving and processing client messages, sending pings to inactive users,
- * and broadcasting messages to all active users in the chat room.
+ * The Server class receives packets through a UDPOperation transport and acts as the central server for handling
+ * client messages in the chat rooms of a {@link RoomRegistry}. It processes different types of client messages, handles user
+ * connections and disconnections, and manages communication within every chat room.
+ * It is responsible for receiving and processing client messages and broadcasting messages to the active users
+ * of the sender's room, while an {@link InactivityMonitor} pings and evicts the users that stop sending packets.
+ * <p>
+ * The server can run several receiver shards: N sockets bound to the same port with SO_REUSEPORT, each one
+ * drained by its own thread. The kernel picks the socket by hashing the source address, so every packet from
+ * a given client lands on the same shard and its messages keep their order, while the shared state
+ * ({@link RoomRegistry}, sessions, inactivity monitor) is safe for concurrent use.
+ * <p>
+ * Outside the INLINE {@link DispatchMode}, the receiving thread only decodes the packet and the handling
+ * (commands, broadcasts) runs on an executor, keyed by user so each user's packets are still handled in order.
+ * <p>
+ * Messages larger than the 1024-byte receive buffer of the clients are sent in fragments by a
+ * {@link FragmentingOperation}, and fragmented client messages are put back together by a {@link FragmentReassembler}
+ * before they are handled.
+ * <p>
+ * Every packet first goes through an {@link AdmissionFilter}, which drops the packets of the sources that go over
+ * their rate limit before anything else is done with them.
+ * <p>
+ * With {@code chat.pace.rate} set, the datagrams (fragments included) are paced per client and against a global
+ * egress budget by a {@link PacingOperation}, so bursts of broadcasts wait in short queues instead of being dropped.
+ * <p>
+ * The packets and bytes in and out, parse failures, commands, broadcasts, pings and evictions are counted in the
+ * {@link ServerMetrics} of the server, which administrators read with the {@code stats} command or through JMX.
+ * Chat messages that carry a {@link Trace} are broadcast with it, stamped with the times the server received and
+ * dispatched them, and their time in every stage of the server is recorded in the metrics too.
  */
-public class Server extends UDPSocket {
+public class Server implements PacketHandler {
     private static final int DEFAULT_BUFFER_SIZE = 1024;  // Default buffer size for UDP packets
-    private static final int MAX_PING_COUNT = 3;  // Maximum number of pings before considering a user inactive
-    private final ChatRoom chatRoom = new ChatRoom();  // The chat room where all users and messages are stored
+    private static final String SHARDS_PROPERTY = "chat.shards";  // System property with the number of receiver shards
+    private static final String COALESCE_PROPERTY = "chat.coalesce.tick";  // System property with the coalescing tick in ms
+    private static final String RELIABLE_PROPERTY = "chat.reliable";  // System property enabling the reliable delivery
+    private static final String INBOUND_RATE_PROPERTY = "chat.inbound.rate";  // System property with the packets per second of every source
+    private static final String INBOUND_BURST_PROPERTY = "chat.inbound.burst";  // System property with the burst in packets of every source
+    private static final String INBOUND_HOST_RATE_PROPERTY = "chat.inbound.host.rate";  // System property with the packets per second of every host
+    private static final String INBOUND_HOST_BURST_PROPERTY = "chat.inbound.host.burst";  // System property with the burst in packets of every host
+    private static final String PACE_RATE_PROPERTY = "chat.pace.rate";  // System property with the bytes per second of every client
+    private static final String PACE_BURST_PROPERTY = "chat.pace.burst";  // System property with the burst in bytes of every client
+    private static final String PACE_GLOBAL_RATE_PROPERTY = "chat.pace.global.rate";  // System property with the total bytes per second
+    private static final String PACE_GLOBAL_BURST_PROPERTY = "chat.pace.global.burst";  // System property with the total burst in bytes
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(Server.class);  // Logger for the class
+    private final UDPOperation[] receivers;  // One transport per receiver shard, all bound to the same port
+    private final UDPOperation socket;  // Transport used to send packets (the first shard), fragmenting large ones
+    private final RoomRegistry roomRegistry = new RoomRegistry(HistoryStore.fromSystemProperties());  // The chat rooms where all users and messages are stored
     private final CommandHandler commandHandler;  // Command handler for processing client commands
     private final MessageSender messageSender;  // Message sender for sending messages to clients
-    private final Map<String, Integer> pingCounters = new HashMap<>();  // Map to track ping counts for users
+    private final ServerMetrics metrics = new ServerMetrics();  // Counters and histograms of the server
+    private final SessionTable sessions = new SessionTable();  // Sessions by remote address, found again for every packet
+    private final InactivityMonitor inactivityMonitor;  // Pings and evicts the users that stop sending packets
+    private final OrderedExecutor dispatcher;  // Runs the packet handlers in per-user order, null when handling inline
+    private final ThreadLocal<ClientMessageView> views = ThreadLocal.withInitial(ClientMessageView::new);  // One reusable view per receiving thread
 
     /**
-     * Constructor to initialize the server with a specific port.
+     * Constructor to initialize the server with a specific port, using the transport configured
+     * through the system properties.
+     *
+     * @param port The port on which the server will listen for incoming packets.
+     * @throws IOException If there is an error with the UDP socket.
+     */
+    public Server(int port) throws IOException {
+        this(port, Transport.fromSystemProperty(), Integer.getInteger(SHARDS_PROPERTY, 1), DispatchMode.fromSystemProperty());
+    }
+
+    /**
+     * Constructor to initialize the server with a specific port and transport.
      * Initializes the message sender and command handler.
      *
      * @param port The port on which the server will listen for incoming packets.
-     * @throws SocketException If there is an error with the UDP socket.
+     * @param transport The transport used to receive and send packets.
+     * @throws IOException If there is an error with the UDP socket.
+     */
+    public Server(int port, Transport transport) throws IOException {
+        this(port, transport, 1);
+    }
+
+    /**
+     * Constructor to initialize the server with a specific port, transport and number of receiver shards.
+     * When more than one shard is requested, every shard socket is bound with SO_REUSEPORT; if the platform
+     * does not support it, the server falls back to a single shard.
+     *
+     * @param port The port on which the server will listen for incoming packets.
+     * @param transport The transport used to receive and send packets.
+     * @param shards The number of receiver shards, each with its own socket and thread.
+     * @throws IOException If there is an error with the UDP socket.
+     */
+    public Server(int port, Transport transport, int shards) throws IOException {
+        this(port, transport, shards, DispatchMode.INLINE);
+    }
+
+    /**
+     * Constructor to initialize the server with a specific port, transport, number of receiver shards
+     * and dispatch mode for the packet handlers.
+     *
+     * @param port The port on which the server will listen for incoming packets.
+     * @param transport The transport used to receive and send packets.
+     * @param shards The number of receiver shards, each with its own socket and thread.
+     * @param dispatchMode Where the decoded packets are handled.
+     * @throws IOException If there is an error with the UDP socket.
+     */
+    public Server(int port, Transport transport, int shards, DispatchMode dispatchMode) throws IOException {
+        if (shards > 1 && !Transport.isReusePortSupported()) {
+            log(Level.WARNING, "SO_REUSEPORT is not supported, using a single receiver instead of %d", shards);
+            shards = 1;
+        }
+        shards = Math.max(1, shards);
+
+        this.receivers = new UDPOperation[shards];
+        PacketHandler admitted = wrapForAdmission(new FragmentReassembler(this));  // Limits and puts back together the client messages, for every shard
+        PacketHandler inbound = packet -> {
+            metrics.recordPacketIn(packet.getLength());  // Counted before the limit, so floods show up
+            admitted.processPacket(packet);
+        };
+        for (int i = 0; i < shards; i++) {
+            receivers[i] = transport.open(port, DEFAULT_BUFFER_SIZE, shards > 1, inbound);
+        }
+        UDPOperation metered = new MeteredOperation(receivers[0], metrics);  // Counts every datagram that goes out
+        this.socket = new FragmentingOperation(wrapForPacing(metered), DEFAULT_BUFFER_SIZE);  // Large messages go out in fragments
+        this.messageSender = new MessageSender(socket, Long.getLong(COALESCE_PROPERTY, 0), Boolean.getBoolean(RELIABLE_PROPERTY), metrics);  // Create a new message sender
+        this.commandHandler = new CommandHandler(roomRegistry, messageSender, metrics);  // Create a new command handler
+        this.inactivityMonitor = new InactivityMonitor(roomRegistry, sessions, messageSender, this::handleInactiveUser);
+        this.dispatcher = dispatchMode == DispatchMode.INLINE ? null : new OrderedExecutor(dispatchMode.createExecutor());
+        metrics.register(String.valueOf(port));
+        log(Level.INFO, "Server created on port %d using the %s transport, %d receiver shard(s) and %s dispatch",
+                port, transport, shards, dispatchMode);
+    }
+
+    /**
+     * Puts an AdmissionFilter in front of the inbound handler unless the inbound limit is disabled with a rate of 0.
+     * By default every source address and port may send 500 packets per second, in bursts of 200, and every
+     * host 10000 packets per second from all its ports together, in bursts of 4000.
+     */
+    private static PacketHandler wrapForAdmission(PacketHandler handler) {
+        long rate = Long.getLong(INBOUND_RATE_PROPERTY, 500);
+        if (rate <= 0) return handler;
+        return new AdmissionFilter(handler, rate, Long.getLong(INBOUND_BURST_PROPERTY, 200),
+                Long.getLong(INBOUND_HOST_RATE_PROPERTY, 10_000), Long.getLong(INBOUND_HOST_BURST_PROPERTY, 4_000));
+    }
+
+    /**
+     * Wraps the transport in a PacingOperation when pacing is enabled. The global budget defaults to 64 MiB/s with
+     * a burst of 1 MiB, and the burst of every client to 16 KiB.
      */
-    public Server(int port) throws SocketException, UnknownHostException {
-        super(port, DEFAULT_BUFFER_SIZE);
-        this.messageSender = new MessageSender(this);  // Create a new message sender
-        this.commandHandler = new CommandHandler(chatRoom, messageSender);  // Create a new command handler
+    private static UDPOperation wrapForPacing(UDPOperation udpOperation) {
+        long rate = Long.getLong(PACE_RATE_PROPERTY, 0);
+        if (rate <= 0) return udpOperation;
+        return new PacingOperation(udpOperation, rate, Long.getLong(PACE_BURST_PROPERTY, 16 * 1024),
+                Long.getLong(PACE_GLOBAL_RATE_PROPERTY, 64L * 1024 * 1024),
+                Long.getLong(PACE_GLOBAL_BURST_PROPERTY, 1024 * 1024));
     }
 
     /**
      * Processes an incoming UDP packet from a client.
-     * Depending on the type of message, it will either handle a PONG, command, or regular chat message.
+     * The packet is read through the receiving thread's flyweight view, which only locates the message fields;
+     * strings are created when a handler needs them. The sender's session is found by its address and reused
+     * while it keeps sending with the same nick, so a known client costs no User or key allocation.
+     * Handling runs inline over the receive buffer, or through the dispatcher over a copy of the message bytes.
      *
      * @param packet The UDP packet received from a client.
      */
     @Override
     public void processPacket(DatagramPacket packet) {
-        ClientMessage clientMessage = MessageUtil.parseClientMessage(packet.getData(), packet.getLength());
+        if (messageSender.processAck(packet)) return;  // ACKs of the reliable messages are not client messages
 
-        if (clientMessage == null) {
+        ClientMessageView message = views.get();
+
+        if (!message.wrap(packet.getData(), packet.getOffset(), packet.getLength())) {
+            metrics.recordParseFailure();
             log(Level.SEVERE, "Error, a null or wrong packet arrived");
             return;
         }
 
-        User user = new User(clientMessage.getNick(), packet.getAddress(), packet.getPort());
-        chatRoom.updateActivity(user);  // Update the last activity timestamp for the user
-        String userKey = user.getKey();
+        long receiveMicros = message.getTrace() == null ? 0 : Trace.nowMicros();
+        long now = CachedClock.currentTimeMillis();
+        Session session = sessions.get(packet.getAddress(), packet.getPort());
+        if (session == null
+                || !session.hasNick(message.getData(), message.getNickOffset(), message.getNickLength())
+                || !session.touch(now)) {  // Any packet counts as activity and answers the pings
+            session = openSession(message, packet, now);
+        }
+        User user = session.getUser();
+        String userKey = session.getKey();
+
+        if (dispatcher == null) {
+            handlePacket(message, user, userKey, receiveMicros);
+        } else {
+            ClientMessageView detached = message.copy();  // The receive buffer is reused as soon as we return
+            dispatcher.execute(session, () -> handlePacket(detached, user, userKey, receiveMicros));
+        }
+    }
+
+    /**
+     * Opens a session for the first packet from an address, or for an address that now sends with another nick,
+     * and starts watching its activity.
+     *
+     * @param message The view over the packet.
+     * @param packet The packet received from the client.
+     * @param now The time of the packet.
+     * @return The new session.
+     */
+    private Session openSession(ClientMessageView message, DatagramPacket packet, long now) {
+        User user = new User(message.getNick(), packet.getAddress(), packet.getPort());
+        Session session = sessions.open(user, now);
+        inactivityMonitor.watch(session);
+        return session;
+    }
 
+    /**
+     * Handles a decoded client message.
+     * Depending on the type of message, it will either handle a PONG, command, or regular chat message.
+     *
+     * @param clientMessage The view over the message.
+     * @param user The user who sent the message.
+     * @param userKey The key of the user who sent the message.
+     * @param receiveMicros The time the packet was received, if the message is traced.
+     */
+    private void handlePacket(ClientMessageView clientMessage, User user, String userKey, long receiveMicros) {
         switch (clientMessage.getType()) {
             case ClientMessage.PONG -> handlePong(userKey);  // Handle pong responses
-            case ClientMessage.COMMAND -> handleCommand(clientMessage, user);  // Handle client commands
-            case ClientMessage.MSG -> handleMessage(clientMessage, user);  // Handle regular chat messages
+            case ClientMessage.COMMAND -> handleCommand(clientMessage, user, userKey);  // Handle client commands
+            case ClientMessage.MSG -> handleMessage(clientMessage, user, userKey, receiveMicros);  // Handle regular chat messages
             default -> log(Level.WARNING, "Unknown message type '%d' from user %s", clientMessage.getType(), userKey);
         }
-
-        pingCounters.put(userKey, 0);  // Reset ping counter on message receipt
     }
 
     /**
@@ -87,79 +270,104 @@ public class Server extends UDPSocket {
      * Handles a command request from a client.
      * It delegates command handling to the CommandHandler.
      *
-     * @param clientMessage The client message containing the command.
+     * @param clientMessage The view over the client message containing the command.
      * @param user The user who sent the command.
+     * @param userKey The key of the user who sent the command.
      */
-    private void handleCommand(ClientMessage clientMessage, User user) {
-        log(Level.INFO, "Command request from user %s: %s", user.getKey(), clientMessage.getContent());
-        commandHandler.handleCommand(clientMessage, user);  // Delegate to command handler
+    private void handleCommand(ClientMessageView clientMessage, User user, String userKey) {
+        log(Level.INFO, "Command request from user %s: %s", userKey, clientMessage.getContent());
+        commandHandler.handleCommand(clientMessage.toClientMessage(), user);  // Delegate to command handler
     }
 
     /**
      * Handles a regular chat message from a client.
-     * It saves the message in the chat room and broadcasts it to all users.
+     * It saves the message in the sender's chat room and broadcasts it to the users of that room.
+     * A traced message is broadcast with its trace stamped by the server, and its stages are recorded.
      *
-     * @param clientMessage The chat message received from the client.
+     * @param clientMessage The view over the chat message received from the client.
      * @param user The user who sent the message.
+     * @param userKey The key of the user who sent the message.
+     * @param receiveMicros The time the packet was received, if the message is traced.
      */
-    private void handleMessage(ClientMessage clientMessage, User user) {
-        if (!chatRoom.hasUser(user)) {
-            log(Level.WARNING, "Received message from unregistered user %s", user.getKey());
+    private void handleMessage(ClientMessageView clientMessage, User user, String userKey, long receiveMicros) {
+        Trace trace = clientMessage.getTrace();
+        long handleMicros = trace == null ? 0 : Trace.nowMicros();
+        ChatRoom chatRoom = roomRegistry.isLoggedIn(user) ? roomRegistry.getRoomOf(user) : null;
+        if (chatRoom == null) {
+            log(Level.WARNING, "Received message from unregistered user %s", userKey);
             return;
         }
         ChatMessage msg = new ChatMessage(clientMessage.getContent(), user);  // Create a new chat message
         chatRoom.saveMessage(msg);  // Save the message to the chat room
-        log(Level.INFO, "Broadcasting message from %s: %s", user.getKey(), msg.getFormattedContent());
-        messageSender.sendBroadcast(msg.getFormattedContent(), chatRoom, user);  // Broadcast the message to all users
+        log(Level.INFO, "Broadcasting message from %s to room %s: %s", userKey, chatRoom.getName(), msg.getFormattedContent());
+        if (trace == null) {
+            messageSender.sendBroadcast(msg.getFormattedContent(), chatRoom, user);  // Broadcast the message to the users of the room
+            return;
+        }
+        Trace stamped = trace.dispatched(receiveMicros, Trace.nowMicros());
+        messageSender.sendBroadcast(new ServerMessage(msg.getFormattedContent(), ServerMessage.ServerStatus.INFO.getValue(), stamped), chatRoom, user);
+        metrics.recordTrace(stamped, handleMicros, Trace.nowMicros());
+    }
+
+    /**
+     * Retrieves the metrics of the server.
+     *
+     * @return The metrics of the server.
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
     }
 
     /**
      * Starts the server and continuously listens for incoming packets from clients.
-     * It checks for inactive users and sends pings to detect unresponsive users.
+     * The extra receiver shards get their own thread, the first one runs on the calling thread.
      */
     public void run() {
         log(Level.INFO, "Server is running and ready to receive packets.");
-        while (true) {
-            receive();  // Wait to receive a packet
-
-            // If there are inactive users, send pings and check for timeouts
-            if(chatRoom.hasInactiveUsers()) {
-                sendPingsAndCheckTimeouts();
-            }
+        for (int i = 1; i < receivers.length; i++) {
+            UDPOperation receiver = receivers[i];
+            Thread thread = new Thread(() -> receiveLoop(receiver), "receiver-" + i);
+            thread.start();
         }
+        receiveLoop(receivers[0]);
     }
 
     /**
-     * Sends pings to inactive users and handles timeouts for users who do not respond to pings.
-     * If a user does not respond to the maximum allowed pings, they are removed from the chat room.
+     * Receives packets from one shard forever.
+     *
+     * @param receiver The shard transport to receive from.
      */
-    private void sendPingsAndCheckTimeouts() {
-        Set<User> inactiveUsers = chatRoom.getInactiveUsers();  // Get the list of inactive users
-        log(Level.INFO, "Sending pings to inactive users...");
-        for (User user : inactiveUsers) {
-            String userKey = user.getKey();
-            pingCounters.put(userKey, pingCounters.getOrDefault(userKey, 0) + 1);  // Increment ping counter
-
-            // If a user did not respond to the maximum allowed pings, remove them
-            if (pingCounters.get(userKey) >= MAX_PING_COUNT) {
-                handleInactiveUser(user);
-            } else {
-                messageSender.sendPing(user);  // Send a ping to the inactive user
-            }
+    private void receiveLoop(UDPOperation receiver) {
+        while (true) {
+            receiver.receive();  // Wait to receive a packet
         }
-        log(Level.INFO, "Ping sending completed!");
     }
 
     /**
      * Handles the removal of a user who has not responded to the maximum number of pings.
-     * The user is removed from the chat room, and a broadcast message is sent to other users.
+     * The user is logged out, and a broadcast message is sent to the other users of their room.
+     * Called by the inactivity monitor on its timer thread.
      *
      * @param user The inactive user to be removed.
      */
     private void handleInactiveUser(User user) {
         log(Level.WARNING, "User %s did not respond to pings and will be removed.", user.getKey());
-        chatRoom.removeUser(user);  // Remove the user from the chat room
-        pingCounters.remove(user.getKey());  // Remove the user's ping count
-        messageSender.sendBroadcast(String.format("User %s has been disconnected due to inactivity.", user.getNick()), chatRoom, null);  // Broadcast disconnection message
+        metrics.recordEviction();
+        ChatRoom chatRoom = roomRegistry.logout(user);  // Log the user out and remove them from their room
+        if (chatRoom != null) {
+            messageSender.sendBroadcast(String.format("User %s has been disconnected due to inactivity.", user.getNick()), chatRoom, null);  // Broadcast disconnection message
+        }
+    }
+
+    /**
+     * Logs messages at the specified level with the provided message format and arguments.
+     * The message is only formatted if the level is enabled, and then by the log writer thread.
+     *
+     * @param level The logging level (e.g., INFO, SEVERE).
+     * @param msg The format string for the log message.
+     * @param args The arguments to format the message string.
+     */
+    private void log(Level level, String msg, Object... args) {
+        SimpleLogger.log(logger, level, msg, args);
     }
 }
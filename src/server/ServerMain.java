@@ -1,10 +1,8 @@
 package server;
 
+import java.io.IOException;
 import java.net.SocketException;
 
-import java.net.SocketException;
-import java.net.UnknownHostException;
-
 /**
  * The main class for the server application. It validates and processes the port argument
  * from the command line and starts the server with the provided port.
@@ -101,10 +99,8 @@ public class ServerMain {
     private static void startServer(int port) throws SocketException {
         try {
             new Server(port).run();
-        } catch (SocketException e) {
+        } catch (IOException e) {
             throw new SocketException("Failed to bind the server to port " + port + ": " + e.getMessage());
-        } catch (UnknownHostException e) {
-            throw new RuntimeException("Failed to get host ip");
         }
     }
 }
\ No newline at end of file
@@ -9,11 +9,12 @@ import client.model.message.ClientMessage;
  */
 public interface Command {
     /**
-     * Executes the command with the provided elements (arguments), client message, and user.
+     * Executes the command with the provided arguments, client message, and user.
      *
-     * @param elements The arguments split from the command string.
+     * @param arguments The words of the command string, word 0 being the name of the command. Only valid
+     *                  during the call.
      * @param message The message that initiated the command.
      * @param owner The user who executed the command.
      */
-    void execute(String[] elements, ClientMessage message, User owner);
+    void execute(CommandArguments arguments, ClientMessage message, User owner);
 }
@@ -0,0 +1,154 @@
+package server.commands;
+
+import java.util.Arrays;
+
+/**
+ * The CommandArguments class is a view of the words of a command: the content is tokenized in a single pass on
+ * whitespace, and every word is kept as its start and end offsets in the content rather than as a string.
+ * Word 0 is the name of the command. Commands read the words they need as strings or numbers, or take the rest
+ * of the content from a word on as a single slice, keeping its original spacing.
+ * <p>
+ * An instance is reused for the commands handled by one thread, so tokenizing allocates nothing once its
+ * offset array is large enough. It is only valid during the execution of the command.
+ */
+public final class CommandArguments {
+    private static final int INITIAL_WORDS = 8;  // Words the offset array holds before growing
+
+    private String content = "";  // Content of the command
+    private int[] offsets = new int[2 * INITIAL_WORDS];  // Start and end of every word
+    private int count = 0;  // Number of words
+
+    /**
+     * Tokenizes the content of a command, replacing the previous one.
+     *
+     * @param content The content of the command.
+     * @return This view.
+     */
+    public CommandArguments tokenize(String content) {
+        this.content = content;
+        this.count = 0;
+        int length = content.length();
+        int i = 0;
+        while (true) {
+            while (i < length && isWhitespace(content.charAt(i))) i++;
+            if (i == length) return this;
+            int start = i;
+            while (i < length && !isWhitespace(content.charAt(i))) i++;
+            if (2 * count == offsets.length) offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            offsets[2 * count] = start;
+            offsets[2 * count + 1] = i;
+            count++;
+        }
+    }
+
+    /**
+     * Checks whether a character separates words, with the same characters as the {@code \s} regex class.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Retrieves the number of words, including the name of the command.
+     *
+     * @return The number of words.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Retrieves a word as a string.
+     *
+     * @param index The index of the word, 0 for the name of the command.
+     * @return The word.
+     */
+    public String get(int index) {
+        return content.substring(start(index), end(index));
+    }
+
+    /**
+     * Retrieves the rest of the content from a word on, as it was written.
+     *
+     * @param index The index of the first word of the slice.
+     * @return The content from the start of the word to the end of the last word.
+     */
+    public String rest(int index) {
+        return content.substring(start(index), end(count - 1));
+    }
+
+    /**
+     * Parses a word as a decimal long, without creating a string for it.
+     *
+     * @param index The index of the word.
+     * @return The parsed value.
+     * @throws NumberFormatException If the word is not a valid long.
+     */
+    public long parseLong(int index) {
+        return Long.parseLong(content, start(index), end(index), 10);
+    }
+
+    /**
+     * Parses a word as a decimal int, without creating a string for it.
+     *
+     * @param index The index of the word.
+     * @return The parsed value.
+     * @throws NumberFormatException If the word is not a valid int.
+     */
+    public int parseInt(int index) {
+        return Integer.parseInt(content, start(index), end(index), 10);
+    }
+
+    /**
+     * Checks whether a word is equal to a string, ignoring case, without creating a string for it.
+     *
+     * @param index The index of the word.
+     * @param word The string to compare with.
+     * @return true if the word and the string are equal ignoring case.
+     */
+    public boolean equalsIgnoreCase(int index, String word) {
+        int start = start(index);
+        return end(index) - start == word.length() && content.regionMatches(true, start, word, 0, word.length());
+    }
+
+    /**
+     * Retrieves the first character of a word.
+     *
+     * @param index The index of the word.
+     * @return The first character.
+     */
+    public char firstChar(int index) {
+        return content.charAt(start(index));
+    }
+
+    /**
+     * Retrieves the offset in the content where a word starts.
+     *
+     * @param index The index of the word.
+     * @return The offset of the first character of the word.
+     */
+    public int start(int index) {
+        checkIndex(index);
+        return offsets[2 * index];
+    }
+
+    /**
+     * Retrieves the offset in the content where a word ends.
+     *
+     * @param index The index of the word.
+     * @return The offset after the last character of the word.
+     */
+    public int end(int index) {
+        checkIndex(index);
+        return offsets[2 * index + 1];
+    }
+
+    /**
+     * Throws if there is no word with the given index.
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Word " + index + " of " + count);
+        }
+    }
+}
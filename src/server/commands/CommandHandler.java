@@ -1,47 +1,107 @@
 package server.commands;
 
 import common.util.SimpleLogger;
-import server.model.ChatRoom;
+import server.model.RoomRegistry;
 import server.model.User;
 import client.model.message.ClientMessage;
 import server.MessageSender;
 import server.commands.commands.*;
+import server.metrics.ServerMetrics;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The CommandHandler class is responsible for managing and executing commands issued by users in a chat room.
  * It handles the parsing of the command, selects the appropriate Command implementation, and executes it.
+ * <p>
+ * The content is tokenized in a single pass into a reusable {@link CommandArguments} view, and the command is
+ * found in a table of names bucketed by their first letter and compared ignoring case, so neither regular
+ * expressions nor lower-cased copies are needed to dispatch a command.
+ * <p>
+ * Every command is counted in the {@link ServerMetrics} of the server, with a counter the entry keeps from its
+ * registration on.
  */
 public class CommandHandler {
     private final MessageSender messageSender;  // The MessageSender used to send messages to users.
     private static final Logger log = SimpleLogger.getInstance().getLogger(CommandHandler.class);  // Logger for logging events.
 
-    private final Map<String, Command> commandMap;  // Map to store available commands and their implementations.
+    private static final int BUCKETS = 32;  // Buckets of the command table, indexed by the low bits of the first letter
+    private final CommandEntry[][] commandTable = new CommandEntry[BUCKETS][0];  // Available commands by first letter
+    private final LongAdder unknownCommands;  // Counter of the commands that do not exist
+    private final ThreadLocal<CommandArguments> arguments = ThreadLocal.withInitial(CommandArguments::new);  // One reusable view per handling thread
+
+    /**
+     * A command, the name it is invoked with and the counter of its executions.
+     */
+    private record CommandEntry(String name, Command command, LongAdder counter) {
+    }
 
     /**
      * Constructs a CommandHandler that initializes the available commands and their associated actions.
      *
-     * @param chatRoom The chat room where the commands are executed.
+     * @param roomRegistry The rooms and users of the server, where the commands are executed.
      * @param messageSender The MessageSender used to send messages to users.
      */
-    public CommandHandler(ChatRoom chatRoom, MessageSender messageSender) {
+    public CommandHandler(RoomRegistry roomRegistry, MessageSender messageSender) {
+        this(roomRegistry, messageSender, new ServerMetrics());
+    }
+
+    /**
+     * Constructs a CommandHandler that initializes the available commands and counts them in the given metrics,
+     * which the stats command reports.
+     *
+     * @param roomRegistry The rooms and users of the server, where the commands are executed.
+     * @param messageSender The MessageSender used to send messages to users.
+     * @param metrics The metrics of the server.
+     */
+    public CommandHandler(RoomRegistry roomRegistry, MessageSender messageSender, ServerMetrics metrics) {
         this.messageSender = messageSender;
-        this.commandMap = new HashMap<>();
+        this.unknownCommands = metrics.commandCounter("unknown");
 
         // Initialize the commands with their corresponding implementations
-        commandMap.put("login", new LoginCommand(chatRoom, messageSender));
-        commandMap.put("list", new ListCommand(chatRoom, messageSender));
-        commandMap.put("private", new PrivateCommand(chatRoom, messageSender));
-        commandMap.put("exit", new ExitCommand(chatRoom, messageSender));
-        commandMap.put("help", new HelpCommand(messageSender));
+        register("login", new LoginCommand(roomRegistry, messageSender), metrics);
+        register("list", new ListCommand(roomRegistry, messageSender), metrics);
+        register("private", new PrivateCommand(roomRegistry, messageSender), metrics);
+        register("join", new JoinCommand(roomRegistry, messageSender), metrics);
+        register("leave", new LeaveCommand(roomRegistry, messageSender), metrics);
+        register("rooms", new RoomsCommand(roomRegistry, messageSender), metrics);
+        register("history", new HistoryCommand(roomRegistry, messageSender), metrics);
+        register("exit", new ExitCommand(roomRegistry, messageSender), metrics);
+        register("help", new HelpCommand(messageSender), metrics);
+        register("stats", new StatsCommand(roomRegistry, metrics, messageSender), metrics);
 
         log.log(Level.INFO, "CommandHandler initialized.");
     }
 
+    /**
+     * Adds a command to the table. Names are lower case ASCII.
+     *
+     * @param name The name the command is invoked with.
+     * @param command The implementation of the command.
+     * @param metrics The metrics the command is counted in.
+     */
+    private void register(String name, Command command, ServerMetrics metrics) {
+        int bucket = name.charAt(0) & (BUCKETS - 1);
+        CommandEntry[] entries = Arrays.copyOf(commandTable[bucket], commandTable[bucket].length + 1);
+        entries[entries.length - 1] = new CommandEntry(name, command, metrics.commandCounter(name));
+        commandTable[bucket] = entries;
+    }
+
+    /**
+     * Finds the command named by the first word of the arguments, ignoring case.
+     *
+     * @return The entry of the command, or null if there is no command with that name.
+     */
+    private CommandEntry lookup(CommandArguments arguments) {
+        for (CommandEntry entry : commandTable[arguments.firstChar(0) & (BUCKETS - 1)]) {  // Upper and lower case letters share their low bits
+            if (arguments.equalsIgnoreCase(0, entry.name())) return entry;
+        }
+        return null;
+    }
+
     /**
      * Handles a command received from a user.
      * It parses the message, determines the command type, and executes the corresponding command.
@@ -50,21 +110,22 @@ public class CommandHandler {
      * @param owner The user who issued the command.
      */
     public void handleCommand(ClientMessage message, User owner) {
-        String[] elements = message.getContent().split("\\s+");
+        CommandArguments words = arguments.get().tokenize(message.getContent());
         log.log(Level.INFO, "Handling command from user {0}: {1}", new Object[]{owner.getNick(), message.getContent()});
 
-        if (elements.length == 0) {
+        if (words.size() == 0) {
             messageSender.sendErrorToUser("Command cannot be empty", owner);
             return;
         }
 
-        String command = elements[0].toLowerCase();  // Extract the command (first element)
-        Command cmd = commandMap.get(command);  // Retrieve the corresponding Command implementation
+        CommandEntry entry = lookup(words);  // Retrieve the corresponding Command implementation
 
-        if (cmd != null) {
-            cmd.execute(elements, message, owner);  // Execute the command if found
+        if (entry != null) {
+            entry.counter().increment();
+            entry.command().execute(words, message, owner);  // Execute the command if found
         } else {
-            handleUnknownCommand(command, owner);  // Handle unknown command
+            unknownCommands.increment();
+            handleUnknownCommand(words.get(0).toLowerCase(), owner);  // Handle unknown command
         }
     }
 
@@ -4,6 +4,7 @@ import server.model.User;
 import client.model.message.ClientMessage;
 import server.MessageSender;
 import server.commands.Command;
+import server.commands.CommandArguments;
 
 /**
  * The HelpCommand class handles the command to display the list of available commands
@@ -26,12 +27,12 @@ public class HelpCommand implements Command {
      * Executes the help command. This method sends a list of available commands to the user
      * who issued the command.
      *
-     * @param elements The arguments of the command (not used in this case).
+     * @param arguments The arguments of the command (not used in this case).
      * @param message The message that initiated the command (not used in this case).
      * @param owner The user who issued the command.
      */
     @Override
-    public void execute(String[] elements, ClientMessage message, User owner) {
+    public void execute(CommandArguments arguments, ClientMessage message, User owner) {
         messageSender.sendInfoToUser(getCommandList(), owner);  // Send the list of available commands to the requesting user
     }
 
@@ -45,6 +46,11 @@ public class HelpCommand implements Command {
                 Available commands:
                 - list: shows all players in the chat room
                 - private (username) (message): send a private message to another user
+                - rooms: shows all rooms and how many users are in each one
+                - join (room): move to a room, it is created if it does not exist
+                - leave: go back to the lobby
+                - history [before-id] [count]: shows the messages of the room before the given id, a page at a time
+                - stats: shows the metrics of the server (administrators only)
                 - exit: exit the chat room
                 """;
     }
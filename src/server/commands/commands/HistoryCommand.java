@@ -0,0 +1,62 @@
+package server.commands.commands;
+
+import server.model.ChatRoom;
+import server.model.RoomRegistry;
+import server.model.User;
+import client.model.message.ClientMessage;
+import server.MessageSender;
+import server.commands.Command;
+import server.commands.CommandArguments;
+
+/**
+ * The HistoryCommand class handles the command for reading the message history of the current room page by page.
+ * It implements the {@link Command} interface; every page fits in one datagram and names the id to ask for the
+ * page before it, so a long history is pulled on demand instead of being sent at once.
+ */
+public class HistoryCommand implements Command {
+    private final RoomRegistry roomRegistry;  // The rooms and users of the server
+    private final MessageSender messageSender;  // The MessageSender used to send messages to users
+
+    /**
+     * Constructs a HistoryCommand that reads the history of the rooms of the specified registry.
+     *
+     * @param roomRegistry The registry holding the rooms.
+     * @param messageSender The MessageSender used to send messages to users.
+     */
+    public HistoryCommand(RoomRegistry roomRegistry, MessageSender messageSender) {
+        this.roomRegistry = roomRegistry;
+        this.messageSender = messageSender;
+    }
+
+    /**
+     * Executes the history command. This method sends the user the page of history before the given message id,
+     * or the latest page if no id is given.
+     *
+     * @param arguments The arguments of the command: optionally the id before which the page ends and the number of messages.
+     * @param message The message that initiated the command.
+     * @param owner The user who issued the command.
+     */
+    @Override
+    public void execute(CommandArguments arguments, ClientMessage message, User owner) {
+        ChatRoom room = roomRegistry.isLoggedIn(owner) ? roomRegistry.getRoomOf(owner) : null;
+        if (room == null) {
+            messageSender.sendErrorToUser("You must log in first", owner);
+            return;
+        }
+
+        long beforeId;
+        int count;
+        try {
+            beforeId = arguments.size() > 1 ? arguments.parseLong(1) : Long.MAX_VALUE;
+            count = arguments.size() > 2 ? arguments.parseInt(2) : ChatRoom.DEFAULT_PAGE_SIZE;
+        } catch (NumberFormatException e) {
+            beforeId = -1;
+            count = -1;
+        }
+        if (beforeId < 0 || count <= 0) {
+            messageSender.sendErrorToUser("Invalid arguments. Use: history [before-id] [count]", owner);
+            return;
+        }
+        messageSender.sendHistoryToUser(room.getHistoryPage(beforeId, Math.min(count, ChatRoom.MAX_PAGE_SIZE)), owner);
+    }
+}
@@ -0,0 +1,72 @@
+package server.commands.commands;
+
+import server.model.ChatRoom;
+import server.model.RoomRegistry;
+import server.model.User;
+import client.model.message.ClientMessage;
+import server.MessageSender;
+import server.commands.Command;
+import server.commands.CommandArguments;
+
+/**
+ * The JoinCommand class handles the command for moving a user to another chat room.
+ * It implements the {@link Command} interface; the room is created if it does not exist, and the room the user
+ * leaves is reclaimed by the {@link RoomRegistry} if it becomes empty. The members of both rooms are notified.
+ */
+public class JoinCommand implements Command {
+    private final RoomRegistry roomRegistry;  // The rooms and users of the server
+    private final MessageSender messageSender;  // The MessageSender used to send messages to users
+
+    /**
+     * Constructs a JoinCommand that moves users between the rooms of the specified registry.
+     *
+     * @param roomRegistry The registry holding the rooms.
+     * @param messageSender The MessageSender used to send messages to users.
+     */
+    public JoinCommand(RoomRegistry roomRegistry, MessageSender messageSender) {
+        this.roomRegistry = roomRegistry;
+        this.messageSender = messageSender;
+    }
+
+    /**
+     * Executes the join command. This method checks the room name and moves the user to the room.
+     *
+     * @param arguments The arguments of the command, containing the room name.
+     * @param message The message that initiated the command.
+     * @param owner The user who issued the command.
+     */
+    @Override
+    public void execute(CommandArguments arguments, ClientMessage message, User owner) {
+        String roomName = arguments.size() < 2 ? null : arguments.get(1);
+        if (roomName == null || !RoomRegistry.isValidRoomName(roomName)) {
+            messageSender.sendErrorToUser("Invalid room name. Use: join (room), with up to 32 letters, digits, '-' or '_'", owner);
+            return;
+        }
+        moveUser(owner, roomName);
+    }
+
+    /**
+     * Moves a logged-in user to a room, sends them the room history and notifies the members of both rooms.
+     *
+     * @param owner The user to move.
+     * @param roomName The name of the destination room.
+     */
+    void moveUser(User owner, String roomName) {
+        ChatRoom previous = roomRegistry.isLoggedIn(owner) ? roomRegistry.getRoomOf(owner) : null;
+        if (previous == null) {
+            messageSender.sendErrorToUser("You must log in first", owner);
+            return;
+        }
+        if (previous.getName().equals(RoomRegistry.normalizeRoomName(roomName))) {
+            messageSender.sendInfoToUser(String.format("You are already in room %s", previous.getName()), owner);
+            return;
+        }
+
+        ChatRoom room = roomRegistry.join(owner, roomName);
+        if (room == null) return;  // Logged out meanwhile, e.g. evicted
+        messageSender.sendBroadcast(String.format("User %s left the room", owner.getNick()), previous, owner);
+        messageSender.sendInfoToUser(String.format("You joined room %s", room.getName()), owner);
+        messageSender.sendViewToUser(room.getMessageHistoryView(), owner);
+        messageSender.sendBroadcast(String.format("User %s joined the room", owner.getNick()), room, owner);
+    }
+}
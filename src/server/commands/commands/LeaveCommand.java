@@ -0,0 +1,38 @@
+package server.commands.commands;
+
+import server.model.RoomRegistry;
+import server.model.User;
+import client.model.message.ClientMessage;
+import server.MessageSender;
+import server.commands.Command;
+import server.commands.CommandArguments;
+
+/**
+ * The LeaveCommand class handles the command for leaving the current chat room and going back to the lobby.
+ * It implements the {@link Command} interface and moves the user the same way {@link JoinCommand} does.
+ */
+public class LeaveCommand implements Command {
+    private final JoinCommand joinCommand;  // Moves the user back to the lobby
+
+    /**
+     * Constructs a LeaveCommand that moves users back to the lobby of the specified registry.
+     *
+     * @param roomRegistry The registry holding the rooms.
+     * @param messageSender The MessageSender used to send messages to users.
+     */
+    public LeaveCommand(RoomRegistry roomRegistry, MessageSender messageSender) {
+        this.joinCommand = new JoinCommand(roomRegistry, messageSender);
+    }
+
+    /**
+     * Executes the leave command. This method moves the user to the lobby.
+     *
+     * @param arguments The arguments of the command (not used in this case).
+     * @param message The message that initiated the command (not used in this case).
+     * @param owner The user who issued the command.
+     */
+    @Override
+    public void execute(CommandArguments arguments, ClientMessage message, User owner) {
+        joinCommand.moveUser(owner, RoomRegistry.LOBBY);
+    }
+}
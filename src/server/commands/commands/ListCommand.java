@@ -1,42 +1,49 @@
 package server.commands.commands;
 
 import server.model.ChatRoom;
+import server.model.RoomRegistry;
 import server.model.User;
 import client.model.message.ClientMessage;
 import server.MessageSender;
 import server.commands.Command;
+import server.commands.CommandArguments;
 
 /**
- * The ListCommand class handles the command for listing all users currently in the chat room.
+ * The ListCommand class handles the command for listing all users currently in the chat room of the requesting user.
  * It implements the {@link Command} interface and is responsible for retrieving the list of users
  * in the chat room and sending it to the requesting user.
  */
 public class ListCommand implements Command {
-    private final ChatRoom chatRoom;  // The chat room from which to list users
+    private final RoomRegistry roomRegistry;  // The rooms and users of the server
     private final MessageSender messageSender;  // The MessageSender used to send messages to users
 
     /**
-     * Constructs a ListCommand that retrieves and lists users from the specified chat room.
+     * Constructs a ListCommand that retrieves and lists users from the rooms of the specified registry.
      *
-     * @param chatRoom The chat room where the users are listed.
+     * @param roomRegistry The registry holding the rooms where the users are listed.
      * @param messageSender The MessageSender used to send messages to users.
      */
-    public ListCommand(ChatRoom chatRoom, MessageSender messageSender) {
-        this.chatRoom = chatRoom;
+    public ListCommand(RoomRegistry roomRegistry, MessageSender messageSender) {
+        this.roomRegistry = roomRegistry;
         this.messageSender = messageSender;
     }
 
     /**
-     * Executes the list command. This method retrieves the list of users in the chat room
-     * and sends the list to the user who issued the command.
+     * Executes the list command. This method retrieves the list of users in the chat room of the user
+     * who issued the command and sends the list to them.
      *
-     * @param elements The arguments of the command (not used in this case).
+     * @param arguments The arguments of the command (not used in this case).
      * @param message The message that initiated the command (not used in this case).
      * @param owner The user who issued the command.
      */
     @Override
-    public void execute(String[] elements, ClientMessage message, User owner) {
-        messageSender.sendInfoToUser(chatRoom.listUsers(), owner);  // Send the list of users to the requesting user
+    public void execute(CommandArguments arguments, ClientMessage message, User owner) {
+        ChatRoom chatRoom = roomRegistry.isLoggedIn(owner) ? roomRegistry.getRoomOf(owner) : null;
+        if (chatRoom == null) {
+            messageSender.sendErrorToUser("You must log in first", owner);
+            return;
+        }
+        messageSender.sendViewToUser(chatRoom.getUserListView(), owner);  // Send the list of users to the requesting user
     }
 }
 
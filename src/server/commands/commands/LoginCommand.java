@@ -1,45 +1,47 @@
 package server.commands.commands;
 
 import server.model.ChatRoom;
+import server.model.RoomRegistry;
 import server.model.User;
 import client.model.message.ClientMessage;
 import server.MessageSender;
 import server.commands.Command;
+import server.commands.CommandArguments;
 
 /**
  * The LoginCommand class handles the command for logging a user into the chat room.
- * It implements the {@link Command} interface and manages the process of adding a user to the chat room,
+ * It implements the {@link Command} interface and manages the process of logging the user in and adding them to the lobby,
  * sending success messages, and broadcasting the user's entry into the room.
  */
 public class LoginCommand implements Command {
-    private final ChatRoom chatRoom;  // The chat room where users are logged in
+    private final RoomRegistry roomRegistry;  // The rooms and users of the server
     private final MessageSender messageSender;  // The MessageSender used to send messages to users
 
     /**
-     * Constructs a LoginCommand that manages user login in the specified chat room.
+     * Constructs a LoginCommand that manages user login in the specified registry.
      *
-     * @param chatRoom The chat room where the user will be logged in.
+     * @param roomRegistry The registry where the user will be logged in.
      * @param messageSender The MessageSender used to send messages to users.
      */
-    public LoginCommand(ChatRoom chatRoom, MessageSender messageSender) {
-        this.chatRoom = chatRoom;
+    public LoginCommand(RoomRegistry roomRegistry, MessageSender messageSender) {
+        this.roomRegistry = roomRegistry;
         this.messageSender = messageSender;
     }
 
     /**
-     * Executes the login command. This method adds the user to the chat room if the username is available,
+     * Executes the login command. This method logs the user in to the lobby if the username is available,
      * and sends appropriate success or error messages to the user.
      *
-     * @param elements The arguments of the command, containing the username.
+     * @param arguments The arguments of the command, containing the username.
      * @param message The message that initiated the command.
      * @param owner The user who issued the command.
      */
     @Override
-    public void execute(String[] elements, ClientMessage message, User owner) {
-        if(chatRoom.hasUser(owner)){ // if the user is in the room
+    public void execute(CommandArguments arguments, ClientMessage message, User owner) {
+        if(roomRegistry.isLoggedIn(owner)){ // if the user is logged in from this address
             messageSender.sendInfoToUser("You are already logged in!", owner);
         }
-        else if (!chatRoom.addUser(owner)) {
+        else if (!roomRegistry.login(owner)) {
             sendErrorMessage(String.format("Username %s is not available", owner.getNick()), owner);
         } else {
             sendLoginSuccess(owner);
@@ -48,14 +50,15 @@ public class LoginCommand implements Command {
 
     /**
      * Sends a welcome message to the user upon successful login and also sends the message history
-     * and a broadcast notification to other users in the chat room.
+     * and a broadcast notification to other users in the lobby.
      *
      * @param owner The user who successfully logged in.
      */
     private void sendLoginSuccess(User owner) {
         messageSender.sendLoginMessageToUser("Welcome to the room, use '/help' to view all available commands", owner);  // Send welcome message to the user
-        messageSender.sendHistoryToUser(chatRoom.getMessageHistory(), owner);  // Send chat history to the user
-        messageSender.sendBroadcast(String.format("User %s entered the chat!", owner.getNick()), chatRoom, owner);  // Broadcast user's entry
+        ChatRoom lobby = roomRegistry.getLobby();
+        messageSender.sendViewToUser(lobby.getMessageHistoryView(), owner);  // Send chat history to the user
+        messageSender.sendBroadcast(String.format("User %s entered the chat!", owner.getNick()), lobby, owner);  // Broadcast user's entry
     }
 
     /**
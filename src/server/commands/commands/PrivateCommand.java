@@ -1,30 +1,30 @@
 package server.commands.commands;
 
-import server.model.ChatRoom;
+import server.model.RoomRegistry;
 import server.model.User;
 import server.model.message.ChatMessage;
 import client.model.message.ClientMessage;
 import server.MessageSender;
 import server.commands.Command;
-
-import java.util.Arrays;
+import server.commands.CommandArguments;
 
 /**
  * The PrivateCommand class represents the command for sending private messages between users in a chat room.
- * It implements the {@link Command} interface and handles the process of sending a private message to a specific user.
+ * It implements the {@link Command} interface and handles the process of sending a private message to a specific user,
+ * whatever room they are in.
  */
 public class PrivateCommand implements Command {
-    private final ChatRoom chatRoom;  // The chat room in which users interact.
+    private final RoomRegistry roomRegistry;  // The rooms and users of the server.
     private final MessageSender messageSender;  // The MessageSender used to send messages to users.
 
     /**
-     * Constructs a PrivateCommand that sends private messages to users within the specified chat room.
+     * Constructs a PrivateCommand that sends private messages to the users logged in to the specified registry.
      *
-     * @param chatRoom The chat room where the private messages are sent.
+     * @param roomRegistry The registry where the recipients are looked up.
      * @param messageSender The MessageSender used to send the private messages.
      */
-    public PrivateCommand(ChatRoom chatRoom, MessageSender messageSender) {
-        this.chatRoom = chatRoom;
+    public PrivateCommand(RoomRegistry roomRegistry, MessageSender messageSender) {
+        this.roomRegistry = roomRegistry;
         this.messageSender = messageSender;
     }
 
@@ -32,20 +32,20 @@ public class PrivateCommand implements Command {
      * Executes the private message command. This method checks if the private message format is correct,
      * validates the recipient, and sends the private message if all conditions are met.
      *
-     * @param elements The arguments of the command, including the recipient username and message content.
+     * @param arguments The arguments of the command, including the recipient username and message content.
      * @param message The message that initiated the command.
      * @param owner The user who issued the command.
      */
     @Override
-    public void execute(String[] elements, ClientMessage message, User owner) {
+    public void execute(CommandArguments arguments, ClientMessage message, User owner) {
         // Check if the private message format is valid
-        if (elements.length < 3) {
+        if (arguments.size() < 3) {
             sendErrorMessage("Invalid private message format. Use: private (username) (message)", owner);
             return;
         }
 
-        String receiptNick = elements[1];  // Get the recipient's nickname from the command arguments
-        User receipt = chatRoom.getUserByNick(receiptNick);  // Find the recipient user in the chat room
+        String receiptNick = arguments.get(1);  // Get the recipient's nickname from the command arguments
+        User receipt = roomRegistry.getUserByNick(receiptNick);  // Find the recipient user in any room
 
         // Check if the recipient exists
         if (receipt == null) {
@@ -53,10 +53,10 @@ public class PrivateCommand implements Command {
             return;
         }
 
-        // Construct the private message
-        String privateMsg = String.join(" ", Arrays.copyOfRange(elements, 2, elements.length));
+        // The private message is the rest of the content, as the sender wrote it
+        String privateMsg = arguments.rest(2);
         ChatMessage privateMessage = new ChatMessage(privateMsg, owner);  // Create the private chat message
-        messageSender.sendInfoToUser(privateMessage.getFormattedContentAsPrivate(), receipt);  // Send the message to the recipient
+        messageSender.sendPrivateToUser(privateMessage.getFormattedContentAsPrivate(), receipt);  // Send the message to the recipient
     }
 
     /**
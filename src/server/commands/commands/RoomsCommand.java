@@ -0,0 +1,44 @@
+package server.commands.commands;
+
+import server.model.RoomRegistry;
+import server.model.User;
+import client.model.message.ClientMessage;
+import server.MessageSender;
+import server.commands.Command;
+import server.commands.CommandArguments;
+
+/**
+ * The RoomsCommand class handles the command for listing the chat rooms of the server.
+ * It implements the {@link Command} interface and sends every room and its number of users to the requesting user.
+ */
+public class RoomsCommand implements Command {
+    private final RoomRegistry roomRegistry;  // The rooms and users of the server
+    private final MessageSender messageSender;  // The MessageSender used to send messages to users
+
+    /**
+     * Constructs a RoomsCommand that lists the rooms of the specified registry.
+     *
+     * @param roomRegistry The registry holding the rooms.
+     * @param messageSender The MessageSender used to send messages to users.
+     */
+    public RoomsCommand(RoomRegistry roomRegistry, MessageSender messageSender) {
+        this.roomRegistry = roomRegistry;
+        this.messageSender = messageSender;
+    }
+
+    /**
+     * Executes the rooms command. This method sends the list of rooms to the user who issued the command.
+     *
+     * @param arguments The arguments of the command (not used in this case).
+     * @param message The message that initiated the command (not used in this case).
+     * @param owner The user who issued the command.
+     */
+    @Override
+    public void execute(CommandArguments arguments, ClientMessage message, User owner) {
+        if (!roomRegistry.isLoggedIn(owner)) {
+            messageSender.sendErrorToUser("You must log in first", owner);
+            return;
+        }
+        messageSender.sendInfoToUser(roomRegistry.listRooms(), owner);  // Send the list of rooms to the requesting user
+    }
+}
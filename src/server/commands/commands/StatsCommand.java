@@ -0,0 +1,99 @@
+package server.commands.commands;
+
+import common.util.SimpleLogger;
+import server.MessageSender;
+import server.commands.Command;
+import server.commands.CommandArguments;
+import server.metrics.ServerMetrics;
+import server.model.RoomRegistry;
+import server.model.User;
+import client.model.message.ClientMessage;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The StatsCommand class handles the administration command that shows the metrics of the server.
+ * It implements the {@link Command} interface and sends the rendered {@link ServerMetrics} to the requesting user,
+ * if they are logged in and connected from an administration address: the loopback address of the server, or one
+ * of the addresses listed in the {@value #ADMINS_PROPERTY} system property (comma separated). Nicks are not
+ * authenticated, so they never grant access.
+ */
+public class StatsCommand implements Command {
+    private static final String ADMINS_PROPERTY = "chat.admins";  // System property with the addresses of the administrators
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(StatsCommand.class);  // Logger for the class
+    private final RoomRegistry roomRegistry;  // The rooms and users of the server
+    private final ServerMetrics metrics;  // The metrics of the server
+    private final MessageSender messageSender;  // The MessageSender used to send messages to users
+    private final Set<InetAddress> admins;  // Addresses allowed to read the metrics, besides the loopback
+
+    /**
+     * Constructs a StatsCommand that reports the given metrics to the administrators.
+     *
+     * @param roomRegistry The registry the administrators must be logged in to.
+     * @param metrics The metrics of the server.
+     * @param messageSender The MessageSender used to send messages to users.
+     */
+    public StatsCommand(RoomRegistry roomRegistry, ServerMetrics metrics, MessageSender messageSender) {
+        this.roomRegistry = roomRegistry;
+        this.metrics = metrics;
+        this.messageSender = messageSender;
+        this.admins = parseAdmins(System.getProperty(ADMINS_PROPERTY, ""));
+    }
+
+    /**
+     * Resolves the administration addresses once. Entries that cannot be resolved are logged and ignored.
+     *
+     * @param property The comma separated addresses.
+     * @return The resolved addresses.
+     */
+    private static Set<InetAddress> parseAdmins(String property) {
+        Set<InetAddress> addresses = new HashSet<>();
+        for (String entry : property.split(",")) {
+            String host = entry.trim();
+            if (host.isEmpty()) continue;
+            try {
+                addresses.add(InetAddress.getByName(host));
+            } catch (UnknownHostException e) {
+                logger.log(Level.WARNING, "Ignoring unknown administration address {0}", host);
+            }
+        }
+        return Set.copyOf(addresses);
+    }
+
+    /**
+     * Executes the stats command. This method sends the metrics of the server to the user who issued the command,
+     * or an error if they are not logged in or not an administrator.
+     *
+     * @param arguments The arguments of the command (not used in this case).
+     * @param message The message that initiated the command (not used in this case).
+     * @param owner The user who issued the command.
+     */
+    @Override
+    public void execute(CommandArguments arguments, ClientMessage message, User owner) {
+        if (!roomRegistry.isLoggedIn(owner)) {
+            messageSender.sendErrorToUser("You must log in first", owner);
+            return;
+        }
+        if (!isAdmin(owner)) {
+            messageSender.sendErrorToUser("Only administrators can see the server stats", owner);
+            return;
+        }
+        messageSender.sendInfoToUser(metrics.render(), owner);  // Send the metrics to the requesting user
+    }
+
+    /**
+     * Checks whether a user may read the metrics, by the address they send from.
+     *
+     * @param user The user who issued the command.
+     * @return true if the user connects from the loopback address or an administration address.
+     */
+    private boolean isAdmin(User user) {
+        InetAddress address = user.getIp();
+        return address.isLoopbackAddress() || admins.contains(address);
+    }
+}
@@ -0,0 +1,80 @@
+package server.dispatch;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enumeration of the ways the server can run the handling of a decoded packet.
+ * The mode is chosen at startup through the {@value #PROPERTY} system property.
+ */
+public enum DispatchMode {
+    INLINE,  // Handle the packet on the receiving thread
+    VIRTUAL,  // Handle the packet on a virtual thread, or on a thread pool when virtual threads are not available
+    POOL;  // Handle the packet on a fixed pool sized to the available processors
+
+    /**
+     * System property used to select the dispatch mode (inline, virtual or pool).
+     */
+    public static final String PROPERTY = "chat.dispatch";
+
+    /**
+     * Creates the executor that runs the handlers in this mode.
+     *
+     * @return The executor, or null for INLINE, where no executor is used.
+     */
+    public ExecutorService createExecutor() {
+        return switch (this) {
+            case INLINE -> null;
+            case VIRTUAL -> newVirtualThreadExecutor();
+            case POOL -> Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemonThreads("handler-"));
+        };
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor when the running JDK provides one (Java 21+).
+     * On older JDKs it falls back to a cached pool of daemon threads.
+     *
+     * @return The executor for the VIRTUAL mode.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("handler-"));
+        }
+    }
+
+    /**
+     * Creates a thread factory for named daemon threads.
+     *
+     * @param prefix The prefix of the thread names.
+     * @return The thread factory.
+     */
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Resolves the dispatch mode configured through the {@value #PROPERTY} system property.
+     *
+     * @return The configured mode, or INLINE if none or an unknown one is configured.
+     */
+    public static DispatchMode fromSystemProperty() {
+        String name = System.getProperty(PROPERTY, "inline");
+        for (DispatchMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return INLINE;
+    }
+}
@@ -0,0 +1,121 @@
+package server.dispatch;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * The OrderedExecutor class runs tasks on an underlying {@link Executor} while keeping the tasks submitted
+ * with the same key in submission order. Tasks with different keys run concurrently.
+ * <p>
+ * Every key with pending work owns a lane: a queue of tasks drained by a single task of the underlying executor.
+ * When a lane runs out of work it is removed, so idle keys do not use any memory.
+ */
+public class OrderedExecutor {
+    private static final int MAX_TASKS_PER_RUN = 64;  // Tasks a lane runs before yielding its thread
+
+    private final Executor executor;  // Executor that runs the lanes
+    private final Map<Object, Lane> lanes = new ConcurrentHashMap<>();  // Lanes of the keys with pending work
+
+    /**
+     * Constructs an OrderedExecutor on top of the given executor.
+     *
+     * @param executor The executor that runs the tasks.
+     */
+    public OrderedExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Submits a task that will run after every task previously submitted with the same key.
+     *
+     * @param key The ordering key, e.g. the user that sent the packet.
+     * @param task The task to run.
+     */
+    public void execute(Object key, Runnable task) {
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(key, Lane::new);
+            if (lane.offer(task)) return;
+            // The lane was retired between the lookup and the offer, retry with a fresh one
+        }
+    }
+
+    /**
+     * Retrieves the number of keys that currently have queued or running tasks.
+     *
+     * @return The number of active lanes.
+     */
+    public int getActiveLanes() {
+        return lanes.size();
+    }
+
+    /**
+     * A lane holds the pending tasks of one key and runs them one after the other.
+     */
+    private class Lane implements Runnable {
+        private final Object key;  // Key the lane belongs to
+        private final Queue<Runnable> tasks = new ArrayDeque<>();  // Pending tasks, guarded by the lane
+        private boolean scheduled = false;  // Whether the lane is queued or running in the executor
+        private boolean retired = false;  // Whether the lane was removed from the map and accepts no more tasks
+
+        /**
+         * Constructs an empty lane.
+         *
+         * @param key The key the lane belongs to.
+         */
+        Lane(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * Queues a task in the lane and schedules the lane if it was idle.
+         *
+         * @param task The task to queue.
+         * @return true if the task was queued, false if the lane is retired.
+         */
+        synchronized boolean offer(Runnable task) {
+            if (retired) return false;
+            tasks.add(task);
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this);
+            }
+            return true;
+        }
+
+        /**
+         * Retrieves the next task, retiring the lane when there is none left.
+         *
+         * @return The next task, or null if the lane is empty.
+         */
+        private synchronized Runnable next() {
+            Runnable task = tasks.poll();
+            if (task == null) {
+                scheduled = false;
+                retired = true;
+                lanes.remove(key, this);
+            }
+            return task;
+        }
+
+        /**
+         * Runs a batch of tasks and reschedules itself if more remain, so a busy key cannot hold a thread forever.
+         */
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                Runnable task = next();
+                if (task == null) return;
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                }
+            }
+            executor.execute(this);  // Still scheduled, continue with a fresh task
+        }
+    }
+}
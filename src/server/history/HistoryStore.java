@@ -0,0 +1,191 @@
+package server.history;
+
+import common.util.SimpleLogger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The HistoryStore class owns the {@link MessageLog} of every room and the thread that writes them.
+ * <p>
+ * Every room gets a directory named after it under the store directory. Appends from any thread go through a
+ * bounded queue to a single appender thread, which writes them in order and forces the written segments to disk
+ * about once a second. When the queue is full the message is dropped from the log (it is still shown in the room)
+ * rather than blocking the thread that received it.
+ * <p>
+ * The store is enabled through the {@value #DIRECTORY_PROPERTY} system property; without it rooms only keep
+ * their recent history in memory.
+ */
+public class HistoryStore {
+    /**
+     * System property with the directory of the message logs. The logs are disabled if it is not set.
+     */
+    public static final String DIRECTORY_PROPERTY = "chat.history.dir";
+    private static final String SEGMENT_BYTES_PROPERTY = "chat.history.segment.bytes";  // Capacity of a segment
+    private static final String RETENTION_BYTES_PROPERTY = "chat.history.retention.bytes";  // Bytes kept per room
+    private static final String RETENTION_HOURS_PROPERTY = "chat.history.retention.hours";  // Age of the records kept
+    private static final int DEFAULT_SEGMENT_BYTES = 4 * 1024 * 1024;  // 4 MiB segments
+    private static final long DEFAULT_RETENTION_BYTES = 64L * 1024 * 1024;  // 64 MiB per room
+    private static final long DEFAULT_RETENTION_HOURS = 7 * 24;  // One week
+    private static final int QUEUE_CAPACITY = 65536;  // Messages waiting for the appender
+    private static final int BATCH_SIZE = 256;  // Appends taken from the queue at once
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;  // Time between forces of the written segments
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(HistoryStore.class);  // Logger for the class
+
+    private final Path directory;  // Root directory of the logs
+    private final int segmentBytes;  // Capacity of new segments
+    private final long retentionBytes;  // Bytes kept per room
+    private final long retentionMillis;  // Age of the records kept
+    private final Map<String, MessageLog> logs = new ConcurrentHashMap<>();  // Open logs by room name
+    private final BlockingQueue<PendingAppend> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);  // Appends waiting to be written
+    private final AtomicLong dropped = new AtomicLong();  // Appends dropped because the queue was full
+    private final Thread appender;  // Thread writing the queued appends
+
+    /**
+     * A message waiting to be written.
+     */
+    private record PendingAppend(MessageLog log, long offset, long timestamp, String nick, String content) {
+    }
+
+    /**
+     * Constructs a store and starts its appender thread.
+     *
+     * @param directory The root directory of the logs.
+     * @param segmentBytes The capacity of every segment file.
+     * @param retentionBytes The maximum bytes of records kept per room.
+     * @param retentionMillis The maximum age of the records kept.
+     */
+    public HistoryStore(Path directory, int segmentBytes, long retentionBytes, long retentionMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+        this.appender = new Thread(this::appendLoop, "history-appender");
+        this.appender.setDaemon(true);
+        this.appender.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "history-flush"));
+        logger.log(Level.INFO, "Message logs stored in {0}", directory.toAbsolutePath());
+    }
+
+    /**
+     * Creates the store configured through the system properties.
+     *
+     * @return The store, or null if {@value #DIRECTORY_PROPERTY} is not set.
+     */
+    public static HistoryStore fromSystemProperties() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.isBlank()) return null;
+        return new HistoryStore(Paths.get(directory),
+                Integer.getInteger(SEGMENT_BYTES_PROPERTY, DEFAULT_SEGMENT_BYTES),
+                Long.getLong(RETENTION_BYTES_PROPERTY, DEFAULT_RETENTION_BYTES),
+                TimeUnit.HOURS.toMillis(Long.getLong(RETENTION_HOURS_PROPERTY, DEFAULT_RETENTION_HOURS)));
+    }
+
+    /**
+     * Retrieves the log of a room, opening it the first time.
+     *
+     * @param room The name of the room, which must be usable as a directory name.
+     * @return The log of the room.
+     * @throws UncheckedIOException If the log cannot be opened.
+     */
+    public MessageLog getLog(String room) {
+        return logs.computeIfAbsent(room, name -> {
+            try {
+                return new MessageLog(this, directory.resolve(name), segmentBytes, retentionBytes, retentionMillis);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Queues a message for the appender thread.
+     *
+     * @return true if the message was queued, false if the queue was full.
+     */
+    boolean enqueue(MessageLog log, long offset, long timestamp, String nick, String content) {
+        if (queue.offer(new PendingAppend(log, offset, timestamp, nick, content))) return true;
+        if (dropped.getAndIncrement() == 0) {
+            logger.log(Level.WARNING, "Message log queue full, messages are not being stored");
+        }
+        return false;
+    }
+
+    /**
+     * Writes the queued messages until the thread is interrupted, forcing the logs to disk about once a second.
+     */
+    private void appendLoop() {
+        List<PendingAppend> batch = new ArrayList<>(BATCH_SIZE);
+        long nextFlush = System.currentTimeMillis() + FLUSH_INTERVAL_MILLIS;
+        while (true) {
+            try {
+                PendingAppend pending = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (pending != null) {
+                    write(pending);
+                    queue.drainTo(batch, BATCH_SIZE);  // Take the rest of a burst without waking up per message
+                    for (PendingAppend next : batch) {
+                        write(next);
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (System.currentTimeMillis() >= nextFlush) {
+                flush();
+                nextFlush = System.currentTimeMillis() + FLUSH_INTERVAL_MILLIS;
+            }
+        }
+    }
+
+    /**
+     * Writes one queued message, logging instead of failing if the disk cannot take it.
+     */
+    private void write(PendingAppend pending) {
+        try {
+            pending.log().write(pending.offset(), pending.timestamp(), pending.nick(), pending.content());
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Error writing the message log: {0}", e.toString());
+        }
+    }
+
+    /**
+     * Forces every open log to disk and reports the messages dropped since the last flush.
+     */
+    private synchronized void flush() {
+        for (MessageLog log : logs.values()) {
+            log.flush();
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) logger.log(Level.WARNING, "{0} messages were not stored, the log queue was full", lost);
+    }
+
+    /**
+     * Stops the appender, writes the messages still queued and forces the logs to disk.
+     */
+    public void close() {
+        appender.interrupt();
+        try {
+            appender.join(FLUSH_INTERVAL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        PendingAppend pending;
+        while ((pending = queue.poll()) != null) {
+            write(pending);
+        }
+        flush();
+    }
+}
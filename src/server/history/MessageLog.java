@@ -0,0 +1,206 @@
+package server.history;
+
+import common.util.SimpleLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * The MessageLog class is the durable, append-only history of one chat room.
+ * <p>
+ * Messages are numbered by offset, from 0, and stored in {@link Segment segments}: memory-mapped files of fixed
+ * capacity in the directory of the room. When a segment is full a new one is started, and the oldest segments are
+ * deleted once the log exceeds the retention size or they are older than the retention age.
+ * <p>
+ * {@link #append} assigns the offset of the message right away and only queues it for the appender thread of the
+ * {@link HistoryStore}, so it never blocks the caller. A message dropped because the queue was full leaves an empty
+ * record at its offset, which reads skip, so the offsets handed out always match the positions in the log.
+ * Reads can run on any thread, concurrently with the appender: the sparse index of every segment lets them jump
+ * close to the requested offset and only decode the records they return.
+ */
+public class MessageLog {
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(MessageLog.class);  // Logger for the class
+
+    private final HistoryStore store;  // Store whose appender thread writes the log
+    private final Path directory;  // Directory of the segments
+    private final int segmentBytes;  // Capacity of new segments
+    private final long retentionBytes;  // Maximum bytes of records kept
+    private final long retentionMillis;  // Maximum age of the records kept
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();  // Segments by base offset
+    private final CRC32 crc = new CRC32();  // Checksum used by the appender thread
+    private Segment active;  // Segment being appended to, used by the appender thread
+    private volatile long nextOffset = 0;  // Offset of the next message written
+    private long reservedOffset;  // Offset of the next message appended, guarded by this log
+
+    /**
+     * Opens the log of a room, recovering the segments already in its directory.
+     */
+    MessageLog(HistoryStore store, Path directory, int segmentBytes, long retentionBytes, long retentionMillis) throws IOException {
+        this.store = store;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retentionBytes = retentionBytes;
+        this.retentionMillis = retentionMillis;
+
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(Segment.LOG_SUFFIX)) continue;
+                long baseOffset = Long.parseLong(name.substring(0, name.length() - Segment.LOG_SUFFIX.length()));
+                segments.put(baseOffset, Segment.open(directory, baseOffset, segmentBytes));
+            }
+        }
+        if (!segments.isEmpty()) {
+            active = segments.lastEntry().getValue();
+            active.truncateTail();
+            nextOffset = active.getNextOffset();
+            enforceRetention();
+        }
+        reservedOffset = nextOffset;
+    }
+
+    /**
+     * Assigns the next offset to a message and queues it to be appended to the log. Never blocks on the disk;
+     * if the appender is too far behind, the message is only kept in memory.
+     *
+     * @param timestamp The time the message was sent, in milliseconds since the epoch.
+     * @param nick The nickname of the sender, not empty.
+     * @param content The content of the message.
+     * @return The offset of the message.
+     */
+    public synchronized long append(long timestamp, String nick, String content) {
+        long offset = reservedOffset++;
+        store.enqueue(this, offset, timestamp, nick, content);  // Queued in offset order
+        return offset;
+    }
+
+    /**
+     * Retrieves the offset the next appended message will get. Messages before it may still be queued.
+     *
+     * @return The next reserved offset.
+     */
+    public synchronized long getReservedOffset() {
+        return reservedOffset;
+    }
+
+    /**
+     * Reads consecutive messages.
+     *
+     * @param offset The offset of the first message to read; older messages that were deleted are skipped.
+     * @param max The maximum number of offsets to read; messages that were dropped are left out, so fewer
+     *            messages may be returned.
+     * @return The messages in order, empty if there is none at or after the offset.
+     */
+    public List<StoredMessage> read(long offset, int max) {
+        List<StoredMessage> messages = new ArrayList<>(Math.min(max, 256));
+        Map.Entry<Long, Segment> first = segments.floorEntry(offset);
+        Map<Long, Segment> candidates = first == null ? segments : segments.tailMap(first.getKey());
+        for (Segment segment : candidates.values()) {
+            if (messages.size() >= max) break;
+            segment.read(Math.max(offset, segment.getBaseOffset()), max - messages.size(), messages);
+        }
+        messages.removeIf(message -> message.nick().isEmpty());  // Placeholders of dropped messages
+        return messages;
+    }
+
+    /**
+     * Reads the latest messages.
+     *
+     * @param count The maximum number of messages to read.
+     * @return Up to count messages, the newest last.
+     */
+    public List<StoredMessage> readTail(int count) {
+        return read(Math.max(getFirstOffset(), nextOffset - count), count);
+    }
+
+    /**
+     * Retrieves the offset of the oldest message still in the log.
+     *
+     * @return The first offset, equal to {@link #getNextOffset()} if the log is empty.
+     */
+    public long getFirstOffset() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first == null ? nextOffset : first.getKey();
+    }
+
+    /**
+     * Retrieves the offset the next message will have, which is also the number of messages ever appended.
+     *
+     * @return The next offset.
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * Writes a message at its offset, after empty records for the messages dropped before it.
+     * Called by the appender thread only.
+     */
+    void write(long offset, long timestamp, String nick, String content) throws IOException {
+        while (nextOffset < offset) {
+            writeRecord(timestamp, "", "");
+        }
+        writeRecord(timestamp, nick, content);
+    }
+
+    /**
+     * Writes a record at the next offset, rolling to a new segment if the active one is full.
+     */
+    private void writeRecord(long timestamp, String nick, String content) throws IOException {
+        if (active == null || !active.append(timestamp, nick, content, crc)) {
+            roll();
+            if (!active.append(timestamp, nick, content, crc)) {
+                logger.log(Level.WARNING, "Message larger than a log segment, not stored");
+                active.append(timestamp, "", "", crc);  // Keep the offset
+            }
+        }
+        nextOffset++;
+    }
+
+    /**
+     * Forces the writes of the active segment to disk. Called by the appender thread only.
+     */
+    void flush() {
+        if (active != null) active.flush();
+    }
+
+    /**
+     * Starts a new segment and applies the retention.
+     */
+    private void roll() throws IOException {
+        if (active != null) active.flush();
+        active = Segment.open(directory, nextOffset, segmentBytes);
+        segments.put(nextOffset, active);
+        enforceRetention();
+    }
+
+    /**
+     * Deletes the oldest segments while the log is larger than the retention size or they are older than the
+     * retention age. The active segment is always kept.
+     */
+    private void enforceRetention() throws IOException {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.getSize();
+        }
+        long oldest = System.currentTimeMillis() - retentionMillis;
+        while (segments.size() > 1) {
+            Segment first = segments.firstEntry().getValue();
+            if (total <= retentionBytes && first.getLastTimestamp() >= oldest) break;
+            segments.remove(first.getBaseOffset());
+            total -= first.getSize();
+            first.delete();
+            logger.log(Level.INFO, "Deleted log segment {0} of {1}", new Object[]{first.getBaseOffset(), directory});
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package server.history;
+
+import common.codec.BinaryCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The Segment class is one file of a {@link MessageLog}: a memory-mapped file of fixed capacity holding
+ * consecutive records, and a memory-mapped sparse index next to it.
+ * <p>
+ * A record is {@code [int bodyLength][int crc32][long timestamp][varint nick][varint content]}, strings in UTF-8.
+ * Every {@link #INDEX_INTERVAL} bytes of records, the index gets an entry {@code [int relativeOffset][int position]},
+ * so finding a record only walks the headers of the records after the closest entry. The files are named after the
+ * offset of their first record.
+ * <p>
+ * Records are appended by a single thread. Readers may run concurrently: they only read the records counted in the
+ * volatile record count, which is written after the record bytes.
+ */
+final class Segment {
+    static final String LOG_SUFFIX = ".log";  // Suffix of the record files
+    private static final String INDEX_SUFFIX = ".index";  // Suffix of the index files
+    private static final int HEADER_SIZE = 8;  // Body length and CRC of a record
+    private static final int INDEX_INTERVAL = 4096;  // Bytes of records between two index entries
+    private static final int INDEX_ENTRY_SIZE = 8;  // Relative offset and position
+
+    private final long baseOffset;  // Offset of the first record
+    private final Path logFile;  // File holding the records
+    private final Path indexFile;  // File holding the sparse index
+    private final MappedByteBuffer records;  // Mapping of the record file
+    private final MappedByteBuffer index;  // Mapping of the index file
+    private final ByteBuffer writer;  // View of the records used by the appending thread
+    private volatile int size = 0;  // Bytes of complete records
+    private volatile int count = 0;  // Number of complete records
+    private volatile int indexEntries = 0;  // Number of index entries
+    private volatile long lastTimestamp = 0;  // Timestamp of the last record
+    private int lastIndexedPosition = 0;  // Position of the last indexed record, used by the appending thread
+    private boolean dirty = false;  // Whether there are writes not forced to disk yet
+
+    /**
+     * Maps the files of a segment, creating them if needed.
+     */
+    private Segment(Path directory, long baseOffset, int capacity) throws IOException {
+        String name = String.format("%020d", baseOffset);
+        this.baseOffset = baseOffset;
+        this.logFile = directory.resolve(name + LOG_SUFFIX);
+        this.indexFile = directory.resolve(name + INDEX_SUFFIX);
+        if (Files.exists(logFile) && Files.size(logFile) > 0) {
+            capacity = (int) Math.min(Integer.MAX_VALUE, Files.size(logFile));  // Keep the size it was created with
+        }
+        this.records = map(logFile, capacity);
+        this.index = map(indexFile, (capacity / INDEX_INTERVAL + 1) * INDEX_ENTRY_SIZE);
+        this.writer = records.duplicate();
+    }
+
+    /**
+     * Opens a segment, recovering the records already in it.
+     *
+     * @param directory The directory of the log.
+     * @param baseOffset The offset of the first record of the segment.
+     * @param capacity The size of the record file if it has to be created.
+     * @return The segment.
+     * @throws IOException If the files cannot be created or mapped.
+     */
+    static Segment open(Path directory, long baseOffset, int capacity) throws IOException {
+        Segment segment = new Segment(directory, baseOffset, capacity);
+        segment.recover();
+        return segment;
+    }
+
+    /**
+     * Maps a whole file for reading and writing, extending it to the given size.
+     */
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Finds the end of the records: loads the index entries and checks the records after the last one.
+     * The first record that is incomplete or fails its CRC marks the end of the segment.
+     */
+    private void recover() {
+        CRC32 crc = new CRC32();
+        int entries = 0;
+        int relative = 0;
+        int position = 0;
+        while (entries < index.capacity() / INDEX_ENTRY_SIZE) {
+            int entryOffset = index.getInt(entries * INDEX_ENTRY_SIZE);
+            int entryPosition = index.getInt(entries * INDEX_ENTRY_SIZE + 4);
+            if (entryPosition <= position || entryOffset <= relative || recordLength(entryPosition, crc) < 0) break;
+            relative = entryOffset;
+            position = entryPosition;
+            entries++;
+        }
+
+        long timestamp = 0;
+        while (true) {
+            int length = recordLength(position, crc);
+            if (length < 0) break;
+            timestamp = records.getLong(position + HEADER_SIZE);
+            position += HEADER_SIZE + length;
+            relative++;
+        }
+
+        this.indexEntries = entries;
+        this.lastIndexedPosition = entries == 0 ? 0 : index.getInt((entries - 1) * INDEX_ENTRY_SIZE + 4);
+        this.lastTimestamp = timestamp;
+        this.size = position;
+        this.count = relative;
+    }
+
+    /**
+     * Checks the record at a position.
+     *
+     * @return The body length of the record, or -1 if there is no valid record at the position.
+     */
+    private int recordLength(int position, CRC32 crc) {
+        if (position < 0 || position > records.capacity() - HEADER_SIZE - Long.BYTES) return -1;
+        int length = records.getInt(position);
+        if (length < Long.BYTES || length > records.capacity() - position - HEADER_SIZE) return -1;
+        crc.reset();
+        crc.update(records.slice(position + HEADER_SIZE, length));
+        return (int) crc.getValue() == records.getInt(position + 4) ? length : -1;
+    }
+
+    /**
+     * Clears whatever follows the last valid record, e.g. a record torn by a crash, so that the records appended
+     * from now on are never followed by stale bytes. Only called on the segment that will be appended to.
+     */
+    void truncateTail() {
+        for (int position = size; position < records.capacity(); position++) {
+            records.put(position, (byte) 0);
+        }
+        for (int position = indexEntries * INDEX_ENTRY_SIZE; position < index.capacity(); position++) {
+            index.put(position, (byte) 0);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param timestamp The time the message was sent.
+     * @param nick The nickname of the sender.
+     * @param content The content of the message.
+     * @param crc The checksum used by the appending thread.
+     * @return true if the record was appended, false if it does not fit in the segment.
+     */
+    boolean append(long timestamp, String nick, String content, CRC32 crc) {
+        int nickLength = BinaryCodec.utf8Length(nick);
+        int contentLength = BinaryCodec.utf8Length(content);
+        int length = Long.BYTES + BinaryCodec.varintSize(nickLength) + nickLength
+                + BinaryCodec.varintSize(contentLength) + contentLength;
+        int position = size;
+        if ((long) position + HEADER_SIZE + length > records.capacity()) return false;
+
+        writer.limit(records.capacity()).position(position + HEADER_SIZE);
+        writer.putLong(timestamp);
+        BinaryCodec.writeString(writer, nick);
+        BinaryCodec.writeString(writer, content);
+        writer.limit(writer.position()).position(position + HEADER_SIZE);
+        crc.reset();
+        crc.update(writer);
+        writer.putInt(position, length);
+        writer.putInt(position + 4, (int) crc.getValue());
+
+        int relative = count;
+        if (position - lastIndexedPosition >= INDEX_INTERVAL) {
+            int entry = indexEntries;
+            index.putInt(entry * INDEX_ENTRY_SIZE, relative);
+            index.putInt(entry * INDEX_ENTRY_SIZE + 4, position);
+            lastIndexedPosition = position;
+            indexEntries = entry + 1;
+        }
+        lastTimestamp = timestamp;
+        dirty = true;
+        size = position + HEADER_SIZE + length;
+        count = relative + 1;  // Publishes the record to the readers
+        return true;
+    }
+
+    /**
+     * Reads consecutive records.
+     *
+     * @param offset The offset of the first record to read.
+     * @param max The maximum number of records to read.
+     * @param out The list the records are added to.
+     */
+    void read(long offset, int max, List<StoredMessage> out) {
+        int published = count;
+        int relative = (int) Math.max(0, offset - baseOffset);
+        if (relative >= published) return;
+
+        ByteBuffer reader = records.duplicate();
+        int position = position(relative);
+        for (int read = 0; read < max && relative < published; read++, relative++) {
+            int length = reader.getInt(position);
+            reader.position(position + HEADER_SIZE);
+            long timestamp = reader.getLong();
+            String nick = BinaryCodec.readString(reader);
+            String content = BinaryCodec.readString(reader);
+            out.add(new StoredMessage(baseOffset + relative, timestamp, nick, content));
+            position += HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * Finds the position of a record: the closest index entry before it, then the record headers from there.
+     */
+    private int position(int relative) {
+        int low = 0;
+        int high = indexEntries - 1;
+        int entryOffset = 0;
+        int position = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleOffset = index.getInt(middle * INDEX_ENTRY_SIZE);
+            if (middleOffset <= relative) {
+                entryOffset = middleOffset;
+                position = index.getInt(middle * INDEX_ENTRY_SIZE + 4);
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        for (int skipped = entryOffset; skipped < relative; skipped++) {
+            position += HEADER_SIZE + records.getInt(position);
+        }
+        return position;
+    }
+
+    /**
+     * Forces the writes to disk, if there are any.
+     */
+    void flush() {
+        if (!dirty) return;
+        dirty = false;
+        records.force();
+        index.force();
+    }
+
+    /**
+     * Deletes the files of the segment. The mappings are released once no reader uses them.
+     *
+     * @throws IOException If a file cannot be deleted.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(logFile);
+        Files.deleteIfExists(indexFile);
+    }
+
+    /**
+     * Retrieves the offset of the first record.
+     *
+     * @return The base offset.
+     */
+    long getBaseOffset() {
+        return baseOffset;
+    }
+
+    /**
+     * Retrieves the offset the next record of the segment would have.
+     *
+     * @return The base offset plus the number of records.
+     */
+    long getNextOffset() {
+        return baseOffset + count;
+    }
+
+    /**
+     * Retrieves the number of bytes of records.
+     *
+     * @return The size of the records.
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Retrieves the timestamp of the last record.
+     *
+     * @return The timestamp, 0 if the segment is empty.
+     */
+    long getLastTimestamp() {
+        return lastTimestamp;
+    }
+}
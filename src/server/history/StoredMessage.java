@@ -0,0 +1,20 @@
+package server.history;
+
+/**
+ * A chat message as it is stored in a {@link MessageLog}.
+ *
+ * @param offset The position of the message in the log of its room, starting at 0.
+ * @param timestamp The time the message was sent, in milliseconds since the epoch.
+ * @param nick The nickname of the sender.
+ * @param content The content of the message.
+ */
+public record StoredMessage(long offset, long timestamp, String nick, String content) {
+    /**
+     * Formats the message for display in the chat room, like {@code ChatMessage#getFormattedContent()}.
+     *
+     * @return A formatted string representation of the message.
+     */
+    public String getFormattedContent() {
+        return "<" + nick + "> " + content;
+    }
+}
@@ -0,0 +1,79 @@
+package server.metrics;
+
+import common.UDPOperation;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * The MeteredOperation class is a UDPOperation decorator that counts the datagrams and bytes sent through the
+ * transport it wraps in a {@link ServerMetrics}. Placed right above the socket, it counts what actually goes out:
+ * every fragment, coalesced datagram and retransmission.
+ */
+public class MeteredOperation implements UDPOperation {
+    private final UDPOperation delegate;  // Transport the datagrams are sent through
+    private final ServerMetrics metrics;  // Registry the datagrams are counted in
+
+    /**
+     * Constructs a MeteredOperation over a transport.
+     *
+     * @param delegate The transport the datagrams are sent through.
+     * @param metrics The registry the datagrams are counted in.
+     */
+    public MeteredOperation(UDPOperation delegate, ServerMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Counts the datagram and sends it through the wrapped transport.
+     *
+     * @param data The data to send.
+     * @param address The destination InetAddress.
+     * @param port The destination port number.
+     */
+    @Override
+    public void send(byte[] data, InetAddress address, int port) {
+        metrics.recordPacketOut(data.length);
+        delegate.send(data, address, port);
+    }
+
+    /**
+     * Counts the datagram and sends it through the wrapped transport.
+     *
+     * @param data The data to send, from its position to its limit.
+     * @param target The destination socket address.
+     */
+    @Override
+    public void send(ByteBuffer data, InetSocketAddress target) {
+        metrics.recordPacketOut(data.remaining());
+        delegate.send(data, target);
+    }
+
+    /**
+     * Receives through the wrapped transport.
+     */
+    @Override
+    public void receive() {
+        delegate.receive();
+    }
+
+    /**
+     * Sets the receive timeout of the wrapped transport.
+     *
+     * @param timeout The timeout in milliseconds, 0 to wait indefinitely.
+     */
+    @Override
+    public void setReceiveTimeout(int timeout) {
+        delegate.setReceiveTimeout(timeout);
+    }
+
+    /**
+     * Closes the wrapped transport.
+     */
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,377 @@
+package server.metrics;
+
+import common.codec.Trace;
+import common.util.Histogram;
+import common.util.SimpleLogger;
+import common.util.StageHistograms;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The ServerMetrics class is the registry of the counters and histograms of a server: packets and bytes in and
+ * out, packets that could not be parsed, commands by name, the fan-out and duration of the broadcasts, and the
+ * pings and evictions of the inactivity monitor. The chat messages that carry a {@link Trace} also record the
+ * time they spent in every stage of the server: the network from the client, the queue before their handler,
+ * the handler and the fan-out to the room.
+ * <p>
+ * Counters are {@link LongAdder}s, which spread the increments of concurrent threads over striped cells, and the
+ * distributions are lock-free {@link Histogram}s striped the same way, so the receiver, handler and timer threads
+ * recording at once rarely contend on the hot path; the cost is paid by the readers, which sum the cells and
+ * stripes. The commands get their counter once, when they are registered, so counting a command is not a map
+ * lookup.
+ * <p>
+ * The metrics are read with the {@code stats} command and, once {@link #register(String)} is called, through JMX
+ * as a {@link ServerMetricsMXBean}.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(ServerMetrics.class);  // Logger for the class
+
+    private final long startNanos = System.nanoTime();  // Creation time, for the uptime
+    private final LongAdder packetsIn = new LongAdder();  // Datagrams received
+    private final LongAdder bytesIn = new LongAdder();  // Bytes received
+    private final LongAdder packetsOut = new LongAdder();  // Datagrams sent
+    private final LongAdder bytesOut = new LongAdder();  // Bytes sent
+    private final LongAdder parseFailures = new LongAdder();  // Packets that were not a client message
+    private final Map<String, LongAdder> commands = new ConcurrentHashMap<>();  // Commands handled, by name
+    private final Histogram broadcastFanout = new Histogram();  // Recipients of every broadcast
+    private final Histogram broadcastNanos = new Histogram();  // Time to send every broadcast
+    private final StageHistograms traceStages =
+            new StageHistograms("network", "queue", "handler", "fan-out");  // Stages of the traced messages
+    private final LongAdder pingsSent = new LongAdder();  // Pings sent to inactive users
+    private final LongAdder evictions = new LongAdder();  // Users evicted for not answering the pings
+
+    /**
+     * Exports these metrics through the platform MBean server, under {@code chat:type=ServerMetrics,name=<name>}.
+     * A failure, such as a name already taken by another server of the same JVM, is logged and the metrics stay
+     * available through the {@code stats} command.
+     *
+     * @param name The name of the server, e.g. its port.
+     */
+    public void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("chat:type=ServerMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            logger.log(Level.INFO, "Metrics exported through JMX as {0}", objectName);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Could not export the metrics through JMX: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Records a received datagram.
+     *
+     * @param bytes The length of the datagram.
+     */
+    public void recordPacketIn(int bytes) {
+        packetsIn.increment();
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * Records a sent datagram.
+     *
+     * @param bytes The length of the datagram.
+     */
+    public void recordPacketOut(int bytes) {
+        packetsOut.increment();
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Records a received packet that was not a valid client message.
+     */
+    public void recordParseFailure() {
+        parseFailures.increment();
+    }
+
+    /**
+     * Retrieves the counter of a command, creating it the first time. Callers keep the counter and increment it
+     * for every execution of the command.
+     *
+     * @param name The name of the command.
+     * @return The counter of the command.
+     */
+    public LongAdder commandCounter(String name) {
+        return commands.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Records a broadcast.
+     *
+     * @param recipients The number of users the message was sent to.
+     * @param nanos The time it took to send it to all of them, in nanoseconds.
+     */
+    public void recordBroadcast(int recipients, long nanos) {
+        broadcastFanout.record(recipients);
+        broadcastNanos.record(nanos);
+    }
+
+    /**
+     * Records the stages of a traced message that was broadcast.
+     *
+     * @param trace The trace of the message, stamped with its server receive and dispatch times.
+     * @param handleMicros The time its handler started.
+     * @param doneMicros The time it had been sent to every recipient.
+     */
+    public void recordTrace(Trace trace, long handleMicros, long doneMicros) {
+        traceStages.record(0, trace.serverReceiveMicros() - trace.clientSendMicros());
+        traceStages.record(1, handleMicros - trace.serverReceiveMicros());
+        traceStages.record(2, trace.serverDispatchMicros() - handleMicros);
+        traceStages.record(3, doneMicros - trace.serverDispatchMicros());
+    }
+
+    /**
+     * Records a ping sent to an inactive user.
+     */
+    public void recordPing() {
+        pingsSent.increment();
+    }
+
+    /**
+     * Records the eviction of a user that did not answer the pings.
+     */
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    /**
+     * Retrieves the seconds since the metrics were created.
+     *
+     * @return The seconds since the metrics were created.
+     */
+    @Override
+    public long getUptimeSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Retrieves the datagrams received, before the inbound limit.
+     *
+     * @return The datagrams received, before the inbound limit.
+     */
+    @Override
+    public long getPacketsIn() {
+        return packetsIn.sum();
+    }
+
+    /**
+     * Retrieves the bytes of the datagrams received.
+     *
+     * @return The bytes of the datagrams received.
+     */
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * Retrieves the datagrams sent, fragments and retransmissions included.
+     *
+     * @return The datagrams sent, fragments and retransmissions included.
+     */
+    @Override
+    public long getPacketsOut() {
+        return packetsOut.sum();
+    }
+
+    /**
+     * Retrieves the bytes of the datagrams sent.
+     *
+     * @return The bytes of the datagrams sent.
+     */
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Retrieves the received packets that were not a valid client message.
+     *
+     * @return The received packets that were not a valid client message.
+     */
+    @Override
+    public long getParseFailures() {
+        return parseFailures.sum();
+    }
+
+    /**
+     * Retrieves the commands handled, by name; unknown commands are counted as {@code unknown}.
+     *
+     * @return The commands handled, by name; unknown commands are counted as {@code unknown}.
+     */
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        commands.forEach((name, counter) -> counts.put(name, counter.sum()));
+        return counts;
+    }
+
+    /**
+     * Retrieves the messages broadcast to a room.
+     *
+     * @return The messages broadcast to a room.
+     */
+    @Override
+    public long getBroadcasts() {
+        return broadcastFanout.getCount();
+    }
+
+    /**
+     * Retrieves the median number of recipients of a broadcast.
+     *
+     * @return The median number of recipients of a broadcast.
+     */
+    @Override
+    public long getBroadcastFanoutP50() {
+        return broadcastFanout.getPercentile(0.50);
+    }
+
+    /**
+     * Retrieves the 99th percentile of the recipients of a broadcast.
+     *
+     * @return The 99th percentile of the recipients of a broadcast.
+     */
+    @Override
+    public long getBroadcastFanoutP99() {
+        return broadcastFanout.getPercentile(0.99);
+    }
+
+    /**
+     * Retrieves the largest number of recipients of a broadcast.
+     *
+     * @return The largest number of recipients of a broadcast.
+     */
+    @Override
+    public long getBroadcastFanoutMax() {
+        return broadcastFanout.getMax();
+    }
+
+    /**
+     * Retrieves the median time to send a broadcast to every recipient.
+     *
+     * @return The median time to send a broadcast to every recipient.
+     */
+    @Override
+    public long getBroadcastMicrosP50() {
+        return TimeUnit.NANOSECONDS.toMicros(broadcastNanos.getPercentile(0.50));
+    }
+
+    /**
+     * Retrieves the 99th percentile of the time to send a broadcast.
+     *
+     * @return The 99th percentile of the time to send a broadcast.
+     */
+    @Override
+    public long getBroadcastMicrosP99() {
+        return TimeUnit.NANOSECONDS.toMicros(broadcastNanos.getPercentile(0.99));
+    }
+
+    /**
+     * Retrieves the longest time to send a broadcast.
+     *
+     * @return The longest time to send a broadcast.
+     */
+    @Override
+    public long getBroadcastMicrosMax() {
+        return TimeUnit.NANOSECONDS.toMicros(broadcastNanos.getMax());
+    }
+
+    /**
+     * Retrieves the chat messages broadcast with a trace.
+     *
+     * @return The traced messages.
+     */
+    @Override
+    public long getTracedMessages() {
+        return traceStages.getCount();
+    }
+
+    /**
+     * Retrieves the median time of the traced messages in every stage of the server.
+     *
+     * @return The medians, by stage name.
+     */
+    @Override
+    public Map<String, Long> getTraceMicrosP50() {
+        return traceStages.getPercentiles(0.50);
+    }
+
+    /**
+     * Retrieves the 99th percentile of the time of the traced messages in every stage of the server.
+     *
+     * @return The percentiles, by stage name.
+     */
+    @Override
+    public Map<String, Long> getTraceMicrosP99() {
+        return traceStages.getPercentiles(0.99);
+    }
+
+    /**
+     * Retrieves the pings sent to inactive users.
+     *
+     * @return The pings sent to inactive users.
+     */
+    @Override
+    public long getPingsSent() {
+        return pingsSent.sum();
+    }
+
+    /**
+     * Retrieves the users evicted for not answering the pings.
+     *
+     * @return The users evicted for not answering the pings.
+     */
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Forgets the recorded broadcast fan-outs, durations and trace stages, so the percentiles describe the load
+     * from now on. Counters are not reset.
+     */
+    @Override
+    public void resetHistograms() {
+        broadcastFanout.reset();
+        broadcastNanos.reset();
+        traceStages.reset();
+    }
+
+    /**
+     * Renders the metrics as the text of the {@code stats} command.
+     *
+     * @return The rendered metrics.
+     */
+    public String render() {
+        long uptime = getUptimeSeconds();
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("Server stats (up ").append(uptime / 3600).append("h ").append(uptime / 60 % 60).append("m ")
+                .append(uptime % 60).append("s):\n");
+        sb.append("- packets in: ").append(getPacketsIn()).append(" (").append(getBytesIn()).append(" bytes), out: ")
+                .append(getPacketsOut()).append(" (").append(getBytesOut()).append(" bytes)\n");
+        sb.append("- parse failures: ").append(getParseFailures()).append('\n');
+        sb.append("- commands:");
+        getCommandCounts().forEach((name, count) -> sb.append(' ').append(name).append('=').append(count));
+        sb.append('\n');
+        sb.append("- broadcasts: ").append(getBroadcasts())
+                .append(", fan-out p50/p99/max ").append(getBroadcastFanoutP50()).append('/')
+                .append(getBroadcastFanoutP99()).append('/').append(getBroadcastFanoutMax())
+                .append(" users, time p50/p99/max ").append(getBroadcastMicrosP50()).append('/')
+                .append(getBroadcastMicrosP99()).append('/').append(getBroadcastMicrosMax()).append(" us\n");
+        sb.append("- pings sent: ").append(getPingsSent()).append(", evictions: ").append(getEvictions());
+        if (getTracedMessages() > 0) {
+            sb.append("\n- traced messages: ").append(getTracedMessages()).append('\n')
+                    .append("  ").append(traceStages.render().replace("\n", "\n  "));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package server.metrics;
+
+import java.util.Map;
+
+/**
+ * The ServerMetricsMXBean interface is the management view of the {@link ServerMetrics} of a server, exported
+ * through JMX so the counters can be read with jconsole or any JMX client while the server runs.
+ * Durations are in microseconds.
+ */
+public interface ServerMetricsMXBean {
+
+    /**
+     * Retrieves the seconds since the metrics were created.
+     *
+     * @return The seconds since the metrics were created.
+     */
+    long getUptimeSeconds();
+
+    /**
+     * Retrieves the datagrams received, before the inbound limit.
+     *
+     * @return The datagrams received, before the inbound limit.
+     */
+    long getPacketsIn();
+
+    /**
+     * Retrieves the bytes of the datagrams received.
+     *
+     * @return The bytes of the datagrams received.
+     */
+    long getBytesIn();
+
+    /**
+     * Retrieves the datagrams sent, fragments and retransmissions included.
+     *
+     * @return The datagrams sent, fragments and retransmissions included.
+     */
+    long getPacketsOut();
+
+    /**
+     * Retrieves the bytes of the datagrams sent.
+     *
+     * @return The bytes of the datagrams sent.
+     */
+    long getBytesOut();
+
+    /**
+     * Retrieves the received packets that were not a valid client message.
+     *
+     * @return The received packets that were not a valid client message.
+     */
+    long getParseFailures();
+
+    /**
+     * Retrieves the commands handled, by name; unknown commands are counted as {@code unknown}.
+     *
+     * @return The commands handled, by name; unknown commands are counted as {@code unknown}.
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     * Retrieves the messages broadcast to a room.
+     *
+     * @return The messages broadcast to a room.
+     */
+    long getBroadcasts();
+
+    /**
+     * Retrieves the median number of recipients of a broadcast.
+     *
+     * @return The median number of recipients of a broadcast.
+     */
+    long getBroadcastFanoutP50();
+
+    /**
+     * Retrieves the 99th percentile of the recipients of a broadcast.
+     *
+     * @return The 99th percentile of the recipients of a broadcast.
+     */
+    long getBroadcastFanoutP99();
+
+    /**
+     * Retrieves the largest number of recipients of a broadcast.
+     *
+     * @return The largest number of recipients of a broadcast.
+     */
+    long getBroadcastFanoutMax();
+
+    /**
+     * Retrieves the median time to send a broadcast to every recipient.
+     *
+     * @return The median time to send a broadcast to every recipient.
+     */
+    long getBroadcastMicrosP50();
+
+    /**
+     * Retrieves the 99th percentile of the time to send a broadcast.
+     *
+     * @return The 99th percentile of the time to send a broadcast.
+     */
+    long getBroadcastMicrosP99();
+
+    /**
+     * Retrieves the longest time to send a broadcast.
+     *
+     * @return The longest time to send a broadcast.
+     */
+    long getBroadcastMicrosMax();
+
+    /**
+     * Retrieves the chat messages broadcast with a trace.
+     *
+     * @return The traced messages.
+     */
+    long getTracedMessages();
+
+    /**
+     * Retrieves the median time of the traced messages in every stage of the server: network, queue, handler
+     * and fan-out.
+     *
+     * @return The medians, by stage name.
+     */
+    Map<String, Long> getTraceMicrosP50();
+
+    /**
+     * Retrieves the 99th percentile of the time of the traced messages in every stage of the server.
+     *
+     * @return The percentiles, by stage name.
+     */
+    Map<String, Long> getTraceMicrosP99();
+
+    /**
+     * Retrieves the pings sent to inactive users.
+     *
+     * @return The pings sent to inactive users.
+     */
+    long getPingsSent();
+
+    /**
+     * Retrieves the users evicted for not answering the pings.
+     *
+     * @return The users evicted for not answering the pings.
+     */
+    long getEvictions();
+
+    /**
+     * Forgets the recorded broadcast fan-outs, durations and trace stages, so the percentiles describe the load
+     * from now on. Counters are not reset.
+     */
+    void resetHistograms();
+}
@@ -1,161 +1,342 @@
 package server.model;
 
+import common.codec.BinaryCodec;
+import server.history.MessageLog;
+import server.history.StoredMessage;
 import server.model.message.ChatMessage;
+import server.model.message.RenderedView;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The ChatRoom class represents a virtual room where users can interact with each other by sending messages.
- * It handles user management, message history, and checks for inactive users.
+ * It handles user management and message history.
  * Users can send messages, view message history, and communicate with other users in the room.
+ * Rooms are created and reclaimed by the {@link RoomRegistry}; each one has its own members and history.
+ * The room is shared by every receiving thread of the server, so all its state is safe for concurrent use.
+ * <p>
+ * Users are indexed by their normalized nick ({@link User#normalize(String)}), so nicks are unique regardless
+ * of case and looking a user up by nick takes constant time.
+ * <p>
+ * A room may be backed by a {@link MessageLog}, which keeps every message on disk. The latest messages are also
+ * kept in memory, and when the room is created they are loaded from the end of its log, so the history survives
+ * the room being reclaimed and the server being restarted.
+ * <p>
+ * Every message gets an id, increasing within the room (its offset in the log, if there is one). History is
+ * delivered in pages that fit in a datagram the client can receive, each naming the id to ask for the older ones.
+ * <p>
+ * The user list and the latest history page are kept as {@link RenderedView}s, stamped with a version of the
+ * members and of the history that is bumped on every change, so they are only rendered again after a change.
  */
 public class ChatRoom {
-    private static final long INACTIVITY_THRESHOLD = 20000; // 20s: Threshold for inactivity detection
     private static final int MAX_HISTORY = 10; // Maximum number of messages to store in the history
-    private final Set<User> users = new HashSet<>();  // Set of users currently in the chat room
-    private final Deque<ChatMessage> chatMessageHistory = new ArrayDeque<>(MAX_HISTORY);  // History of chat messages
-    private final Map<String, Long> lastActivityTimestamps = new HashMap<>();  // Timestamps of user activity
+    /**
+     * Maximum number of messages in a page of history.
+     */
+    public static final int MAX_PAGE_SIZE = 50;
+    /**
+     * Number of messages in a page of history when the user does not ask for a number.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_BYTES = 1000;  // UTF-8 bytes of a page, fits with its header in the 1024-byte client buffer
+    private static final int CURSOR_BYTES = 64;  // Bytes kept in a page for the line pointing to older messages
+    private final String name;  // Name of the room
+    private final ConcurrentMap<String, User> users = new ConcurrentHashMap<>();  // Users in the room by normalized nick
+    private final Deque<StoredMessage> chatMessageHistory = new ArrayDeque<>(MAX_HISTORY);  // Latest messages, guarded by itself
+    private final MessageLog messageLog;  // Durable history of the room, null if it is only kept in memory
+    private long lastMessageId = Long.MIN_VALUE;  // Id of the last message without a log, guarded by the history
+    private final AtomicLong membersVersion = new AtomicLong();  // Bumped whenever a user joins or leaves
+    private final AtomicLong historyVersion = new AtomicLong();  // Bumped whenever a message is saved
+    private volatile RenderedView userListView;  // Last rendered user list, null until first needed
+    private volatile RenderedView historyView;  // Last rendered latest history page, null until first needed
+
+    /**
+     * Constructs an empty chat room that only keeps its history in memory.
+     *
+     * @param name The name of the room.
+     */
+    public ChatRoom(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Constructs an empty chat room backed by a message log, loading its latest messages.
+     *
+     * @param name The name of the room.
+     * @param messageLog The log of the room, or null to keep the history only in memory.
+     */
+    public ChatRoom(String name, MessageLog messageLog) {
+        this.name = name;
+        this.messageLog = messageLog;
+        if (messageLog != null) {
+            chatMessageHistory.addAll(messageLog.readTail(MAX_HISTORY));
+        }
+    }
+
+    /**
+     * Retrieves the name of the room.
+     *
+     * @return The name of the room.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the message log backing the room.
+     *
+     * @return The log, or null if the history is only kept in memory.
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    /**
+     * Retrieves the number of users in the room.
+     *
+     * @return The number of users.
+     */
+    public int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * Checks if the room has no users.
+     *
+     * @return true if the room is empty.
+     */
+    public boolean isEmpty() {
+        return users.isEmpty();
+    }
 
     /**
      * Adds a user to the chat room.
-     * If the user is already in the room, they are not added again.
+     * If a user with the same nick, in any case, is already in the room, the user is not added.
      *
      * @param user The user to add to the room.
-     * @return true if the user was added successfully, false if the user was already in the room.
+     * @return true if the user was added successfully, false if the nick is already taken.
      */
     public boolean addUser(User user) {
-        if (users.contains(user)) return false;
-        users.add(user);
-        lastActivityTimestamps.put(user.getKey(), System.currentTimeMillis());  // Update activity timestamp
+        if (users.putIfAbsent(user.getNormalizedNick(), user) != null) return false;  // Atomic check-and-add, two shards cannot log in the same nick
+        membersVersion.incrementAndGet();
         return true;
     }
 
     /**
-     * Removes a user from the chat room.
+     * Removes a user from the chat room. The user is only removed if it is in the room from the same address,
+     * so a packet sent with someone else's nick cannot log them out.
      *
      * @param user The user to remove from the room.
+     * @return true if the user was removed, false if it was not in the room from that address.
      */
-    public void removeUser(User user) {
-        users.remove(user);
-        lastActivityTimestamps.remove(user.getKey());
+    public boolean removeUser(User user) {
+        boolean[] removed = new boolean[1];
+        users.computeIfPresent(user.getNormalizedNick(), (nick, member) -> {
+            removed[0] = member.hasSameAddress(user);
+            return removed[0] ? null : member;
+        });
+        if (removed[0]) membersVersion.incrementAndGet();
+        return removed[0];
     }
 
     /**
-     * Checks if a user is currently in the chat room.
+     * Checks if a user with the same nick, in any case, is currently in the chat room.
      *
      * @param user The user to check.
-     * @return true if the user is in the room, false otherwise.
+     * @return true if the nick is taken in the room, false otherwise.
      */
     public boolean hasUser(User user) {
-        return users.contains(user);
+        return users.containsKey(user.getNormalizedNick());
     }
 
     /**
      * Saves a chat message in the chat room's history.
-     * If the history is full, the oldest message is removed.
+     * If the history is full, the oldest message is removed. If the room has a message log, the message is
+     * also queued to be appended to it, without waiting for the write, and its offset becomes its id; otherwise
+     * the message keeps its own id.
      *
      * @param chatMessage The message to save.
      */
     public void saveMessage(ChatMessage chatMessage) {
-        if (chatMessageHistory.size() == MAX_HISTORY) chatMessageHistory.pollFirst();
-        chatMessageHistory.addLast(chatMessage);
+        long timestamp = chatMessage.getTime();
+        String nick = chatMessage.getOwner().getNick();
+        synchronized (chatMessageHistory) {  // Ids are handed out in the order of the history
+            long id = messageLog != null ? messageLog.append(timestamp, nick, chatMessage.getContent()) : nextMessageId(chatMessage);
+            if (chatMessageHistory.size() == MAX_HISTORY) chatMessageHistory.pollFirst();
+            chatMessageHistory.addLast(new StoredMessage(id, timestamp, nick, chatMessage.getContent()));
+        }
+        historyVersion.incrementAndGet();
+    }
+
+    /**
+     * Picks the id of a message of a room without a log: the id of the message, moved past the previous one if
+     * two messages were created and saved in different orders, so ids keep following the history.
+     * Called with the history lock held.
+     */
+    private long nextMessageId(ChatMessage chatMessage) {
+        lastMessageId = Math.max(chatMessage.getId(), lastMessageId + 1);
+        return lastMessageId;
     }
 
     /**
-     * Retrieves the set of users currently in the chat room.
+     * Retrieves the users currently in the chat room.
      *
-     * @return A set of users in the room.
+     * @return A live, concurrently iterable view of the users in the room.
      */
-    public Set<User> getUsers() {
-        return users;
+    public Collection<User> getUsers() {
+        return users.values();
     }
 
     /**
-     * Retrieves the chat message history as a formatted string.
+     * Retrieves the latest page of the chat message history as a formatted string.
      *
-     * @return A string representing the chat message history.
+     * @return A string representing the latest messages, see {@link #getHistoryPage(long, int)}.
      */
     public String getMessageHistory() {
-        StringBuilder sb = new StringBuilder();
-        for (ChatMessage chatMessage : chatMessageHistory) {
-            sb.append(chatMessage.getFormattedContent()).append("\n");
-        }
-        if (sb.isEmpty()) sb.append("Message history is empty");
-        return sb.toString();
+        return getMessageHistoryView().getText();
     }
 
     /**
-     * Retrieves a user in the chat room by their nickname.
+     * Retrieves the latest page of the chat message history, rendered again only if a message was saved since
+     * the last render.
      *
-     * @param nick The nickname of the user.
-     * @return The user with the given nickname, or null if no such user exists.
+     * @return The view of the latest messages, see {@link #getHistoryPage(long, int)}.
      */
-    public User getUserByNick(String nick) {
-        for (User user : users) {
-            if (user.getNick().equalsIgnoreCase(nick)) return user;
+    public RenderedView getMessageHistoryView() {
+        long version = historyVersion.get();  // Read before rendering, a message saved meanwhile makes the view stale
+        RenderedView view = historyView;
+        if (view == null || view.getVersion() != version) {
+            view = new RenderedView(version, getHistoryPage(Long.MAX_VALUE, DEFAULT_PAGE_SIZE));
+            historyView = view;
         }
-        return null;
+        return view;
     }
 
     /**
-     * Retrieves a list of users in the chat room.
+     * Retrieves a page of the chat message history as a formatted string that fits in one datagram.
+     * The page holds the newest messages before the given id, oldest first, as many as fit. If there are older
+     * messages, the first line names the id to ask for them. Recent messages come from memory, older ones from the
+     * message log of the room.
      *
-     * @return A formatted string listing the users in the room.
+     * @param beforeId The page ends before the message with this id; {@link Long#MAX_VALUE} for the latest page.
+     * @param count The maximum number of messages in the page.
+     * @return A string representing the page.
      */
-    public String listUsers() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Users in the room: ").append(users.size()).append("\n");
-        sb.append("Full list: ").append("\n");
-        for (User user : users) {
-            sb.append(user.getNick()).append("\n");
+    public String getHistoryPage(long beforeId, int count) {
+        List<StoredMessage> newest = new ArrayList<>(count);  // Newest first
+        long memoryFirstId;
+        synchronized (chatMessageHistory) {
+            Iterator<StoredMessage> messages = chatMessageHistory.descendingIterator();
+            while (messages.hasNext() && newest.size() < count) {
+                StoredMessage message = messages.next();
+                if (message.offset() < beforeId) newest.add(message);
+            }
+            StoredMessage first = chatMessageHistory.peekFirst();
+            memoryFirstId = first != null ? first.offset() : messageLog != null ? messageLog.getReservedOffset() : Long.MAX_VALUE;
         }
-        return sb.replace(sb.length() - 1, sb.length(), "").toString();
+        if (messageLog != null && newest.size() < count) {
+            long end = Math.min(beforeId, memoryFirstId);  // The memory holds every message from its first id on
+            long start = Math.max(messageLog.getFirstOffset(), end - (count - newest.size()));
+            if (start < end) {
+                List<StoredMessage> older = messageLog.read(start, (int) (end - start));
+                for (int i = older.size() - 1; i >= 0; i--) {
+                    newest.add(older.get(i));
+                }
+            }
+        }
+
+        Deque<String> lines = new ArrayDeque<>(newest.size());
+        int bytes = 0;
+        long oldestShown = beforeId;
+        int budget = MAX_PAGE_BYTES - CURSOR_BYTES;
+        for (StoredMessage message : newest) {
+            String line = truncate(message.getFormattedContent(), budget - 1);  // A single message always fits
+            int lineBytes = BinaryCodec.utf8Length(line) + 1;
+            if (bytes + lineBytes > budget) break;
+            bytes += lineBytes;
+            lines.addFirst(line);
+            oldestShown = message.offset();
+        }
+
+        if (lines.isEmpty()) {
+            return beforeId == Long.MAX_VALUE ? "Message history is empty" : "No older messages";
+        }
+        StringBuilder sb = new StringBuilder(bytes + CURSOR_BYTES);
+        long firstId = messageLog != null ? messageLog.getFirstOffset() : memoryFirstId;
+        if (oldestShown > firstId) {
+            sb.append("Older messages: use 'history ").append(oldestShown).append("'\n");
+        }
+        for (String line : lines) {
+            sb.append(line).append("\n");
+        }
+        return sb.toString();
     }
 
     /**
-     * Updates the last activity timestamp for a user.
-     *
-     * @param user The user whose activity timestamp should be updated.
+     * Shortens a line to a number of UTF-8 bytes, ending it with "..." if it had to be cut.
      */
-    public void updateActivity(User user) {
-        lastActivityTimestamps.put(user.getKey(), System.currentTimeMillis());
+    private static String truncate(String line, int maxBytes) {
+        if (BinaryCodec.utf8Length(line) <= maxBytes) return line;
+        int bytes = 3;  // The "..." at the end
+        int end = 0;
+        while (end < line.length()) {
+            int codePoint = line.codePointAt(end);
+            int size = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (bytes + size > maxBytes) break;
+            bytes += size;
+            end += Character.charCount(codePoint);
+        }
+        return line.substring(0, end) + "...";
     }
 
     /**
-     * Returns a set of users who have been inactive for longer than the inactivity threshold.
+     * Retrieves a user in the chat room by their nickname, ignoring case.
      *
-     * @return A set of users who have been inactive for longer than the threshold.
+     * @param nick The nickname of the user.
+     * @return The user with the given nickname, or null if no such user exists.
      */
-    public Set<User> getInactiveUsers() {
-        Set<User> inactiveUsers = new HashSet<>();
-        long currentTime = System.currentTimeMillis();
-
-        for (User user : users) {
-            long lastActivity = lastActivityTimestamps.getOrDefault(user.getKey(), 0L);
-            if ((currentTime - lastActivity) >= INACTIVITY_THRESHOLD) {
-                inactiveUsers.add(user);
-            }
-        }
-
-        return inactiveUsers;
+    public User getUserByNick(String nick) {
+        return users.get(User.normalize(nick));
     }
 
     /**
-     * Checks if there are any inactive users in the chat room.
+     * Retrieves a list of users in the chat room.
      *
-     * @return true if there are inactive users, false otherwise.
+     * @return A formatted string listing the users in the room.
      */
-    public boolean hasInactiveUsers() {
-        long currentTime = System.currentTimeMillis();
+    public String listUsers() {
+        return getUserListView().getText();
+    }
 
-        // Iterate through users and check if any are inactive
-        for (User user : users) {
-            long lastActivity = lastActivityTimestamps.getOrDefault(user.getKey(), 0L);
-            if ((currentTime - lastActivity) >= INACTIVITY_THRESHOLD) {
-                return true;  // If we find an inactive user, return true immediately
-            }
+    /**
+     * Retrieves the list of users in the chat room, rendered again only if a user joined or left since the last
+     * render.
+     *
+     * @return The view of the list of users.
+     */
+    public RenderedView getUserListView() {
+        long version = membersVersion.get();  // Read before rendering, a change meanwhile makes the view stale
+        RenderedView view = userListView;
+        if (view == null || view.getVersion() != version) {
+            view = new RenderedView(version, renderUserList());
+            userListView = view;
         }
+        return view;
+    }
 
-        return false;  // If no inactive users were found
+    /**
+     * Renders the list of users in the chat room.
+     */
+    private String renderUserList() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Users in the room: ").append(users.size()).append("\n");
+        sb.append("Full list: ").append("\n");
+        for (User user : users.values()) {
+            sb.append(user.getNick()).append("\n");
+        }
+        return sb.replace(sb.length() - 1, sb.length(), "").toString();
     }
 }
\ No newline at end of file
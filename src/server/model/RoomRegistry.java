@@ -0,0 +1,227 @@
+package server.model;
+
+import server.history.HistoryStore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The RoomRegistry class holds every chat room of the server and the directory of logged-in users.
+ * <p>
+ * Logging in adds the user to the directory, which keeps nicks unique across the server, and to the
+ * {@link #LOBBY lobby}. From there the user can join any other room, which is created the first time someone
+ * joins it and reclaimed as soon as its last member leaves; the lobby is never reclaimed. A user is in exactly
+ * one room at a time, so messages, history and broadcasts only involve the members of that room.
+ * <p>
+ * Membership changes of a room run inside {@link ConcurrentMap#compute}, so a room cannot be reclaimed while
+ * someone is joining it. Logging in, joining and logging out run inside a compute of the user's entry in the
+ * directory, so they are atomic per nick: a user evicted by the inactivity monitor while joining a room cannot be
+ * left behind in the room, or in the directory of rooms, once logged out.
+ * <p>
+ * With a {@link HistoryStore}, every room is backed by its own message log, so its history outlives the room.
+ */
+public class RoomRegistry {
+    /**
+     * Name of the room every user enters when logging in.
+     */
+    public static final String LOBBY = "lobby";
+    private static final int MAX_ROOM_NAME_LENGTH = 32;  // Longest room name accepted
+
+    private final ConcurrentMap<String, ChatRoom> rooms = new ConcurrentHashMap<>();  // Rooms by name
+    private final ConcurrentMap<String, User> users = new ConcurrentHashMap<>();  // Logged-in users by normalized nick
+    private final Map<String, ChatRoom> userRooms = new ConcurrentHashMap<>();  // Room of every user by normalized nick
+    private final HistoryStore historyStore;  // Store of the room logs, null if history is only kept in memory
+    private final ChatRoom lobby;  // The lobby, always present
+
+    /**
+     * Constructs a registry with an empty lobby, keeping the history of the rooms only in memory.
+     */
+    public RoomRegistry() {
+        this(null);
+    }
+
+    /**
+     * Constructs a registry with an empty lobby, backing every room with a log of the given store.
+     *
+     * @param historyStore The store of the room logs, or null to keep the history only in memory.
+     */
+    public RoomRegistry(HistoryStore historyStore) {
+        this.historyStore = historyStore;
+        this.lobby = createRoom(LOBBY);
+        rooms.put(LOBBY, lobby);
+    }
+
+    /**
+     * Logs a user in and puts them in the lobby.
+     *
+     * @param user The user logging in.
+     * @return true if the user logged in, false if the nick is already taken.
+     */
+    public boolean login(User user) {
+        boolean[] added = new boolean[1];
+        users.computeIfAbsent(user.getNormalizedNick(), nick -> {
+            enter(LOBBY, user);
+            userRooms.put(nick, lobby);
+            added[0] = true;
+            return user;
+        });
+        return added[0];
+    }
+
+    /**
+     * Logs a user out and takes them out of their room. Only the user logged in from the same address is
+     * logged out, so a packet sent with someone else's nick cannot log them out.
+     *
+     * @param user The user logging out.
+     * @return The room the user was in, or null if the user was not logged in from that address.
+     */
+    public ChatRoom logout(User user) {
+        ChatRoom[] left = new ChatRoom[1];
+        users.computeIfPresent(user.getNormalizedNick(), (nick, member) -> {
+            if (!member.hasSameAddress(user)) return member;
+            left[0] = userRooms.remove(nick);
+            if (left[0] != null) exit(left[0], user);
+            return null;
+        });
+        return left[0];
+    }
+
+    /**
+     * Moves a logged-in user to a room, creating it if it does not exist. The room they leave is reclaimed
+     * if it becomes empty.
+     *
+     * @param user The user joining the room.
+     * @param name The name of the room, see {@link #isValidRoomName(String)}.
+     * @return The room the user joined, or null if the user is not logged in from that address.
+     */
+    public ChatRoom join(User user, String name) {
+        ChatRoom[] joined = new ChatRoom[1];
+        users.computeIfPresent(user.getNormalizedNick(), (nick, member) -> {
+            if (!member.hasSameAddress(user)) return member;
+            joined[0] = enter(normalizeRoomName(name), user);
+            ChatRoom previous = userRooms.put(nick, joined[0]);
+            if (previous != null && previous != joined[0]) exit(previous, user);
+            return member;
+        });
+        return joined[0];
+    }
+
+    /**
+     * Checks if a user is logged in from the address it sent the packet from.
+     *
+     * @param user The user to check.
+     * @return true if the user is logged in with the same nick and address, false otherwise.
+     */
+    public boolean isLoggedIn(User user) {
+        User member = users.get(user.getNormalizedNick());
+        return member != null && member.hasSameAddress(user);
+    }
+
+    /**
+     * Retrieves a logged-in user by their nickname, ignoring case, whatever room they are in.
+     *
+     * @param nick The nickname of the user.
+     * @return The user with the given nickname, or null if no such user is logged in.
+     */
+    public User getUserByNick(String nick) {
+        return users.get(User.normalize(nick));
+    }
+
+    /**
+     * Retrieves the room a user is in.
+     *
+     * @param user The user.
+     * @return The room of the user, or null if the user is not logged in.
+     */
+    public ChatRoom getRoomOf(User user) {
+        return userRooms.get(user.getNormalizedNick());
+    }
+
+    /**
+     * Retrieves the lobby.
+     *
+     * @return The lobby room.
+     */
+    public ChatRoom getLobby() {
+        return lobby;
+    }
+
+    /**
+     * Retrieves the number of rooms, including the lobby.
+     *
+     * @return The number of rooms.
+     */
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * Retrieves the list of rooms and the number of users in each one.
+     *
+     * @return A formatted string listing the rooms.
+     */
+    public String listRooms() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Rooms: ").append(rooms.size());
+        for (ChatRoom room : rooms.values()) {
+            sb.append("\n").append(room.getName()).append(" (").append(room.getUserCount()).append(")");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks if a room name can be used: 1 to 32 letters, digits, '-' or '_'.
+     *
+     * @param name The room name.
+     * @return true if the name is valid.
+     */
+    public static boolean isValidRoomName(String name) {
+        if (name == null || name.isEmpty() || name.length() > MAX_ROOM_NAME_LENGTH) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Normalizes a room name, room names are case-insensitive.
+     *
+     * @param name The room name.
+     * @return The normalized name.
+     */
+    public static String normalizeRoomName(String name) {
+        return User.normalize(name);
+    }
+
+    /**
+     * Adds a user to a room, creating the room if needed.
+     */
+    private ChatRoom enter(String name, User user) {
+        return rooms.compute(name, (key, room) -> {
+            ChatRoom target = room == null ? createRoom(key) : room;
+            target.addUser(user);
+            return target;
+        });
+    }
+
+    /**
+     * Creates a room, backed by its log if the registry has a history store.
+     */
+    private ChatRoom createRoom(String name) {
+        return historyStore == null ? new ChatRoom(name) : new ChatRoom(name, historyStore.getLog(name));
+    }
+
+    /**
+     * Removes a user from a room and reclaims the room if it is empty and not the lobby.
+     */
+    private void exit(ChatRoom room, User user) {
+        rooms.computeIfPresent(room.getName(), (key, current) -> {
+            current.removeUser(user);
+            return current.isEmpty() && current != lobby ? null : current;
+        });
+    }
+}
@@ -1,15 +1,19 @@
 package server.model;
 
 import java.net.InetAddress;
-import java.util.Objects;
+import java.net.InetSocketAddress;
+import java.util.Locale;
 /**
  * The User class represents a user in the chat room. It stores the user's nickname, IP address, and port number.
  * It also provides methods for user comparison, generating a unique identifier, and retrieving user details.
+ * Nicks are compared ignoring case, through their {@link #normalize(String) normalized} form.
  */
 public class User {
     private final String nick;  // User's nickname
+    private final String normalizedNick;  // Nickname in the form used to compare users
     private final InetAddress ip;  // User's IP address
     private final int port;  // User's port number
+    private InetSocketAddress socketAddress;  // Destination address of the user, created on first send
 
     /**
      * Constructor for creating a new User instance.
@@ -20,6 +24,7 @@ public class User {
      */
     public User(String nick, InetAddress ip, int port) {
         this.nick = nick;
+        this.normalizedNick = normalize(nick);
         this.ip = ip;
         this.port = port;
     }
@@ -42,6 +47,21 @@ public class User {
         return port;
     }
 
+    /**
+     * Retrieves the socket address of the user, used as destination when sending. It is created once
+     * and reused, so sending to a user does not allocate an address per packet.
+     *
+     * @return The socket address of the user.
+     */
+    public InetSocketAddress getSocketAddress() {
+        InetSocketAddress address = socketAddress;
+        if (address == null) {
+            address = new InetSocketAddress(ip, port);
+            socketAddress = address;  // Benign race, every thread builds an equal address
+        }
+        return address;
+    }
+
     /**
      * Retrieves the nickname of the user.
      *
@@ -52,7 +72,38 @@ public class User {
     }
 
     /**
-     * Compares this user to another object for equality. Two users are considered equal if they have the same nickname.
+     * Retrieves the normalized nickname of the user, the key used to index users by nick.
+     *
+     * @return The normalized nickname.
+     */
+    public String getNormalizedNick() {
+        return normalizedNick;
+    }
+
+    /**
+     * Checks whether another user has the same IP address and port as this one.
+     *
+     * @param other The user to compare with.
+     * @return true if both users send from the same address.
+     */
+    public boolean hasSameAddress(User other) {
+        return port == other.port && ip.equals(other.ip);
+    }
+
+    /**
+     * Normalizes a nickname for case-insensitive comparison. Lower-casing with the root locale keeps the result
+     * independent of the default locale of the server; nicks that are already lower case are returned as is.
+     *
+     * @param nick The nickname to normalize.
+     * @return The normalized nickname.
+     */
+    public static String normalize(String nick) {
+        return nick.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Compares this user to another object for equality. Two users are considered equal if they have the same
+     * nickname, ignoring case.
      *
      * @param o The object to compare this user to.
      * @return true if the users are considered equal, false otherwise.
@@ -62,17 +113,17 @@ public class User {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         User user = (User) o;
-        return Objects.equals(nick, user.nick);
+        return normalizedNick.equals(user.normalizedNick);
     }
 
     /**
-     * Computes the hash code of this user. The hash code is based on the user's nickname.
+     * Computes the hash code of this user. The hash code is based on the user's normalized nickname.
      *
      * @return The hash code of the user.
      */
     @Override
     public int hashCode() {
-        return Objects.hash(nick);
+        return normalizedNick.hashCode();
     }
 
     /**
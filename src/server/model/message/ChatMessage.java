@@ -1,22 +1,24 @@
 package server.model.message;
 
+import common.util.CachedClock;
 import server.model.User;
 
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.Objects;
-import java.util.UUID;
-
 /**
  * The ChatMessage class represents a message exchanged between users in the chat room.
  * It contains the content of the message, the owner (user who sent the message),
  * the timestamp of when the message was created, and a unique identifier for the message.
+ * <p>
+ * Identifiers are sortable 64-bit ids from the {@link IdGenerator} in use, a {@link SnowflakeIdGenerator} by
+ * default, and timestamps come from the {@link CachedClock}, so creating a message costs no system call.
  */
 public class ChatMessage {
-    private final String id;  // Unique identifier for the message
+    private static volatile IdGenerator idGenerator = SnowflakeIdGenerator.fromSystemProperty();  // Source of the message ids
+
+    private final long id;  // Unique identifier for the message
     private final String content;  // The content of the message
     private final User owner;  // The user who sent the message
-    private final Timestamp time;  // The timestamp of when the message was created
+    private final long time;  // The time the message was created, in milliseconds since the epoch
+    private String formattedContent;  // Content formatted for the room, built on first use
 
     /**
      * Constructor for creating a new ChatMessage instance.
@@ -26,10 +28,19 @@ public class ChatMessage {
      * @param owner The user who is sending the message.
      */
     public ChatMessage(String content, User owner) {
-        this.id = UUID.randomUUID().toString();  // Generate a unique ID for the message
+        this.id = idGenerator.nextId();  // Generate a unique ID for the message
         this.content = content;
         this.owner = owner;
-        this.time = Timestamp.from(Instant.now());  // Set the time to the current moment
+        this.time = CachedClock.currentTimeMillis();  // Set the time to the current moment
+    }
+
+    /**
+     * Replaces the generator of the message ids, e.g. to give every server of a cluster its own node id.
+     *
+     * @param generator The new generator, used by the messages created from now on.
+     */
+    public static void setIdGenerator(IdGenerator generator) {
+        idGenerator = generator;
     }
 
     /**
@@ -44,9 +55,9 @@ public class ChatMessage {
     /**
      * Retrieves the timestamp of when the message was created.
      *
-     * @return The timestamp of the chat message.
+     * @return The timestamp of the chat message, in milliseconds since the epoch.
      */
-    public Timestamp getTime() {
+    public long getTime() {
         return time;
     }
 
@@ -64,18 +75,23 @@ public class ChatMessage {
      *
      * @return The ID of the chat message.
      */
-    public String getId() {
+    public long getId() {
         return id;
     }
 
     /**
      * Formats the message content for display in the chat room,
-     * including the owner's nickname and the message content.
+     * including the owner's nickname and the message content. The string is built once and reused.
      *
      * @return A formatted string representation of the message.
      */
     public String getFormattedContent() {
-        return String.format("<%s> %s", owner.getNick(), content);
+        String formatted = formattedContent;
+        if (formatted == null) {  // Racing threads build equal strings, any of them can be kept
+            formatted = "<" + owner.getNick() + "> " + content;
+            formattedContent = formatted;
+        }
+        return formatted;
     }
 
     /**
@@ -85,7 +101,7 @@ public class ChatMessage {
      * @return A formatted string representation of the private message.
      */
     public String getFormattedContentAsPrivate() {
-        return String.format("<private from %s> %s", owner.getNick(), getContent());
+        return "<private from " + owner.getNick() + "> " + content;
     }
 
     /**
@@ -100,7 +116,7 @@ public class ChatMessage {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ChatMessage chatMessage = (ChatMessage) o;
-        return Objects.equals(id, chatMessage.id);
+        return id == chatMessage.id;
     }
 
     /**
@@ -110,7 +126,7 @@ public class ChatMessage {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return Long.hashCode(id);
     }
 
     /**
@@ -122,7 +138,7 @@ public class ChatMessage {
     @Override
     public String toString() {
         return "{" +
-                "id='" + id + '\'' +
+                "id=" + id +
                 ", content='" + content + '\'' +
                 ", owner=" + owner.getNick() +
                 ", time=" + time +
@@ -0,0 +1,16 @@
+package server.model.message;
+
+/**
+ * The IdGenerator interface is implemented by the sources of the ids of the chat messages.
+ * Ids must be unique and increase over time, so they can be compared to order messages and used as cursors.
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+    /**
+     * Generates the next id. Safe to call from any thread.
+     *
+     * @return A new id, greater than every id returned before.
+     */
+    long nextId();
+}
@@ -0,0 +1,63 @@
+package server.model.message;
+
+import common.util.MessageUtil;
+
+/**
+ * The RenderedView class is a snapshot of text rendered from the state of a chat room, such as its user list or
+ * its latest history page, stamped with the version of the state it was rendered from. The room keeps the last
+ * view and renders a new one only when the version changes, so many users asking for the same thing share one
+ * render.
+ * <p>
+ * The view also keeps the text encoded as an informational server message, created on first use, so it can be
+ * sent to every user as is.
+ */
+public final class RenderedView {
+    private final long version;  // Version of the state the view was rendered from
+    private final String text;  // Rendered text
+    private volatile byte[] encoded;  // Text encoded as an INFO server message, null until first needed
+
+    /**
+     * Constructs a view of the given version.
+     *
+     * @param version The version of the state the text was rendered from.
+     * @param text The rendered text.
+     */
+    public RenderedView(long version, String text) {
+        this.version = version;
+        this.text = text;
+    }
+
+    /**
+     * Retrieves the version of the state the view was rendered from.
+     *
+     * @return The version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Retrieves the rendered text.
+     *
+     * @return The text.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Retrieves the text encoded as an informational server message in the configured wire format.
+     * It is encoded on the first call; concurrent first calls may encode it more than once, with the same result.
+     * The returned array is shared and must not be modified.
+     *
+     * @return The encoded message.
+     */
+    public byte[] getEncoded() {
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            bytes = MessageUtil.createServerMessage(new ServerMessage(text, ServerMessage.ServerStatus.INFO.getValue()));
+            encoded = bytes;
+        }
+        return bytes;
+    }
+}
@@ -1,13 +1,17 @@
 package server.model.message;
 
+import common.codec.Trace;
+
 /**
  * The ServerMessage class represents a message sent from the server to the client.
  * It contains the content of the message and the status of the server, which indicates
  * the type of message being sent (e.g., successful login, error, informational message, etc.).
+ * A broadcast of a traced client message carries its {@link Trace}, stamped by the server.
  */
 public class ServerMessage {
     private final String content;  // The content of the message
     private final int status;  // The status code indicating the type of message
+    private final Trace trace;  // The trace fields of the message, null if it is not traced
 
     /**
      * Constructor for creating a new ServerMessage instance.
@@ -16,8 +20,20 @@ public class ServerMessage {
      * @param status The status code of the message indicating its type.
      */
     public ServerMessage(String content, int status) {
+        this(content, status, null);
+    }
+
+    /**
+     * Constructor for creating a new ServerMessage instance that optionally carries trace fields.
+     *
+     * @param content The content of the message.
+     * @param status The status code of the message indicating its type.
+     * @param trace The trace of the message, or null if it is not traced.
+     */
+    public ServerMessage(String content, int status, Trace trace) {
         this.content = content;
         this.status = status;
+        this.trace = trace;
     }
 
     /**
@@ -39,6 +55,15 @@ public class ServerMessage {
         return ServerStatus.fromValue(status);
     }
 
+    /**
+     * Retrieves the trace fields of the server message.
+     *
+     * @return The trace, or null if the message is not traced.
+     */
+    public Trace getTrace() {
+        return trace;
+    }
+
     /**
      * Enumeration of the possible server message statuses.
      * Each status has a corresponding integer value for easier representation and comparison.
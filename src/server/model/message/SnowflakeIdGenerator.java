@@ -0,0 +1,75 @@
+package server.model.message;
+
+import common.util.CachedClock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SnowflakeIdGenerator class generates sortable 64-bit ids made of the time in milliseconds since
+ * {@link #EPOCH} (41 bits, about 69 years), the id of the node (10 bits) and a sequence number within the
+ * millisecond (12 bits). Ids of one node are strictly increasing, and ids of different nodes never collide.
+ * <p>
+ * The time comes from the {@link CachedClock}. The last time and sequence are kept in a single {@link AtomicLong}
+ * updated with a compare-and-set, so generating an id takes no lock. More than 4096 ids in a millisecond borrow
+ * from the next one instead of waiting for it, and ids keep increasing if the clock goes back.
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+    public static final int MAX_NODE = (1 << 10) - 1;  // Largest node id
+    private static final String NODE_PROPERTY = "chat.node.id";  // System property with the id of the node
+    private static final long EPOCH = 1704067200000L;  // 2024-01-01T00:00:00Z, origin of the time field
+    private static final int NODE_BITS = 10;  // Bits of the node id
+    private static final int SEQUENCE_BITS = 12;  // Bits of the sequence number
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;  // Mask of the sequence number
+
+    private final long node;  // Id of the node, already shifted into place
+    private final AtomicLong last = new AtomicLong();  // Time and sequence of the last id, without the node
+
+    /**
+     * Constructs a generator for the given node.
+     *
+     * @param node The id of the node, from 0 to {@link #MAX_NODE}.
+     * @throws IllegalArgumentException If the node id is out of range.
+     */
+    public SnowflakeIdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        this.node = (long) node << SEQUENCE_BITS;
+    }
+
+    /**
+     * Creates a generator for the node set in the chat.node.id system property, 0 by default.
+     *
+     * @return The generator.
+     */
+    public static SnowflakeIdGenerator fromSystemProperty() {
+        return new SnowflakeIdGenerator(Integer.getInteger(NODE_PROPERTY, 0));
+    }
+
+    /**
+     * Generates the next id.
+     *
+     * @return A new id, greater than every id returned before by this generator.
+     */
+    @Override
+    public long nextId() {
+        long now = (CachedClock.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        while (true) {
+            long previous = last.get();
+            long next = Math.max(now, previous + 1);  // Next sequence number in the same millisecond, or a new millisecond
+            if (last.compareAndSet(previous, next)) {
+                return ((next & ~SEQUENCE_MASK) << NODE_BITS) | node | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * Extracts the time an id was generated.
+     *
+     * @param id An id of this generator.
+     * @return The time in milliseconds since the epoch.
+     */
+    public static long getTimestamp(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+}
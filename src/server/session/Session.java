@@ -0,0 +1,142 @@
+package server.session;
+
+import server.model.User;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Session class is the long-lived state of a client address: the user it sends as, its key and its activity.
+ * It is created on the first packet from an address and found again through the {@link SessionTable} for every
+ * later packet, so the hot path neither allocates a User nor builds its key.
+ * <p>
+ * A session is closed once it is dropped from the table; touching a closed session fails and the caller opens a
+ * new one. The ping count is only used by the inactivity timer thread.
+ */
+public class Session {
+    private static final long CLOSED = -1;  // Last activity value of a closed session
+
+    private final User user;  // User the address sends as
+    private final String key;  // Key of the user, built once
+    private final byte[] nickBytes;  // UTF-8 nick, compared with the nick of every packet
+    private final long addressKey;  // Packed address and port, see SessionTable
+    private final AtomicLong lastActivity;  // Time of the last packet, CLOSED once the session is dropped
+    private int pings = 0;  // Consecutive inactivity checks without activity
+
+    /**
+     * Constructs a session for a user that just sent a packet.
+     *
+     * @param user The user the address sends as.
+     * @param addressKey The packed address and port of the user.
+     * @param now The time of the packet.
+     */
+    Session(User user, long addressKey, long now) {
+        this.user = user;
+        this.key = user == null ? null : user.getKey();
+        this.nickBytes = user == null ? null : user.getNick().getBytes(StandardCharsets.UTF_8);
+        this.addressKey = addressKey;
+        this.lastActivity = new AtomicLong(now);
+    }
+
+    /**
+     * Retrieves the user of the session.
+     *
+     * @return The user.
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Retrieves the key of the user ({@code nick@ip:port}), built once when the session is opened.
+     *
+     * @return The user key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Checks whether a packet was sent with the nick of this session, comparing the UTF-8 bytes in place.
+     *
+     * @param data The buffer holding the nick.
+     * @param offset The offset of the nick bytes.
+     * @param length The length of the nick bytes.
+     * @return true if the nick is the same.
+     */
+    public boolean hasNick(byte[] data, int offset, int length) {
+        return Arrays.equals(nickBytes, 0, nickBytes.length, data, offset, offset + length);
+    }
+
+    /**
+     * Records a packet from the session.
+     *
+     * @param now The time of the packet.
+     * @return true if the activity was recorded, false if the session is closed.
+     */
+    public boolean touch(long now) {
+        while (true) {
+            long last = lastActivity.get();
+            if (last == CLOSED) return false;
+            if (last >= now || lastActivity.compareAndSet(last, now)) return true;
+        }
+    }
+
+    /**
+     * Retrieves the time of the last packet from the session.
+     *
+     * @return The last activity time, or -1 if the session is closed.
+     */
+    public long getLastActivity() {
+        return lastActivity.get();
+    }
+
+    /**
+     * Closes the session, unless a packet arrived since the given activity time was read.
+     *
+     * @param expectedActivity The last activity time the caller observed.
+     * @return true if the session was closed, false if it was touched in the meantime.
+     */
+    public boolean close(long expectedActivity) {
+        return lastActivity.compareAndSet(expectedActivity, CLOSED);
+    }
+
+    /**
+     * Closes the session regardless of its activity.
+     */
+    public void close() {
+        lastActivity.set(CLOSED);
+    }
+
+    /**
+     * Counts an inactivity check without activity.
+     *
+     * @return The number of consecutive checks without activity.
+     */
+    public int incrementPings() {
+        return ++pings;
+    }
+
+    /**
+     * Resets the count of inactivity checks after the session was active.
+     */
+    public void resetPings() {
+        pings = 0;
+    }
+
+    /**
+     * Checks whether the session belongs to the given address and port.
+     */
+    boolean isFrom(long addressKey, InetAddress address, int port) {
+        return this.addressKey == addressKey && user.getPort() == port && user.getIp().equals(address);
+    }
+
+    /**
+     * Retrieves the packed address and port of the session.
+     */
+    long getAddressKey() {
+        return addressKey;
+    }
+}
@@ -0,0 +1,146 @@
+package server.session;
+
+import server.model.User;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The SessionTable class maps the remote address and port of a datagram to its {@link Session}.
+ * <p>
+ * The address and port are packed into a long: for IPv4 the address ({@link InetAddress#hashCode()} is the address
+ * itself) and the port make an exact 48-bit key, for IPv6 the address hash is used and the address is compared
+ * on lookup. Sessions are kept in an open-addressing table with linear probing, so a lookup neither builds strings
+ * nor allocates. Lookups are lock-free; insertions and removals are serialized on the table and publish a new
+ * array when it grows.
+ */
+public class SessionTable {
+    private static final int INITIAL_CAPACITY = 64;  // Slots of the first array, a power of two
+    private static final Session TOMBSTONE = new Session(null, -1, 0);  // Marks a removed slot, never matches a key
+
+    private volatile AtomicReferenceArray<Session> slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);  // Open-addressing slots
+    private int size = 0;  // Live sessions, guarded by this
+    private int used = 0;  // Live sessions plus tombstones, guarded by this
+
+    /**
+     * Finds the session of a remote address.
+     *
+     * @param address The remote address.
+     * @param port The remote port.
+     * @return The session, or null if the address has none.
+     */
+    public Session get(InetAddress address, int port) {
+        long key = pack(address, port);
+        AtomicReferenceArray<Session> table = slots;
+        int mask = table.length() - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            Session session = table.get(i);
+            if (session == null) return null;
+            if (session.isFrom(key, address, port)) return session;
+        }
+    }
+
+    /**
+     * Opens a new session for a user, replacing the session its address had, if any.
+     *
+     * @param user The user who sent the packet.
+     * @param now The time of the packet.
+     * @return The new session.
+     */
+    public synchronized Session open(User user, long now) {
+        long key = pack(user.getIp(), user.getPort());
+        Session session = new Session(user, key, now);
+        AtomicReferenceArray<Session> table = slots;
+        int mask = table.length() - 1;
+        int free = -1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            Session current = table.get(i);
+            if (current == null) break;
+            if (current == TOMBSTONE) {
+                if (free < 0) free = i;
+            } else if (current.isFrom(key, user.getIp(), user.getPort())) {
+                table.set(i, session);
+                return session;
+            }
+        }
+
+        if (free < 0) {
+            if (used + 1 > table.length() / 2) {
+                table = resize();
+                mask = table.length() - 1;
+            }
+            free = slot(key, mask);
+            while (table.get(free) != null) free = (free + 1) & mask;
+            used++;
+        }
+        table.set(free, session);
+        size++;
+        return session;
+    }
+
+    /**
+     * Removes a session from the table, if it is still the session of its address.
+     *
+     * @param session The session to remove.
+     * @return true if the session was removed.
+     */
+    public synchronized boolean remove(Session session) {
+        AtomicReferenceArray<Session> table = slots;
+        int mask = table.length() - 1;
+        for (int i = slot(session.getAddressKey(), mask); ; i = (i + 1) & mask) {
+            Session current = table.get(i);
+            if (current == null) return false;
+            if (current == session) {
+                table.set(i, TOMBSTONE);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of open sessions.
+     *
+     * @return The number of sessions in the table.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Copies the live sessions into a new array sized for them and publishes it, dropping the tombstones.
+     * Readers still probing the old array see the sessions it held, which stay valid.
+     */
+    private AtomicReferenceArray<Session> resize() {
+        AtomicReferenceArray<Session> old = slots;
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < (size + 1) * 4) capacity <<= 1;
+        AtomicReferenceArray<Session> table = new AtomicReferenceArray<>(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < old.length(); i++) {
+            Session session = old.get(i);
+            if (session == null || session == TOMBSTONE) continue;
+            int j = slot(session.getAddressKey(), mask);
+            while (table.get(j) != null) j = (j + 1) & mask;
+            table.set(j, session);
+        }
+        used = size;
+        slots = table;
+        return table;
+    }
+
+    /**
+     * Packs an address and a port into a 48-bit key.
+     */
+    private static long pack(InetAddress address, int port) {
+        return ((address.hashCode() & 0xFFFFFFFFL) << 16) | (port & 0xFFFF);
+    }
+
+    /**
+     * Spreads a key over the slots of the table.
+     */
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+}
@@ -0,0 +1,62 @@
+package server.timer;
+
+/**
+ * A Timeout is the handle of a task scheduled on a {@link TimingWheel}. It can be cancelled until it expires.
+ * Timeouts are linked into the wheel's buckets by the wheel thread only.
+ */
+public class Timeout {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    final Runnable task;  // Task run when the timeout expires
+    long deadline;  // Absolute tick at which the timeout expires
+    Timeout next;  // Next timeout in the same bucket
+    private volatile int state = PENDING;  // PENDING, CANCELLED or EXPIRED
+
+    /**
+     * Constructs a timeout for the given task and deadline.
+     *
+     * @param task The task to run.
+     * @param deadline The absolute tick at which the task runs.
+     */
+    Timeout(Runnable task, long deadline) {
+        this.task = task;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Cancels the timeout. The task will not run if it has not run yet.
+     *
+     * @return true if the timeout was pending and is now cancelled, false if it already expired or was cancelled.
+     */
+    public boolean cancel() {
+        synchronized (this) {
+            if (state != PENDING) return false;
+            state = CANCELLED;
+            return true;
+        }
+    }
+
+    /**
+     * Checks whether the timeout was cancelled.
+     *
+     * @return true if the timeout was cancelled.
+     */
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    /**
+     * Marks the timeout as expired, unless it was cancelled.
+     *
+     * @return true if the task must run, false if the timeout was cancelled.
+     */
+    boolean expire() {
+        synchronized (this) {
+            if (state != PENDING) return false;
+            state = EXPIRED;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package server.timer;
+
+import common.util.SimpleLogger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The TimingWheel class is a hierarchical timing wheel driven by its own thread.
+ * <p>
+ * Time advances in ticks of a fixed duration. Every level has {@link #WHEEL_SIZE} buckets: level 0 buckets
+ * hold the timeouts of a single tick, and each higher level covers {@link #WHEEL_SIZE} times the span of the
+ * level below. A timeout is linked into the bucket of the lowest level that spans its deadline, so scheduling
+ * is O(1) regardless of the delay. When a lower level wraps around, the matching bucket of the level above
+ * is cascaded down, and every tick expires exactly the timeouts of one level 0 bucket.
+ * <p>
+ * {@link #schedule} can be called from any thread: new timeouts go through a lock-free queue and are linked
+ * by the wheel thread, which is also the thread that runs the expired tasks.
+ */
+public class TimingWheel {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;  // Buckets per level
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;  // With 100 ms ticks the wheel spans more than 19 days
+    private static final Logger logger = SimpleLogger.getInstance().getLogger(TimingWheel.class);  // Logger for the class
+
+    private final long tickNanos;  // Duration of a tick
+    private final Timeout[][] buckets = new Timeout[LEVELS][WHEEL_SIZE];  // Singly linked timeouts per bucket
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();  // Timeouts scheduled since the last tick
+    private final long startNanos = System.nanoTime();  // Time of tick 0
+    private volatile long currentTick = 0;  // Last tick processed by the wheel thread
+
+    /**
+     * Constructs a timing wheel and starts its thread.
+     *
+     * @param tickMillis The duration of a tick in milliseconds, the resolution of the timeouts.
+     * @param name The name of the wheel thread.
+     */
+    public TimingWheel(long tickMillis, String name) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Schedules a task to run on the wheel thread after the given delay, rounded up to whole ticks.
+     *
+     * @param task The task to run.
+     * @param delayMillis The delay in milliseconds.
+     * @return The handle of the scheduled task.
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        long elapsed = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        long deadline = Math.max(currentTick + 1, (elapsed + tickNanos - 1) / tickNanos);  // Measured from the clock, not the lagging tick
+        Timeout timeout = new Timeout(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Advances the wheel one tick at a time, sleeping until each tick is due.
+     */
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long wait = startNanos + (currentTick + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            advance();
+        }
+    }
+
+    /**
+     * Processes the next tick: links the new timeouts, cascades the higher levels that wrapped around
+     * and runs the timeouts of the level 0 bucket.
+     */
+    private void advance() {
+        long tick = currentTick + 1;
+        currentTick = tick;
+
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (WHEEL_BITS * level)) - 1)) == 0) {
+                cascade(level, (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK));
+            }
+        }
+
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            link(timeout);
+        }
+
+        int index = (int) (tick & WHEEL_MASK);
+        Timeout expired = buckets[0][index];
+        buckets[0][index] = null;
+        while (expired != null) {
+            Timeout next = expired.next;
+            expired.next = null;
+            if (expired.deadline <= tick) {
+                runTask(expired);
+            } else {
+                link(expired);  // Clamped timeout beyond the wheel span, not due yet
+            }
+            expired = next;
+        }
+    }
+
+    /**
+     * Moves the timeouts of a higher-level bucket down to the levels that now span their deadlines.
+     */
+    private void cascade(int level, int index) {
+        Timeout timeout = buckets[level][index];
+        buckets[level][index] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            link(timeout);
+            timeout = next;
+        }
+    }
+
+    /**
+     * Links a timeout into the bucket of the lowest level that spans its deadline.
+     * Cancelled timeouts are dropped here instead of being kept until their deadline.
+     */
+    private void link(Timeout timeout) {
+        if (timeout.isCancelled()) return;
+        long tick = currentTick;
+        if (timeout.deadline < tick) timeout.deadline = tick;  // Late schedule, expire on this tick
+
+        long delta = timeout.deadline - tick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        long slotTick = Math.min(timeout.deadline, tick + (1L << (WHEEL_BITS * LEVELS)) - 1);  // Clamp to the span
+        int index = level == 0 && delta == 0
+                ? (int) (tick & WHEEL_MASK)
+                : (int) ((slotTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        timeout.next = buckets[level][index];
+        buckets[level][index] = timeout;
+    }
+
+    /**
+     * Runs the task of an expired timeout, unless it was cancelled.
+     */
+    private void runTask(Timeout timeout) {
+        if (!timeout.expire()) return;
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Timer task failed: {0}", e.toString());
+        }
+    }
+}